@@ -1,5 +1,3 @@
-import java.util.Random;
-
 /**
  * This class provides all properties and methods that an
  * {@code Appliance} subclass object should have in order
@@ -11,9 +9,11 @@ public abstract class Appliance {
     private String name;
     private Meter  meter;
     private String utilityName;
+    private RandomStream random;
 
     Appliance(String name) {
-        this.name = name;
+        this.name   = name;
+        this.random = new RandomStream(RandomStream.randomSeed());
     }
 
     /**
@@ -24,6 +24,31 @@ public abstract class Appliance {
         return name;
     }
 
+    /**
+     * Gets the meter attached to the appliance.
+     * @return the meter, {@code null} if it has not been set
+     */
+    Meter getMeter() {
+        return meter;
+    }
+
+    /**
+     * Gets the stream of random numbers used by the appliance.
+     * @return the random stream
+     */
+    RandomStream getRandomStream() {
+        return random;
+    }
+
+    /**
+     * Sets the stream of random numbers used by the appliance,
+     * e.g. one derived from the seed of the {@link House}.
+     * @param random the random stream
+     */
+    void setRandomStream(RandomStream random) {
+        this.random = random;
+    }
+
     /**
      * Sets a meter type
      * @param meter the meter to add to {@code Appliance}
@@ -61,11 +86,35 @@ public abstract class Appliance {
      * consumes their units each hour.
      */
     protected abstract void timePasses();
+
+    /**
+     * Returns whether the units consumed by the appliance over
+     * any number of hours can be computed without simulating each
+     * hour, i.e. whether {@link #unitsOver(int)} is supported.
+     *
+     * @return {@code true} if the appliance does not use random values.
+     */
+    public boolean isDeterministic() {
+        return false;
+    }
+
+    /**
+     * Returns the total units consumed by the appliance over the next
+     * {@code hours}, without telling its meter, and advances its state
+     * as if {@link #timePasses()} had been called {@code hours} times.
+     *
+     * @param hours the hours to skip.
+     * @return the units consumed over the hours.
+     * @throws UnsupportedOperationException if the appliance is not {@link #isDeterministic()}.
+     */
+    public double unitsOver(int hours) {
+        throw new UnsupportedOperationException(getName() + " is not deterministic");
+    }
     
     /**
      *  Returns the next pseudorandom, uniformly distributed
      *  {@code float} value between {@code min} and {@code max}
-     *  from this random number generator's sequence.
+     *  from the random stream of this appliance.
      *
      * @param min  the min units that cab be consumed each hour.
      * @param max  the max units that cab be consumed each hour.
@@ -73,11 +122,26 @@ public abstract class Appliance {
      * @return     the random units generated.
      */
     public float generateRandomUnits(float min , float max){
+        return randomUnits(min, max, random.nextFloat());
+    }
+
+    /**
+     *  Scales a {@code random} value between 0 and 1 to the units
+     *  between {@code min} and {@code max}, in the same way as
+     *  {@link #generateRandomUnits(float, float)} does.
+     *
+     * @param min     the min units that cab be consumed each hour.
+     * @param max     the max units that cab be consumed each hour.
+     * @param random  a random value between 0 (inclusive) and 1 (exclusive).
+     *
+     * @return        the random units generated.
+     */
+    static float randomUnits(float min, float max, float random){
         float randomAmountOfUnits;
         if(min+max < 0){
-            randomAmountOfUnits = new Random().nextFloat() * (min - max) + max;
+            randomAmountOfUnits = random * (min - max) + max;
         }else{
-            randomAmountOfUnits = new Random().nextFloat() * (max - min) + min;
+            randomAmountOfUnits = random * (max - min) + min;
         }
         return randomAmountOfUnits;
     }
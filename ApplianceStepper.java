@@ -0,0 +1,23 @@
+/**
+ * This interface defines an alternative way for a {@link House} to
+ * simulate one hour of consumption of all its appliances, instead of
+ * calling {@link Appliance#timePasses()} on each {@link Appliance}.
+ *
+ * A {@code ApplianceStepper} may keep the state of the appliances
+ * (e.g. the hour of their cycle) on its own while it is in use, and
+ * writes it back to the {@link Appliance} objects when it is released.
+ */
+interface ApplianceStepper {
+
+    /**
+     * Consumes one hour of units of every appliance into their meters.
+     */
+    void stepHour();
+
+    /**
+     * Writes the state kept by the stepper back to the
+     * {@link Appliance} objects. The stepper is not used anymore
+     * after being released.
+     */
+    void release();
+}
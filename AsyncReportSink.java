@@ -0,0 +1,311 @@
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@inheritDoc}
+ *
+ * This class moves the rendering of the hourly results off the simulation
+ * thread. Each event is written as a few primitive values into a bounded ring
+ * buffer, without formatting anything, and a background writer thread takes
+ * the events out in batches and replays them, in the same order, to another
+ * {@link ReportSink}, e.g. a {@link ConsoleSink}, {@link CsvSink} or
+ * {@link JsonSink}, flushing it after each batch.
+ * <p>
+ * The simulation thread only waits for the writer when the ring is full,
+ * i.e. when the output cannot keep up with the simulation at all. The units
+ * in the {@link Battery} of a {@link BatteryMeter} are captured with the
+ * event, so the delegate sees them as they were in the hour reported, even
+ * if the simulation has moved on.
+ * <p>
+ * The events of the simulation thread are only guaranteed to have been
+ * written once {@link #close()} returns.
+ */
+public class AsyncReportSink implements ReportSink, Closeable {
+    private static final int DEFAULT_CAPACITY = 1 << 14;
+
+    private static final byte HOUR_STARTED           = 0;
+    private static final byte METER_TABLE_STARTED    = 1;
+    private static final byte METER_REPORTED         = 2;
+    private static final byte METER_TABLE_FINISHED   = 3;
+    private static final byte BATTERY_METER_REPORTED = 4;
+    private static final byte HOUR_FINISHED          = 5;
+    private static final byte SIMULATION_FINISHED    = 6;
+
+    private ReportSink delegate;
+    private int        mask;
+
+    // One slot of each array for every event of the ring
+    private byte[]   types;
+    private Meter[]  meters;
+    private float[]  consumed;
+    private float[]  readings;
+    private float[]  unitsFromMains;
+    private float[]  unitsFromBattery;
+    private double[] costs;
+    private long[]   batteryUnits;
+
+    private long       next;
+    private AtomicLong published;
+    private AtomicLong taken;
+
+    private Thread  writer;
+    private volatile boolean closed;
+    private volatile RuntimeException failure;
+
+    /**
+     * Creates a new {@code AsyncReportSink} with a ring of 16384 events.
+     *
+     * @param delegate the sink the events are replayed to by the writer thread.
+     */
+    public AsyncReportSink(ReportSink delegate) {
+        this(delegate, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new {@code AsyncReportSink}.
+     *
+     * @param delegate the sink the events are replayed to by the writer thread.
+     * @param capacity the number of events the ring can hold, rounded up to a power of 2.
+     */
+    public AsyncReportSink(ReportSink delegate, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive: " + capacity);
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.delegate         = delegate;
+        this.mask             = size - 1;
+        this.types            = new byte[size];
+        this.meters           = new Meter[size];
+        this.consumed         = new float[size];
+        this.readings         = new float[size];
+        this.unitsFromMains   = new float[size];
+        this.unitsFromBattery = new float[size];
+        this.costs            = new double[size];
+        this.batteryUnits     = new long[size];
+        this.published        = new AtomicLong();
+        this.taken            = new AtomicLong();
+        this.writer           = new Thread(this::write, "AsyncReportSink-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void hourStarted(int day, int hour) {
+        int slot = claim(HOUR_STARTED);
+        // The day and hour fit exactly in the battery units slot
+        batteryUnits[slot] = ((long) day << 32) | hour;
+        publish();
+    }
+
+    @Override
+    public void meterTableStarted() {
+        claim(METER_TABLE_STARTED);
+        publish();
+    }
+
+    @Override
+    public void meterReported(Meter meter, float reading, double cost) {
+        int slot = claim(METER_REPORTED);
+        meters[slot]   = meter;
+        readings[slot] = reading;
+        costs[slot]    = cost;
+        publish();
+    }
+
+    @Override
+    public void meterTableFinished() {
+        claim(METER_TABLE_FINISHED);
+        publish();
+    }
+
+    @Override
+    public void batteryMeterReported(BatteryMeter meter, float consumed, float reading, double cost,
+                                     float unitsFromMains, float unitsFromBattery) {
+        int slot = claim(BATTERY_METER_REPORTED);
+        meters[slot]                = meter;
+        this.consumed[slot]         = consumed;
+        readings[slot]              = reading;
+        costs[slot]                 = cost;
+        this.unitsFromMains[slot]   = unitsFromMains;
+        this.unitsFromBattery[slot] = unitsFromBattery;
+        batteryUnits[slot]          = meter.getBattery().getMilliUnits();
+        publish();
+    }
+
+    @Override
+    public void hourFinished(double cost) {
+        int slot = claim(HOUR_FINISHED);
+        costs[slot] = cost;
+        publish();
+    }
+
+    @Override
+    public void simulationFinished(double totalCost) {
+        int slot = claim(SIMULATION_FINISHED);
+        costs[slot] = totalCost;
+        publish();
+    }
+
+    /**
+     * Waits until the writer has replayed every event published so far,
+     * and stops it. The delegate is closed if it is {@link Closeable}.
+     *
+     * @throws UncheckedIOException if the delegate could not be written.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            LockSupport.unpark(writer);
+            boolean interrupted = false;
+            while (writer.isAlive()) {
+                try {
+                    writer.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (delegate instanceof Closeable) {
+                try {
+                    ((Closeable) delegate).close();
+                } catch (IOException e) {
+                    failed(new UncheckedIOException(e));
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Claims the slot of the next event, waiting for the
+     * writer to take out older events if the ring is full.
+     */
+    private int claim(byte type) {
+        if (closed) {
+            throw new IllegalStateException("The sink has been closed");
+        }
+        while (next - taken.get() > mask) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(10_000);
+        }
+        int slot = (int) next & mask;
+        types[slot] = type;
+        return slot;
+    }
+
+    /**
+     * Makes the event of the last slot claimed visible to the writer.
+     */
+    private void publish() {
+        published.lazySet(++next);
+    }
+
+    /**
+     * The loop of the writer thread: replays the events published
+     * since the last batch, flushes the delegate, and sleeps briefly
+     * when there is nothing to write.
+     */
+    private void write() {
+        Map<BatteryMeter, BatteryMeter> snapshots = new IdentityHashMap<>();
+        long read = 0;
+        while (true) {
+            long available = published.get();
+            if (available == read) {
+                if (closed && published.get() == read) {
+                    return;
+                }
+                LockSupport.parkNanos(100_000);
+                continue;
+            }
+            for (; read < available; read++) {
+                int slot = (int) read & mask;
+                if (failure == null) {
+                    try {
+                        replay(slot, snapshots);
+                    } catch (RuntimeException e) {
+                        // Keep taking the events out, so the simulation never waits forever
+                        failed(e);
+                    }
+                }
+                meters[slot] = null;
+            }
+            taken.lazySet(read);
+            flush();
+        }
+    }
+
+    /**
+     * Replays one event to the delegate.
+     */
+    private void replay(int slot, Map<BatteryMeter, BatteryMeter> snapshots) {
+        switch (types[slot]) {
+            case HOUR_STARTED:
+                delegate.hourStarted((int) (batteryUnits[slot] >>> 32), (int) batteryUnits[slot]);
+                break;
+            case METER_TABLE_STARTED:
+                delegate.meterTableStarted();
+                break;
+            case METER_REPORTED:
+                delegate.meterReported(meters[slot], readings[slot], costs[slot]);
+                break;
+            case METER_TABLE_FINISHED:
+                delegate.meterTableFinished();
+                break;
+            case BATTERY_METER_REPORTED:
+                delegate.batteryMeterReported(snapshot((BatteryMeter) meters[slot], batteryUnits[slot], snapshots),
+                                              consumed[slot], readings[slot], costs[slot],
+                                              unitsFromMains[slot], unitsFromBattery[slot]);
+                break;
+            case HOUR_FINISHED:
+                delegate.hourFinished(costs[slot]);
+                break;
+            case SIMULATION_FINISHED:
+                delegate.simulationFinished(costs[slot]);
+                break;
+            default:
+                throw new IllegalStateException("Unknown event " + types[slot]);
+        }
+    }
+
+    /**
+     * Returns a copy of a {@link BatteryMeter}, owned by the writer thread,
+     * with the units its battery had when the event was published.
+     */
+    private BatteryMeter snapshot(BatteryMeter meter, long units, Map<BatteryMeter, BatteryMeter> snapshots) {
+        BatteryMeter snapshot = snapshots.get(meter);
+        if (snapshot == null) {
+            snapshot = new BatteryMeter(meter.getUtilityName(), meter.getUnitCost(),
+                                        new Battery(meter.getBattery().getBatteryCapacity()));
+            snapshots.put(meter, snapshot);
+        }
+        snapshot.getBattery().setMilliUnits(units);
+        return snapshot;
+    }
+
+    private void flush() {
+        if (failure == null && delegate instanceof Flushable) {
+            try {
+                ((Flushable) delegate).flush();
+            } catch (IOException e) {
+                failed(new UncheckedIOException(e));
+            }
+        }
+    }
+
+    private void failed(RuntimeException e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+}
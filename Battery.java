@@ -1,3 +1,5 @@
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * This class defines a {@code Battery} object which can be only used
  * to store electricity. If the units consumed by the {@link BatteryMeter}
@@ -6,20 +8,26 @@
  * the battery. In the next time increment, if consumption exceeds production,
  * the battery is used to power the house decreasing the units consumed
  * by {@link BatteryMeter}.
+ * <p>
+ * As the reading of a {@link Meter}, the capacity and the units in the
+ * battery are kept in {@code long} milli-units, so storing and taking
+ * units is exact.
  *
  *
  */
 public class Battery {
-    private float batteryCapacity;
-    private float batteryUnits;
+    private long    batteryCapacity;
+    private long    batteryUnits;
+    private boolean counted;
 
     /**
      * Creates a new {@code Battery} object.
      * @param batteryCapacity the capacity of the battery.
      */
     public Battery(float batteryCapacity){
-        this.batteryCapacity = batteryCapacity;
+        this.batteryCapacity = Meter.toMilliUnits(batteryCapacity);
         this.batteryUnits = 0;
+        this.counted = true;
     }
 
     /**
@@ -27,7 +35,7 @@ public class Battery {
      * @return the battery capacity
      */
     public float getBatteryCapacity() {
-        return batteryCapacity;
+        return (float) Meter.toUnits(batteryCapacity);
     }
 
     /**
@@ -35,7 +43,7 @@ public class Battery {
      * @return the slots available
      */
     public float getSlots(){
-        return this.batteryCapacity - this.batteryUnits;
+        return (float) Meter.toUnits(this.batteryCapacity - this.batteryUnits);
     }
 
     /**
@@ -43,9 +51,47 @@ public class Battery {
      * @return the units in the battery
      */
     public float getBatteryUnits() {
+        return (float) Meter.toUnits(batteryUnits);
+    }
+
+    /**
+     * Returns the max number of milli-units that can be stored in the battery.
+     * @return the battery capacity in milli-units
+     */
+    long getCapacityMilliUnits() {
+        return batteryCapacity;
+    }
+
+    /**
+     * Returns the milli-units currently stored in the battery.
+     * @return the milli-units in the battery
+     */
+    long getMilliUnits() {
         return batteryUnits;
     }
 
+    /**
+     * Sets the milli-units stored in the battery, e.g. when
+     * the state of a simulation is restored.
+     * @param milliUnits the milli-units in the battery
+     */
+    void setMilliUnits(long milliUnits) {
+        this.batteryUnits = milliUnits;
+    }
+
+    /**
+     * Stops adding the units stored, taken and wasted to the {@link SimulatorMetrics}.
+     */
+    void stopCountingMetrics() {
+        counted = false;
+    }
+
+    private void count(LongAdder counter, long milliUnits) {
+        if (counted) {
+            SimulatorMetrics.add(counter, milliUnits);
+        }
+    }
+
 
     /**
      * Stores the number of {@code units} generated by other appliances.
@@ -59,22 +105,45 @@ public class Battery {
      * @return unitsStored  units stored to the battery
      */
     public float storeUnits(float units){
+        return (float) Meter.toUnits(storeMilliUnits(Meter.toMilliUnits(units)));
+    }
+
+    /**
+     * Stores the milli-units generated by other appliances,
+     * as {@link #storeUnits(float)} does.
+     *
+     * @param milliUnits the milli-units generated by other appliances.
+     * @return the milli-units stored to the battery
+     */
+    long storeMilliUnits(long milliUnits){
 
-        float unitsStored = Math.abs(units);
+        long unitsProduced = Math.abs(milliUnits);
+        long unitsStored   = netMilliUnits(-unitsProduced, batteryUnits, batteryCapacity);
+        batteryUnits += unitsStored;
 
-        // First case
-        if(getSlots() >= unitsStored){
-            batteryUnits += unitsStored;
-        }
-        // Second case
-        else {
-            float unitsWasted = unitsStored - getSlots();
-            unitsStored = unitsStored - unitsWasted;
-            batteryUnits += unitsStored;
+        // Some units are wasted
+        if(unitsStored < unitsProduced){
+            count(SimulatorMetrics.UNITS_WASTED, unitsProduced - unitsStored);
         }
+        count(SimulatorMetrics.UNITS_STORED, unitsStored);
         return  unitsStored;
     }
 
+    /**
+     * Returns the milli-units a battery stores or takes to net the
+     * milli-units consumed in an hour, as {@link BatteryMeter#report(ReportSink)}
+     * does: the units produced are stored up to the slots available, and the
+     * units consumed are taken up to the units in the battery.
+     *
+     * @param consumed     the milli-units consumed, negative if produced.
+     * @param batteryUnits the milli-units in the battery.
+     * @param capacity     the capacity of the battery in milli-units.
+     * @return the milli-units stored, or taken if negative.
+     */
+    static long netMilliUnits(long consumed, long batteryUnits, long capacity) {
+        return consumed < 0 ? Math.min(-consumed, capacity - batteryUnits) : -Math.min(consumed, batteryUnits);
+    }
+
     /**
      * Takes the number of {@code units} needed to cover the consumption of other appliances.
      *
@@ -88,17 +157,21 @@ public class Battery {
      * @return unitsTaken   units taken from the battery
      */
     public float takeUnits(float units){
-        float unitsTaken = units;
+        return (float) Meter.toUnits(takeMilliUnits(Meter.toMilliUnits(units)));
+    }
 
-        // Case 1:
-        if(batteryUnits < unitsTaken){
-            unitsTaken = batteryUnits; //Max number of units possibile to take
-            batteryUnits -= unitsTaken; //Updated the units in the battery
-        }
-        // Case 2:
-        else{
-            batteryUnits -= unitsTaken;
-        }
+    /**
+     * Takes the milli-units needed to cover the consumption
+     * of other appliances, as {@link #takeUnits(float)} does.
+     *
+     * @param  milliUnits milli-units to take
+     * @return the milli-units taken from the battery
+     */
+    long takeMilliUnits(long milliUnits){
+        // A negative number of units is given back to the battery as it is
+        long unitsTaken = milliUnits < 0 ? milliUnits : -netMilliUnits(milliUnits, batteryUnits, batteryCapacity);
+        batteryUnits -= unitsTaken;
+        count(SimulatorMetrics.UNITS_TAKEN, unitsTaken);
         return unitsTaken;
     }
 }
@@ -8,6 +8,8 @@
  */
 public class BatteryMeter extends Meter{
     private Battery battery;
+    private long    unitsFromMains;
+    private long    unitsFromBattery;
 
     /**
      * {@inheritDoc}
@@ -21,6 +23,45 @@ public class BatteryMeter extends Meter{
         this.battery = battery;
     }
 
+    /**
+     * Returns the {@code Battery} used by this {@code BatteryMeter}.
+     *
+     * @return the battery.
+     */
+    Battery getBattery() {
+        return battery;
+    }
+
+    /**
+     * Returns the milli-units drawn from the mains in the hour
+     * being reported, or in the last hour reported.
+     *
+     * @return the milli-units from the mains.
+     */
+    long getUnitsFromMainsMilliUnits() {
+        return unitsFromMains;
+    }
+
+    /**
+     * Returns the milli-units drawn from the battery in the hour
+     * being reported, or in the last hour reported.
+     *
+     * @return the milli-units from the battery.
+     */
+    long getUnitsFromBatteryMilliUnits() {
+        return unitsFromBattery;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The units stored to and taken from the battery are not counted either.
+     */
+    @Override
+    void stopCountingMetrics() {
+        super.stopCountingMetrics();
+        battery.stopCountingMetrics();
+    }
+
     /**
      *  This method is capable of recording and reporting the amount of power
      *  drawn from the battery and the total amount drawn from the mains and
@@ -29,51 +70,50 @@ public class BatteryMeter extends Meter{
      *  In addition to that, it stores or takes units to/from the {@code Battery}
      *  by checking whether the consumption is more than the production or vice versa.
      *
-     * @return
+     * @param sink the sink receiving the hourly results.
+     * @return the cost of the units drawn from the mains.
      */
     @Override
-    public double report(){
-        float unitsToStore = 0;
-        float unitsToTake  = 0;
+    public double report(ReportSink sink){
+        long consumed     = this.getMilliUnits();
+        long unitsToStore = 0;
+        long unitsToTake  = 0;
+        countConsumed(consumed);
         
         // case when production has exceeded the consumption
-        if(this.getMeterReading() < 0){
-            unitsToStore = battery.storeUnits(this.getMeterReading());
+        if(consumed < 0){
+            unitsToStore = battery.storeMilliUnits(consumed);
         }
         // case when consumption exceeds production
         else{
-            unitsToTake =  battery.takeUnits(this.getMeterReading());
+            unitsToTake =  battery.takeMilliUnits(consumed);
         }
 
         /**
          *  Update current value of {@code meterReading}
          */
-        this.consumeUnits(-unitsToTake);
-        this.consumeUnits(unitsToStore);
+        long reading = consumed - unitsToTake + unitsToStore;
 
         double cost;
-        float unitsDrawnFromMains;
+        long unitsDrawnFromMains;
 
-        if(this.getMeterReading() < 0 ) {
-            unitsDrawnFromMains = 0.0f;
+        if(reading < 0 ) {
+            unitsDrawnFromMains = 0;
             cost = 0.0f;
-            this.setMeterReading(0.0f);
+            reading = 0;
         }
         else{
-            unitsDrawnFromMains = this.getMeterReading();
-            cost = this.getUnitCost() * this.getMeterReading();
+            unitsDrawnFromMains = reading;
+            cost = this.getCurrentUnitCost() * toUnits(reading);
         }
+        this.unitsFromMains   = unitsDrawnFromMains;
+        this.unitsFromBattery = unitsToTake;
 
-        String format = "| %-12s | %-12s | %-12s | %-27s | %-29s | %-18s |%n";
-
-        System.out.format(       "+--------------+--------------+--------------+-----------------------------+-------------------------------+--------------------+%n");
-        System.out.format(       "| Utility name |    Meter     |   Cost(GPB)  | Units drawn from the mains  |  Units drawn from the battery |Units in the battery|%n");
-        System.out.format(       "+--------------+--------------+--------------+-----------------------------+-------------------------------+--------------------+%n");
-        System.out.format(format, getUtilityName(), getMeterReading(), String.format("%.2f", cost), unitsDrawnFromMains, unitsToTake, battery.getBatteryUnits() +
-                                                                                                                                    "/" + battery.getBatteryCapacity() );
-        System.out.format(       "+--------------+--------------+--------------+-----------------------------+-------------------------------+--------------------+%n");
+        sink.batteryMeterReported(this, (float) toUnits(consumed), (float) toUnits(reading), cost,
+                                  (float) toUnits(unitsDrawnFromMains), (float) toUnits(unitsToTake));
 
-        this.setMeterReading(0);
+        this.setMilliUnits(0);
+        this.nextTariffHour();
         return cost;
     }
 }
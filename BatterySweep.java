@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * This class evaluates many capacities of a {@link Battery} in one pass
+ * over the hourly net units of an electricity meter.
+ * <p>
+ * A {@link BatteryMeter} stores or takes units to/from its battery only
+ * depending on the net units consumed in each hour, and the appliances do not
+ * depend on the battery, so the same trace of net units can be netted against
+ * any capacity. Instead of simulating the house once for each capacity, a
+ * {@code BatterySweep} keeps the units in the battery of every candidate in a
+ * primitive array and nets each hour of the trace against all of them at once,
+ * exactly as {@link BatteryMeter#report(ReportSink)} does, in milli-units.
+ * The result is the curve of the cost and of the units drawn from the mains
+ * and from the battery for each capacity.
+ */
+public class BatterySweep {
+    private long[] consumed;
+    private double unitCost;
+
+    private long[] capacities;
+    private long[] unitsFromMains;
+    private long[] unitsFromBattery;
+
+    /**
+     * Sweeps the capacities of the battery over a recorded trace.
+     * <p>
+     * Usage: {@code java BatterySweep RECORDING_FILE [--series=N] [--unit-cost=C] [--capacities=FROM:TO:STEP]}
+     * <p>
+     * The trace is the "consumed" column of the series {@code N} (1 by default,
+     * the electricity meter of a house recorded with {@code --headless=record:FILE})
+     * of a {@link ReadingRecorder} file. The capacities go from 0 to 1000 units
+     * in steps of 5 and the cost of a unit is 0.013 by default.
+     */
+    public static void main(String[] args) {
+        String recordingFile = null;
+        int    series        = 1;
+        double unitCost      = 0.013;
+        double from          = 0;
+        double to            = 1000;
+        double step          = 5;
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--series=")) {
+                    series = Integer.parseInt(arg.substring("--series=".length()));
+                } else if (arg.startsWith("--unit-cost=")) {
+                    unitCost = Double.parseDouble(arg.substring("--unit-cost=".length()));
+                } else if (arg.startsWith("--capacities=")) {
+                    String[] range = arg.substring("--capacities=".length()).split(":");
+                    from = Double.parseDouble(range[0]);
+                    to   = Double.parseDouble(range[1]);
+                    step = Double.parseDouble(range[2]);
+                } else {
+                    recordingFile = arg;
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            System.out.println("Not a valid number: " + e.getMessage());
+            System.exit(1);
+        }
+        if (recordingFile == null || step <= 0) {
+            System.out.println("Usage: java BatterySweep RECORDING_FILE [--series=N] [--unit-cost=C] [--capacities=FROM:TO:STEP]");
+            System.exit(1);
+        }
+
+        float[] consumed = null;
+        try {
+            RecordedReadings readings = new RecordedReadings(recordingFile);
+            float[] column = readings.readColumn(ReadingRecorder.CONSUMED, series);
+            consumed = new float[readings.getHoursRecorded()];
+            System.arraycopy(column, 0, consumed, 0, consumed.length);
+        } catch (IOException | IndexOutOfBoundsException e) {
+            System.out.println("Cannot read the recording: " + e.getMessage());
+            System.exit(1);
+        }
+
+        double[] capacities = new double[(int) Math.floor((to - from) / step) + 1];
+        for (int c = 0; c < capacities.length; c++) {
+            capacities[c] = from + c * step;
+        }
+
+        long start = System.nanoTime();
+        BatterySweep sweep = new BatterySweep(consumed, unitCost);
+        sweep.run(capacities);
+        sweep.print(System.out);
+        System.out.println(String.format("Capacities: %d, hours: %d, elapsed: %.3fs",
+                                         capacities.length, consumed.length, (System.nanoTime() - start) / 1e9));
+    }
+
+    /**
+     * Creates a new {@code BatterySweep} over the given trace.
+     *
+     * @param consumed the net units consumed each hour, before the battery.
+     * @param unitCost the cost of a unit drawn from the mains.
+     */
+    public BatterySweep(float[] consumed, double unitCost) {
+        this.consumed = new long[consumed.length];
+        for (int hour = 0; hour < consumed.length; hour++) {
+            this.consumed[hour] = Meter.toMilliUnits(consumed[hour]);
+        }
+        this.unitCost = unitCost;
+    }
+
+    /**
+     * Records the trace of net units of the electricity meter of a house,
+     * simulating it once for the given hours. The report sink of the house
+     * is replaced.
+     *
+     * @param house the house.
+     * @param hours the hours to simulate.
+     * @return the net units consumed each hour, before the battery.
+     */
+    static float[] trace(House house, int hours) {
+        // The electricity meter is reported after the water meter
+        return LoadTrace.record(house, hours).getConsumed(1);
+    }
+
+    /**
+     * Nets the whole trace against every capacity given, each one
+     * starting with an empty battery.
+     *
+     * @param capacities the capacities of the battery, in units.
+     */
+    public void run(double[] capacities) {
+        int size = capacities.length;
+        this.capacities  = new long[size];
+        unitsFromMains   = new long[size];
+        unitsFromBattery = new long[size];
+        long[] levels    = new long[size];
+        for (int c = 0; c < size; c++) {
+            this.capacities[c] = Meter.toMilliUnits(capacities[c]);
+        }
+
+        for (long net : consumed) {
+            if (net < 0) {
+                // Production exceeds consumption: store what fits, waste the rest
+                for (int c = 0; c < size; c++) {
+                    levels[c] = Math.min(this.capacities[c], levels[c] - net);
+                }
+            } else {
+                // Consumption exceeds production: take what the battery has
+                for (int c = 0; c < size; c++) {
+                    long taken = Math.min(net, levels[c]);
+                    levels[c]           -= taken;
+                    unitsFromBattery[c] += taken;
+                    unitsFromMains[c]   += net - taken;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of capacities evaluated by the last run.
+     *
+     * @return the number of capacities.
+     */
+    public int numCapacities() {
+        return capacities.length;
+    }
+
+    /**
+     * Returns a capacity evaluated by the last run.
+     *
+     * @param c the index of the capacity.
+     * @return the capacity, in units.
+     */
+    public double getCapacity(int c) {
+        return Meter.toUnits(capacities[c]);
+    }
+
+    /**
+     * Returns the cost of the units drawn from the mains with a capacity.
+     *
+     * @param c the index of the capacity.
+     * @return the cost.
+     */
+    public double getCost(int c) {
+        return unitCost * Meter.toUnits(unitsFromMains[c]);
+    }
+
+    /**
+     * Returns the units drawn from the mains with a capacity.
+     *
+     * @param c the index of the capacity.
+     * @return the units drawn from the mains.
+     */
+    public double getUnitsFromMains(int c) {
+        return Meter.toUnits(unitsFromMains[c]);
+    }
+
+    /**
+     * Returns the units drawn from the battery with a capacity.
+     *
+     * @param c the index of the capacity.
+     * @return the units drawn from the battery.
+     */
+    public double getUnitsFromBattery(int c) {
+        return Meter.toUnits(unitsFromBattery[c]);
+    }
+
+    /**
+     * Prints the cost for each capacity evaluated by the last run.
+     *
+     * @param out the stream where the curve is printed.
+     */
+    public void print(PrintStream out) {
+        String format = "| %-14s | %-12s | %-26s | %-28s |%n";
+        String line   = "+----------------+--------------+----------------------------+------------------------------+%n";
+        out.format(line);
+        out.format(format, "Capacity", "Cost(GPB)", "Units drawn from the mains", "Units drawn from the battery");
+        out.format(line);
+        for (int c = 0; c < capacities.length; c++) {
+            out.format(format, (float) getCapacity(c), String.format("%.2f", getCost(c)),
+                       (float) getUnitsFromMains(c), (float) getUnitsFromBattery(c));
+        }
+        out.format(line);
+    }
+}
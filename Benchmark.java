@@ -0,0 +1,493 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * This class is a small benchmark suite for the hot paths of the simulator.
+ * <p>
+ * Each benchmark runs its operation for a warm-up period, so the JIT compiler
+ * can optimise it, and then for a measured period. The throughput (operations
+ * per second) is reported together with the bytes allocated per operation,
+ * read from the allocation counters of the JVM threads, so an allocation on
+ * a hot path shows up as a non-zero "Bytes/op". The result of every operation
+ * is consumed by a {@link Blackhole}, so the JIT compiler cannot drop the work
+ * measured.
+ * <p>
+ * Usage: {@code java Benchmark [FILTER] [--seconds=N]}
+ * <p>
+ * Only the benchmarks whose name contains {@code FILTER} are run, and each
+ * one is measured for {@code N} seconds (1 by default). The same operations
+ * run under JMH, with its GC profiler, from the module in {@code jmh/}, see
+ * {@link #operation(String, List)}.
+ */
+public class Benchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final String FORMAT = "| %-40s | %-16s | %-12s |%n";
+    private static final String LINE   = "+------------------------------------------+------------------+--------------+%n";
+
+    private static final Map<Integer, HouseConfiguration> CONFIGURATIONS = new HashMap<>();
+
+    private String        filter;
+    private long          measureNanos;
+    private PrintStream   out;
+    private volatile long consumed;
+
+    /**
+     * An operation of a benchmark, which gives its results to a {@link Blackhole}.
+     */
+    interface Operation {
+        void run(Blackhole blackhole) throws Exception;
+    }
+
+    /**
+     * Creates the operation of a benchmark and the state it runs on. The
+     * threads, sinks and shards it starts are added to {@code resources},
+     * to be closed once the operation has been measured.
+     */
+    interface Setup {
+        Operation create(List<AutoCloseable> resources) throws Exception;
+    }
+
+    /**
+     * This class keeps the results of the operations measured: each result
+     * is folded into a hash, which is read after the measurement, so the
+     * work giving the result cannot be removed as dead code. Results are
+     * taken as primitives where possible, so they are not boxed.
+     */
+    static final class Blackhole {
+        private long hash;
+
+        void consume(double value) {
+            hash = hash * 31 + Double.doubleToRawLongBits(value);
+        }
+
+        void consume(Object value) {
+            hash = hash * 31 + System.identityHashCode(value);
+        }
+
+        long getHash() {
+            return hash;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String filter  = "";
+        double seconds = 1;
+        for (String arg : args) {
+            if (arg.startsWith("--seconds=")) {
+                seconds = Double.parseDouble(arg.substring("--seconds=".length()));
+            } else {
+                filter = arg;
+            }
+        }
+        new Benchmark(filter, seconds, System.out).runAll();
+    }
+
+    /**
+     * Creates a new {@code Benchmark} suite.
+     *
+     * @param filter  only the benchmarks whose name contains it are run.
+     * @param seconds the seconds each benchmark is measured for.
+     * @param out     the stream where the results are printed.
+     */
+    public Benchmark(String filter, double seconds, PrintStream out) {
+        this.filter       = filter;
+        this.measureNanos = (long) (seconds * 1e9);
+        this.out          = out;
+    }
+
+    /**
+     * Returns the names of the benchmarks run on a single thread,
+     * in the order they are run.
+     *
+     * @return the names of the benchmarks.
+     */
+    public static List<String> names() {
+        return new ArrayList<>(setups().keySet());
+    }
+
+    /**
+     * Creates the operation of a benchmark run on a single thread, e.g. to
+     * measure it with JMH. Each call runs the operation once and returns the
+     * hash of all the results consumed so far, to be consumed by the caller.
+     *
+     * @param name      the name of the benchmark, one of {@link #names()}.
+     * @param resources the list where the resources to close after the benchmark are added.
+     * @return the operation.
+     * @throws Exception if the state of the benchmark cannot be created.
+     */
+    public static LongSupplier operation(String name, List<AutoCloseable> resources) throws Exception {
+        Setup setup = setups().get(name);
+        if (setup == null) {
+            throw new IllegalArgumentException("Unknown benchmark: " + name);
+        }
+        Operation operation = setup.create(resources);
+        Blackhole blackhole = new Blackhole();
+        return () -> {
+            try {
+                operation.run(blackhole);
+            } catch (Exception e) {
+                throw new IllegalStateException(name + " has failed: " + e.getMessage(), e);
+            }
+            return blackhole.getHash();
+        };
+    }
+
+    /**
+     * Runs all benchmarks of the suite.
+     *
+     * @throws Exception if a configuration file cannot be generated.
+     */
+    public void runAll() throws Exception {
+        out.format(LINE);
+        out.format("| Benchmark                                |      Ops/s       |   Bytes/op   |%n");
+        out.format(LINE);
+
+        for (Map.Entry<String, Setup> benchmark : setups().entrySet()) {
+            if (!benchmark.getKey().contains(filter)) {
+                continue;
+            }
+            List<AutoCloseable> resources = new ArrayList<>();
+            try {
+                measure(benchmark.getKey(), benchmark.getValue().create(resources));
+            } finally {
+                for (AutoCloseable resource : resources) {
+                    resource.close();
+                }
+            }
+        }
+
+        for (int threads : new int[]{1, 2, 4}) {
+            Meter meter = new Meter("Electricity", 0.013f);
+            measureConcurrent("Meter.consumeUnits() " + threads + " threads", threads,
+                              blackhole -> {
+                                  meter.consumeUnits(0.1);
+                                  blackhole.consume(meter.getMilliUnits());
+                              });
+        }
+        for (int threads : new int[]{1, 2, 4}) {
+            Meter meter = new Meter("Electricity", 0.013f);
+            meter.setConcurrent(true);
+            measureConcurrent("Meter.consumeUnits() concurrent " + threads, threads,
+                              blackhole -> {
+                                  meter.consumeUnits(0.1);
+                                  blackhole.consume(meter.getMilliUnits());
+                              });
+        }
+
+        out.format(LINE);
+    }
+
+    /**
+     * Returns the benchmarks run on a single thread, by name.
+     */
+    private static Map<String, Setup> setups() {
+        Map<String, Setup> setups = new LinkedHashMap<>();
+
+        for (int appliances : new int[]{10, 1000, 100000}) {
+            setups.put("House.activate() " + appliances + " appliances", resources -> {
+                House house = newHouse(configuration(appliances));
+                return blackhole -> blackhole.consume(house.activate());
+            });
+            setups.put("House.activate() compiled " + appliances, resources -> {
+                House compiled = newHouse(configuration(appliances));
+                compiled.compile();
+                return blackhole -> blackhole.consume(compiled.activate());
+            });
+            setups.put("House.activate() parallel " + appliances, resources -> {
+                House parallel = newHouse(configuration(appliances));
+                parallel.stepInParallel(Runtime.getRuntime().availableProcessors());
+                resources.add(parallel::stepSequentially);
+                return blackhole -> blackhole.consume(parallel.activate());
+            });
+        }
+
+        // Random appliances rarely switched on, where most hours are idle
+        setups.put("House.activate() compiled 1 in 1000", resources -> {
+            House sparseCompiled = newHouse(sparse());
+            sparseCompiled.compile();
+            return blackhole -> blackhole.consume(sparseCompiled.activate());
+        });
+        setups.put("House.activate() events 1 in 1000", resources -> {
+            House sparseEvents = newHouse(sparse());
+            sparseEvents.scheduleEvents();
+            return blackhole -> blackhole.consume(sparseEvents.activate());
+        });
+
+        setups.put("Checkpoint.capture() 100000 appliances", resources -> {
+            House warmed = warmed();
+            return blackhole -> blackhole.consume(Checkpoint.capture(warmed));
+        });
+        setups.put("Checkpoint.restore() 100000 appliances", resources -> {
+            House warmed = warmed();
+            byte[] checkpoint = Checkpoint.capture(warmed);
+            return blackhole -> {
+                Checkpoint.restore(warmed, checkpoint);
+                blackhole.consume(warmed.getBatteryMilliUnits());
+            };
+        });
+
+        for (int appliances : new int[]{1000, 10000, 100000}) {
+            setups.put("FileParser.start() " + appliances + " appliances", resources -> {
+                String file = generate(appliances).toString();
+                return blackhole -> {
+                    HouseConfiguration parsed = new HouseConfiguration();
+                    new FileParser(parsed, file).start();
+                    blackhole.consume(parsed.numAppliances());
+                };
+            });
+        }
+
+        setups.put("BatteryMeter.report() netting", resources -> {
+            BatteryMeter batteryMeter = new BatteryMeter("Electricity", 0.013f, new Battery(500));
+            float[] netUnits = {12.5f, -30.0f, 4.0f, -2.5f, 40.0f, -600.0f, 25.0f};
+            int[] hour = {0};
+            return blackhole -> {
+                batteryMeter.consumeUnits(netUnits[hour[0]++ % netUnits.length]);
+                blackhole.consume(batteryMeter.report(ReportSink.NONE));
+            };
+        });
+
+        setups.put("AsyncReportSink hour published", resources -> {
+            AsyncReportSink asyncSink = new AsyncReportSink(ReportSink.NONE);
+            resources.add(asyncSink);
+            Meter waterMeter = new Meter("Water", 0.002f);
+            BatteryMeter batteryMeter = new BatteryMeter("Electricity", 0.013f, new Battery(500));
+            return blackhole -> {
+                asyncSink.hourStarted(1, 1);
+                asyncSink.meterTableStarted();
+                asyncSink.meterReported(waterMeter, 2.0f, 0.004);
+                asyncSink.meterTableFinished();
+                asyncSink.batteryMeterReported(batteryMeter, 12.5f, 10.0f, 0.13, 10.0f, 2.5f);
+                asyncSink.hourFinished(0.134);
+            };
+        });
+
+        setups.put("WindowedSink hour aggregated", resources -> {
+            WindowedSink windowedSink = new WindowedSink(null);
+            Meter waterMeter = new Meter("Water", 0.002f);
+            BatteryMeter batteryMeter = new BatteryMeter("Electricity", 0.013f, new Battery(500));
+            return blackhole -> {
+                windowedSink.hourStarted(1, 1);
+                windowedSink.meterReported(waterMeter, 2.0f, 0.004);
+                windowedSink.batteryMeterReported(batteryMeter, 12.5f, 10.0f, 0.13, 10.0f, 2.5f);
+                windowedSink.hourFinished(0.134);
+            };
+        });
+
+        setups.put("BatterySweep.run() 8760 hours x 500", resources -> {
+            BatterySweep sweep = new BatterySweep(BatterySweep.trace(newHouse(configuration(10)), 8760), 0.013);
+            double[] capacities = new double[500];
+            for (int c = 0; c < capacities.length; c++) {
+                capacities[c] = c * 2;
+            }
+            return blackhole -> {
+                sweep.run(capacities);
+                blackhole.consume(sweep.getCost(capacities.length - 1));
+            };
+        });
+
+        setups.put("CostLedger.getCostWithout() 8760 hours", resources -> {
+            House ledgerHouse = newHouse(configuration(10));
+            CostLedger ledger = ledgerHouse.keepLedger(8760);
+            Appliance dropped = ledgerHouse.getAppliances().get(0);
+            return blackhole -> blackhole.consume(ledger.getCostWithout(dropped));
+        });
+
+        setups.put("OffHeapFleet.simulate() 10000 houses 24h", resources -> {
+            OffHeapFleet offHeapFleet = new OffHeapFleet(configuration(10), 10000, Runtime.getRuntime().availableProcessors());
+            offHeapFleet.setSeed(42);
+            return blackhole -> blackhole.consume(offHeapFleet.simulate(24).getTotalCost());
+        });
+
+        setups.put("ShardedFleet.simulate() 2 local shards", resources -> {
+            ShardedFleet shardedFleet = ShardedFleet.startLocal(2, 1);
+            resources.add(shardedFleet);
+            shardedFleet.load(configuration(10), 1000, 42);
+            return blackhole -> blackhole.consume(shardedFleet.simulate(24, 24).getTotalCost());
+        });
+
+        setups.put("Tariff.price() 8760 hours", resources -> {
+            float[] trace = BatterySweep.trace(newHouse(configuration(10)), 8760);
+            double[] rates = new double[Tariff.WEEK];
+            for (int h = 0; h < rates.length; h++) {
+                rates[h] = h % 24 < 7 ? 0.008 : 0.016;
+            }
+            Tariff tariff = new Tariff(rates);
+            return blackhole -> blackhole.consume(tariff.price(trace, 0));
+        });
+
+        return setups;
+    }
+
+    /**
+     * Returns the configuration generated with the given number of
+     * appliances, generating and loading it only once.
+     */
+    private static synchronized HouseConfiguration configuration(int appliances) throws IOException {
+        HouseConfiguration configuration = CONFIGURATIONS.get(appliances);
+        if (configuration == null) {
+            configuration = HouseConfiguration.load(generate(appliances).toString());
+            CONFIGURATIONS.put(appliances, configuration);
+        }
+        return configuration;
+    }
+
+    private static HouseConfiguration sparse() {
+        HouseConfiguration sparse = new HouseConfiguration(100000);
+        for (int i = 0; i < 100000; i++) {
+            sparse.add("Light", HouseConfiguration.RANDOM_FIXED, HouseConfiguration.ELECTRIC, 0, 0, 2, 1000, 0);
+        }
+        return sparse;
+    }
+
+    private static House warmed() throws IOException {
+        House warmed = newHouse(configuration(100000));
+        warmed.activate(24);
+        return warmed;
+    }
+
+    private static House newHouse(HouseConfiguration configuration) {
+        House house = configuration.newHouse();
+        house.setSeed(42);
+        house.setHourDelay(0);
+        house.setReportSink(ReportSink.NONE);
+        return house;
+    }
+
+    /**
+     * Measures an operation on the current thread.
+     */
+    private void measure(String name, Operation operation) throws Exception {
+        long thread = Thread.currentThread().getId();
+        Blackhole blackhole = new Blackhole();
+
+        long warmUpEnd = System.nanoTime() + measureNanos / 2;
+        while (System.nanoTime() < warmUpEnd) {
+            operation.run(blackhole);
+        }
+
+        long ops       = 0;
+        long allocated = THREADS.getThreadAllocatedBytes(thread);
+        long start     = System.nanoTime();
+        long end       = start + measureNanos;
+        long now;
+        do {
+            for (int i = 0; i < 16; i++) {
+                operation.run(blackhole);
+            }
+            ops += 16;
+            now = System.nanoTime();
+        } while (now < end);
+        allocated = THREADS.getThreadAllocatedBytes(thread) - allocated;
+        consumed  = blackhole.getHash();
+
+        print(name, ops / ((now - start) / 1e9), (double) allocated / ops);
+    }
+
+    /**
+     * Measures an operation run at the same time by many threads.
+     */
+    private void measureConcurrent(String name, int threads, Operation operation) throws Exception {
+        if (!name.contains(filter)) {
+            return;
+        }
+        long[] ops       = new long[threads];
+        long[] allocated = new long[threads];
+        long[] elapsed   = new long[threads];
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    Blackhole blackhole = new Blackhole();
+                    long warmUpEnd = System.nanoTime() + measureNanos / 2;
+                    while (System.nanoTime() < warmUpEnd) {
+                        operation.run(blackhole);
+                    }
+                    long bytes = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+                    long start = System.nanoTime();
+                    long end   = start + measureNanos;
+                    long now;
+                    long count = 0;
+                    do {
+                        for (int i = 0; i < 1024; i++) {
+                            operation.run(blackhole);
+                        }
+                        count += 1024;
+                        now = System.nanoTime();
+                    } while (now < end);
+                    allocated[worker] = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytes;
+                    ops[worker]       = count;
+                    elapsed[worker]   = now - start;
+                    consumed          = blackhole.getHash();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            workers[t].start();
+        }
+
+        double opsPerSecond = 0;
+        long totalOps = 0;
+        long totalAllocated = 0;
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+            opsPerSecond   += ops[t] / (elapsed[t] / 1e9);
+            totalOps       += ops[t];
+            totalAllocated += allocated[t];
+        }
+        print(name, opsPerSecond, (double) totalAllocated / totalOps);
+    }
+
+    private void print(String name, double opsPerSecond, double bytesPerOp) {
+        out.format(FORMAT, name, String.format("%.1f", opsPerSecond), String.format("%.1f", bytesPerOp));
+    }
+
+    /**
+     * Generates a configuration file with the given number of
+     * appliances, cycling through all types of appliance.
+     *
+     * @param appliances the number of appliances.
+     * @return the path of the file generated.
+     * @throws IOException if the file cannot be written.
+     */
+    static Path generate(int appliances) throws IOException {
+        Path file = Files.createTempFile("house-" + appliances + "-", ".txt");
+        file.toFile().deleteOnExit();
+
+        String[] paragraphs = {
+                "name: Lights\nsubclass: CyclicFixed\nmeter: electric\nMin units consumed:\nMax units consumed:\n"
+                + "Fixed units consumed: 6\nProbability switched on:\nCycle length: 5/24\n",
+                "name: Cooker\nsubclass: CyclicVaries\nmeter: electric\nMin units consumed: 4\nMax units consumed: 10\n"
+                + "Fixed units consumed:\nProbability switched on:\nCycle length: 2/24\n",
+                "name: Toilet\nsubclass: RandomFixed\nmeter: water\nMin units consumed:\nMax units consumed:\n"
+                + "Fixed units consumed: 35\nProbability switched on: 1 in 3\nCycle length:\n",
+                "name: Solar panels\nsubclass: RandomVaries\nmeter: electric\nMin units consumed: -8\nMax units consumed: -1\n"
+                + "Fixed units consumed:\nProbability switched on: 1 in 2\nCycle length:\n"
+        };
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file.toFile()))) {
+            for (int i = 0; i < appliances; i++) {
+                if (i > 0) {
+                    writer.write("\n");
+                }
+                writer.write(paragraphs[i % paragraphs.length]);
+            }
+        }
+        return file;
+    }
+}
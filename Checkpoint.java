@@ -0,0 +1,273 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * This class captures the whole state of a running {@link House} simulation
+ * in a compact binary checkpoint, and restores it exactly, so a long run can
+ * be resumed after an interruption, or many what-if branches can be forked
+ * from a shared warmed-up state without simulating the common hours again.
+ * <p>
+ * A checkpoint holds the hours simulated so far and their cost, the state of
+ * the stream the random streams of new appliances are split from, the
+ * milli-units of the meters and of the battery, and, for each appliance in
+ * the order they were added, the state of its random stream and the hour of
+ * its cycle. The appliances themselves, i.e. the configuration, are not part
+ * of the checkpoint: it is restored into a house with the same appliances,
+ * e.g. one loaded from the same configuration file.
+ * <p>
+ * The format is a header (magic number and version) followed by the values
+ * in big-endian order, as written by {@link DataOutput}: 9 or 10 bytes for
+ * each appliance. Any {@link ApplianceStepper} in use is suspended while
+ * the state is captured or restored, and then created again from it, so the
+ * readings after a restore are exactly the ones of the uninterrupted run.
+ * For a house simulated by an {@link EventScheduler}, the checkpoint also
+ * holds the hours until each random appliance is on next, 8 bytes for each,
+ * which the scheduler goes on from instead of drawing them again.
+ */
+public class Checkpoint {
+    static final int MAGIC   = 0x53484350;   // "SHCP"
+    static final int VERSION = 2;
+
+    private static final byte CYCLIC_FIXED  = 0;
+    private static final byte CYCLIC_VARIES = 1;
+    private static final byte RANDOM_FIXED  = 2;
+    private static final byte RANDOM_VARIES = 3;
+
+    private Checkpoint() {
+    }
+
+    /**
+     * Writes the state of a house to a checkpoint file.
+     *
+     * @param house the house.
+     * @param file  the checkpoint file.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void save(House house, String file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            write(house, out);
+        }
+    }
+
+    /**
+     * Restores the state of a house from a checkpoint file.
+     *
+     * @param house the house, with the same appliances as the one saved.
+     * @param file  the checkpoint file.
+     * @throws IOException if the file cannot be read or does not match the house.
+     */
+    public static void load(House house, String file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            read(house, in);
+        }
+    }
+
+    /**
+     * Returns the state of a house as a checkpoint in memory,
+     * e.g. to fork several branches from it.
+     *
+     * @param house the house.
+     * @return the checkpoint.
+     */
+    public static byte[] capture(House house) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + house.numAppliances() * 18);
+        try {
+            write(house, new DataOutputStream(bytes));
+        } catch (IOException e) {
+            // A ByteArrayOutputStream never fails
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Restores the state of a house from a checkpoint in memory.
+     *
+     * @param house      the house, with the same appliances as the one captured.
+     * @param checkpoint the checkpoint returned by {@link #capture(House)}.
+     * @throws IOException if the checkpoint does not match the house.
+     */
+    public static void restore(House house, byte[] checkpoint) throws IOException {
+        read(house, new DataInputStream(new ByteArrayInputStream(checkpoint)));
+    }
+
+    /**
+     * Writes the state of a house.
+     *
+     * @param house the house.
+     * @param out   the output the checkpoint is written to.
+     * @throws IOException if the output cannot be written.
+     */
+    public static void write(House house, DataOutput out) throws IOException {
+        house.suspendStepper();
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(house.getElapsedHours());
+            out.writeDouble(house.getRunningCost());
+            out.writeLong(house.getSeeds().getState());
+            writeMeter(house.getWaterMeter(), out);
+            writeMeter(house.getElectricMeter(), out);
+
+            List<Appliance> appliances = house.getAppliances();
+            out.writeInt(appliances.size());
+            for (Appliance appliance : appliances) {
+                out.writeByte(kind(appliance));
+                out.writeLong(appliance.getRandomStream().getState());
+                if (appliance instanceof CyclicFixed) {
+                    out.writeByte(((CyclicFixed) appliance).getCurrentTime());
+                } else if (appliance instanceof CyclicVaries) {
+                    out.writeByte(((CyclicVaries) appliance).getCurrentTime());
+                }
+            }
+
+            long[] pendingEvents = house.getPendingEvents();
+            out.writeInt(pendingEvents == null ? -1 : pendingEvents.length);
+            if (pendingEvents != null) {
+                for (long hours : pendingEvents) {
+                    out.writeLong(hours);
+                }
+            }
+        } finally {
+            house.resumeStepper();
+        }
+    }
+
+    /**
+     * Restores the state of a house. Nothing is changed if
+     * the checkpoint does not match the house. A {@link CostLedger}
+     * kept by the house is taken again from the restored state.
+     *
+     * @param house the house, with the same appliances as the one written.
+     * @param in    the input the checkpoint is read from.
+     * @throws IOException if the input cannot be read or does not match the house.
+     */
+    public static void read(House house, DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a checkpoint");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("The checkpoint has version " + version + ", expected " + VERSION);
+        }
+        long   elapsedHours = in.readLong();
+        double runningCost  = in.readDouble();
+        long   seeds        = in.readLong();
+        long[] water        = readMeter(house.getWaterMeter(), in);
+        long[] electricity  = readMeter(house.getElectricMeter(), in);
+
+        List<Appliance> appliances = house.getAppliances();
+        int size = in.readInt();
+        if (size != appliances.size()) {
+            throw new IOException("The checkpoint has " + size + " appliances, the house " + appliances.size());
+        }
+        long[] random      = new long[size];
+        int[]  currentTime = new int[size];
+        int    randomCount = 0;
+        for (int i = 0; i < size; i++) {
+            Appliance appliance = appliances.get(i);
+            if (in.readByte() != kind(appliance)) {
+                throw new IOException("The appliance " + i + " of the checkpoint is not a "
+                                      + appliance.getClass().getSimpleName() + " as " + appliance.getName());
+            }
+            random[i] = in.readLong();
+            if (appliance instanceof CyclicFixed || appliance instanceof CyclicVaries) {
+                currentTime[i] = in.readUnsignedByte();
+            } else {
+                randomCount++;
+            }
+        }
+
+        int    pendingCount  = in.readInt();
+        long[] pendingEvents = null;
+        if (pendingCount != -1) {
+            if (pendingCount != randomCount) {
+                throw new IOException("The checkpoint has the pending events of " + pendingCount
+                                      + " appliances, the house " + randomCount + " random appliances");
+            }
+            pendingEvents = new long[pendingCount];
+            for (int i = 0; i < pendingCount; i++) {
+                pendingEvents[i] = in.readLong();
+                if (pendingEvents[i] < 1) {
+                    throw new IOException("The pending event " + i + " of the checkpoint is in "
+                                          + pendingEvents[i] + " hours, expected at least 1");
+                }
+            }
+        }
+
+        // Everything has been read: the house can be changed
+        house.suspendStepper();
+        house.setElapsed(elapsedHours, runningCost);
+        house.getSeeds().setState(seeds);
+        restoreMeter(house.getWaterMeter(), water);
+        restoreMeter(house.getElectricMeter(), electricity);
+        for (int i = 0; i < size; i++) {
+            Appliance appliance = appliances.get(i);
+            appliance.getRandomStream().setState(random[i]);
+            if (appliance instanceof CyclicFixed) {
+                ((CyclicFixed) appliance).setCurrentTime(currentTime[i]);
+            } else if (appliance instanceof CyclicVaries) {
+                ((CyclicVaries) appliance).setCurrentTime(currentTime[i]);
+            }
+        }
+        // Without pending events, an EventScheduler draws the hours again
+        house.setPendingEvents(pendingEvents);
+        house.resumeStepper();
+        house.recordLedgerAgain();
+    }
+
+    private static byte kind(Appliance appliance) throws IOException {
+        if (appliance instanceof CyclicFixed) {
+            return CYCLIC_FIXED;
+        } else if (appliance instanceof CyclicVaries) {
+            return CYCLIC_VARIES;
+        } else if (appliance instanceof RandomFixed) {
+            return RANDOM_FIXED;
+        } else if (appliance instanceof RandomVaries) {
+            return RANDOM_VARIES;
+        }
+        throw new IOException(appliance.getName() + " cannot be checkpointed");
+    }
+
+    /**
+     * Writes the milli-units of a meter and, for a {@link BatteryMeter}, of its battery.
+     */
+    private static void writeMeter(Meter meter, DataOutput out) throws IOException {
+        out.writeLong(meter.getMilliUnits());
+        boolean battery = meter instanceof BatteryMeter;
+        out.writeBoolean(battery);
+        if (battery) {
+            out.writeLong(((BatteryMeter) meter).getBattery().getMilliUnits());
+        }
+    }
+
+    /**
+     * Reads the milli-units of a meter and of its battery, if any.
+     */
+    private static long[] readMeter(Meter meter, DataInput in) throws IOException {
+        long reading = in.readLong();
+        boolean battery = in.readBoolean();
+        if (battery != meter instanceof BatteryMeter) {
+            throw new IOException("The " + meter.getUtilityName() + " meter of the checkpoint "
+                                  + (battery ? "has" : "has no") + " battery");
+        }
+        return battery ? new long[]{reading, in.readLong()} : new long[]{reading};
+    }
+
+    private static void restoreMeter(Meter meter, long[] milliUnits) {
+        meter.setMilliUnits(milliUnits[0]);
+        if (milliUnits.length > 1) {
+            ((BatteryMeter) meter).getBattery().setMilliUnits(milliUnits[1]);
+        }
+    }
+}
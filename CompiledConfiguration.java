@@ -0,0 +1,271 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class writes and reads a {@link HouseConfiguration} in a compact
+ * binary format, so large configurations can be loaded without parsing text.
+ * <p>
+ * The file starts with a header, followed by one fixed-width record for
+ * each appliance and by a table of the names of the appliances:
+ * <pre>
+ *  header (32 bytes)   magic "HCFG", version, appliances, record size,
+ *                      names, offset of the names table (long), reserved
+ *  record (28 bytes)   type (byte), meter (byte), 2 bytes of padding,
+ *                      min units, max units, fixed units (float),
+ *                      probability, cycle length, index of the name (int)
+ *  names table         for each name: length in bytes (int), UTF-8 bytes
+ * </pre>
+ * All values are little-endian. Names used by many appliances are stored
+ * once. The file is read through a memory-mapped {@link FileChannel}, so
+ * each record is copied straight into the arrays of the configuration.
+ */
+public class CompiledConfiguration {
+    static final int MAGIC       = 0x47464348;   // "HCFG" in little-endian
+    static final int VERSION     = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 28;
+
+    /**
+     * Compiles a TXT configuration file into the binary format.
+     * <p>
+     * Usage: {@code java CompiledConfiguration CONFIGURATION_FILE OUTPUT_FILE}
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: java CompiledConfiguration CONFIGURATION_FILE OUTPUT_FILE");
+            System.exit(1);
+        }
+        compile(args[0], args[1]);
+    }
+
+    /**
+     * Compiles a TXT configuration file into the binary format.
+     *
+     * @param configurationFile the TXT configuration file.
+     * @param compiledFile      the binary file to write.
+     */
+    public static void compile(String configurationFile, String compiledFile) {
+        HouseConfiguration configuration = HouseConfiguration.load(configurationFile);
+        try {
+            write(configuration, compiledFile);
+        } catch (IOException e) {
+            System.out.println("Cannot write the file '" + compiledFile + "': " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println(configuration.numAppliances() + " appliances compiled into " + compiledFile);
+    }
+
+    /**
+     * Checks whether a file starts with the header of the binary format.
+     *
+     * @param file the file to check.
+     * @return {@code true} if the file is a compiled configuration.
+     */
+    public static boolean isCompiled(String file) {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            return in.length() >= HEADER_SIZE && Integer.reverseBytes(in.readInt()) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes a configuration in the binary format.
+     *
+     * @param configuration the configuration to write.
+     * @param file          the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(HouseConfiguration configuration, String file) throws IOException {
+        byte[] bytes = encode(configuration);
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw");
+             FileChannel channel = out.getChannel()) {
+            out.setLength(0);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes.length);
+            buffer.put(bytes);
+            buffer.force();
+        }
+    }
+
+    /**
+     * Encodes a configuration in the binary format, e.g. to send it
+     * to a {@link ShardWorker} instead of writing it to a file.
+     *
+     * @param configuration the configuration to encode.
+     * @return the bytes of the compiled configuration.
+     */
+    static byte[] encode(HouseConfiguration configuration) {
+        int size = configuration.numAppliances();
+
+        // Stores each name only once
+        Map<String, Integer> nameIndexes = new HashMap<>();
+        List<byte[]> names = new ArrayList<>();
+        int[] nameOfAppliance = new int[size];
+        long namesBytes = 0;
+        for (int i = 0; i < size; i++) {
+            Integer index = nameIndexes.get(configuration.getName(i));
+            if (index == null) {
+                index = names.size();
+                nameIndexes.put(configuration.getName(i), index);
+                byte[] name = configuration.getName(i).getBytes(StandardCharsets.UTF_8);
+                names.add(name);
+                namesBytes += 4 + name.length;
+            }
+            nameOfAppliance[i] = index;
+        }
+
+        long namesOffset = HEADER_SIZE + (long) size * RECORD_SIZE;
+        if (namesOffset + namesBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The configuration is too large to compile: " + size + " appliances");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) (namesOffset + namesBytes));
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(RECORD_SIZE)
+              .putInt(names.size()).putLong(namesOffset).putInt(0);
+
+        for (int i = 0; i < size; i++) {
+            buffer.put(configuration.getType(i))
+                  .put(configuration.getMeter(i))
+                  .putShort((short) 0)
+                  .putFloat(configuration.getMinUnits(i))
+                  .putFloat(configuration.getMaxUnits(i))
+                  .putFloat(configuration.getFixedUnits(i))
+                  .putInt(configuration.getProbability(i))
+                  .putInt(configuration.getCycleLength(i))
+                  .putInt(nameOfAppliance[i]);
+        }
+
+        for (byte[] name : names) {
+            buffer.putInt(name.length).put(name);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Reads a configuration written in the binary format.
+     *
+     * @param file the file to read.
+     * @return the configuration.
+     * @throws Exception if the file cannot be read or is not a valid compiled configuration.
+     */
+    public static HouseConfiguration read(String file) throws Exception {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+             FileChannel channel = in.getChannel()) {
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), "'" + file + "'");
+        }
+    }
+
+    /**
+     * Decodes a configuration encoded by {@link #encode(HouseConfiguration)}.
+     *
+     * @param bytes the bytes of the compiled configuration.
+     * @return the configuration.
+     * @throws Exception if the bytes are not a valid compiled configuration.
+     */
+    static HouseConfiguration decode(byte[] bytes) throws Exception {
+        return decode(ByteBuffer.wrap(bytes), "The configuration received");
+    }
+
+    private static HouseConfiguration decode(ByteBuffer buffer, String source) throws Exception {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new Exception(source + " is not a compiled configuration.");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new Exception(source + " has version " + buffer.getInt(4) + ", expected " + VERSION + ".");
+        }
+        if (buffer.getInt(12) != RECORD_SIZE) {
+            throw new Exception(source + " has records of " + buffer.getInt(12) + " bytes, expected " + RECORD_SIZE + ".");
+        }
+        int  size        = buffer.getInt(8);
+        int  nameCount   = buffer.getInt(16);
+        long namesOffset = buffer.getLong(20);
+        if (size < 0) {
+            throw new Exception(source + " is not valid. The number of appliances is negative: " + size);
+        }
+        if (nameCount < 0) {
+            throw new Exception(source + " is not valid. The number of names is negative: " + nameCount);
+        }
+        if (namesOffset != HEADER_SIZE + (long) size * RECORD_SIZE || namesOffset > buffer.limit()) {
+            throw new Exception(source + " is not valid. The names table starts at " + namesOffset + ", expected "
+                                + (HEADER_SIZE + (long) size * RECORD_SIZE) + " in " + buffer.limit() + " bytes");
+        }
+        if (nameCount > (buffer.limit() - namesOffset) / 4) {
+            throw new Exception(source + " is not valid. The names table has " + nameCount + " names, at most "
+                                + (buffer.limit() - namesOffset) / 4 + " fit in the file");
+        }
+
+        String[] names = new String[nameCount];
+        int position = (int) namesOffset;
+        for (int n = 0; n < nameCount; n++) {
+            if (buffer.limit() - position < 4) {
+                throw new Exception(source + " is not valid. The length of name " + n + " is past the end");
+            }
+            int length = buffer.getInt(position);
+            if (length < 0 || length > buffer.limit() - position - 4) {
+                throw new Exception(source + " is not valid. Name " + n + " has " + length + " bytes, "
+                                    + (buffer.limit() - position - 4) + " are left");
+            }
+            byte[] name = new byte[length];
+            buffer.get(position + 4, name);
+            names[n] = new String(name, StandardCharsets.UTF_8);
+            position += 4 + length;
+        }
+
+        HouseConfiguration configuration = new HouseConfiguration(size);
+        for (int i = 0; i < size; i++) {
+            int record = HEADER_SIZE + i * RECORD_SIZE;
+            byte type = buffer.get(record);
+            if (type < HouseConfiguration.CYCLIC_FIXED || type > HouseConfiguration.RANDOM_VARIES) {
+                throw new Exception(source + " is not valid. Unknown type of appliance in record " + i + ": " + type);
+            }
+            byte meter = buffer.get(record + 1);
+            if (meter != HouseConfiguration.WATER && meter != HouseConfiguration.ELECTRIC) {
+                throw new Exception(source + " is not valid. Unknown meter in record " + i + ": " + meter);
+            }
+            int cycle = buffer.getInt(record + 20);
+            if (cycle < 0 || cycle > 24) {
+                throw new Exception(source + " is not valid. The cycle length of record " + i + " is " + cycle
+                                    + ", expected 0 to 24");
+            }
+            int name = buffer.getInt(record + 24);
+            if (name < 0 || name >= nameCount) {
+                throw new Exception(source + " is not valid. The name of record " + i + " is " + name
+                                    + ", expected 0 to " + (nameCount - 1));
+            }
+            int probability = buffer.getInt(record + 16);
+            if (probability <= 0
+                    && (type == HouseConfiguration.RANDOM_FIXED || type == HouseConfiguration.RANDOM_VARIES)) {
+                throw new Exception(source + " is not valid. The probability of record " + i + " is 1 in "
+                                    + probability + ", expected a positive number");
+            }
+            float minUnits   = buffer.getFloat(record + 4);
+            float maxUnits   = buffer.getFloat(record + 8);
+            float fixedUnits = buffer.getFloat(record + 12);
+            if (Float.isNaN(minUnits) || Float.isNaN(maxUnits) || Float.isNaN(fixedUnits)) {
+                throw new Exception(source + " is not valid. The units of record " + i + " are not a number: min "
+                                    + minUnits + ", max " + maxUnits + ", fixed " + fixedUnits);
+            }
+            configuration.add(names[name],
+                              type,
+                              meter,
+                              minUnits,
+                              maxUnits,
+                              fixedUnits,
+                              probability,
+                              cycle);
+        }
+        return configuration;
+    }
+}
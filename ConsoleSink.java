@@ -0,0 +1,91 @@
+import java.io.Flushable;
+import java.io.PrintStream;
+
+/**
+ * {@inheritDoc}
+ *
+ * This class prints the hourly results of the simulation as
+ * the tables the {@link House} has always printed on the console.
+ */
+public class ConsoleSink implements ReportSink, Flushable {
+
+    /**
+     * A {@code ConsoleSink} printing on {@code System.out}.
+     */
+    static final ConsoleSink SYSTEM_OUT = new ConsoleSink(System.out);
+
+    private static final String METER_FORMAT         = "| %-12s | %-12s | %-12s | %n";
+    private static final String METER_LINE           = "+--------------+--------------+--------------+%n";
+    private static final String BATTERY_METER_FORMAT = "| %-12s | %-12s | %-12s | %-27s | %-29s | %-18s |%n";
+    private static final String BATTERY_METER_LINE   = "+--------------+--------------+--------------+-----------------------------+-------------------------------+--------------------+%n";
+
+    private PrintStream out;
+
+    /**
+     * Creates a new {@code ConsoleSink}.
+     *
+     * @param out the stream where the tables are printed.
+     */
+    public ConsoleSink(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void hourStarted(int day, int hour) {
+        out.println("Day: " + day);
+        out.println("Time: " + hour + ":00");
+    }
+
+    @Override
+    public void meterTableStarted() {
+        out.format(METER_LINE);
+        out.format("|   Utility    |    Meter     |    Cost(GPB) |%n");
+        out.format(METER_LINE);
+    }
+
+    @Override
+    public void meterReported(Meter meter, float reading, double cost) {
+        if(reading < 0){
+            out.format(METER_FORMAT, meter.getUtilityName(), 0.0f, 0.0f);
+        }else{
+            out.format(METER_FORMAT, meter.getUtilityName(), reading, String.format("%.2f", cost));
+        }
+    }
+
+    @Override
+    public void meterTableFinished() {
+        out.format(METER_LINE);
+    }
+
+    @Override
+    public void batteryMeterReported(BatteryMeter meter, float consumed, float reading, double cost,
+                                     float unitsFromMains, float unitsFromBattery) {
+        Battery battery = meter.getBattery();
+
+        out.format(BATTERY_METER_LINE);
+        out.format("| Utility name |    Meter     |   Cost(GPB)  | Units drawn from the mains  |  Units drawn from the battery |Units in the battery|%n");
+        out.format(BATTERY_METER_LINE);
+        out.format(BATTERY_METER_FORMAT, meter.getUtilityName(), reading, String.format("%.2f", cost), unitsFromMains, unitsFromBattery,
+                   battery.getBatteryUnits() + "/" + battery.getBatteryCapacity());
+        out.format(BATTERY_METER_LINE);
+    }
+
+    @Override
+    public void hourFinished(double cost) {
+        out.println();
+    }
+
+    @Override
+    public void simulationFinished(double totalCost) {
+        if (totalCost < 0) {
+            out.println(String.format("The total cost is: " + "%.2f", 0.0) + "GPB");
+        } else {
+            out.println(String.format("The total cost is: " + "%.2f", totalCost) + "GPB");
+        }
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+}
@@ -0,0 +1,296 @@
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps the units each {@link Appliance} of a {@link House}
+ * consumes in each hour of a horizon, so the cost of the house can be
+ * computed again when an appliance is added or removed, without simulating
+ * the whole house again.
+ * <p>
+ * Every appliance is simulated once over the horizon, alone, on a scratch
+ * meter, and its milli-units of each hour are kept in its own column and
+ * added to the hourly totals of its meter. The appliances do not depend on
+ * each other, so adding or removing an appliance only adds or subtracts its
+ * column to/from the totals, and the cost is given by a single pass of the
+ * meters over the totals: the netting of the {@link BatteryMeter} against its
+ * {@link Battery} and the {@link Tariff}, if any, are applied exactly as in
+ * {@link House#activate(int)}. The cost of a what-if change scales with the
+ * hours of the horizon, not with the number of appliances of the house.
+ * <p>
+ * Simulating an appliance for the ledger does not change it: its random
+ * stream and the hour of its cycle are put back afterwards, so the readings
+ * of the house are the same as if the ledger had never been kept. Each
+ * appliance needs 8 bytes for each hour of the horizon.
+ */
+public class CostLedger {
+    private House house;
+    private int   hours;
+    private long  startHour;
+    private long  startBatteryUnits;
+
+    private Map<Appliance, long[]> contributions;
+    private long[][]               totals;
+
+    /**
+     * Prints the cost of a house over a horizon without each of its appliances.
+     * <p>
+     * Usage: {@code java CostLedger CONFIGURATION_FILE [--hours=n] [--seed=N]}
+     * <p>
+     * The house is simulated once for {@code n} hours (168 by default), and
+     * then the cost without each appliance is computed from the ledger.
+     */
+    public static void main(String[] args) {
+        String configurationFile = null;
+        int    hours = 168;
+        Long   seed  = null;
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--hours=")) {
+                    hours = Integer.parseInt(arg.substring("--hours=".length()));
+                } else if (arg.startsWith("--seed=")) {
+                    seed = Long.parseLong(arg.substring("--seed=".length()));
+                } else {
+                    configurationFile = arg;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Not a valid number: " + e.getMessage());
+            System.exit(1);
+        }
+        if (configurationFile == null) {
+            System.out.println("Usage: java CostLedger CONFIGURATION_FILE [--hours=n] [--seed=N]");
+            System.exit(1);
+        }
+
+        House house = HouseConfiguration.load(configurationFile).newHouse();
+        if (seed != null) {
+            house.setSeed(seed);
+        }
+        long start = System.nanoTime();
+        CostLedger ledger = house.keepLedger(hours);
+        long recorded = System.nanoTime();
+        double totalCost = ledger.getTotalCost();
+
+        String format = "| %-24s | %-14s | %-14s |%n";
+        String line   = "+--------------------------+----------------+----------------+%n";
+        System.out.format(line);
+        System.out.format(format, "Without", "Cost(GPB)", "Saving(GPB)");
+        System.out.format(line);
+        System.out.format(format, "-", String.format("%.2f", totalCost), "");
+        for (Appliance appliance : house.getAppliances()) {
+            double cost = ledger.getCostWithout(appliance);
+            System.out.format(format, appliance.getName(), String.format("%.2f", cost),
+                              String.format("%.2f", totalCost - cost));
+        }
+        System.out.format(line);
+        System.out.println(String.format("Appliances: %d, hours: %d, recorded in %.3fs, each what-if in %.3fms",
+                                         house.numAppliances(), hours, (recorded - start) / 1e9,
+                                         (System.nanoTime() - recorded) / 1e6 / (house.numAppliances() + 1)));
+    }
+
+    /**
+     * Creates a new empty {@code CostLedger} of a house.
+     *
+     * @param house the house.
+     * @param hours the hours of the horizon.
+     */
+    private CostLedger(House house, int hours) {
+        this.house             = house;
+        this.hours             = hours;
+        this.startHour         = house.getElapsedHours();
+        this.startBatteryUnits = house.getBatteryMilliUnits();
+        this.contributions     = new IdentityHashMap<>();
+        this.totals            = new long[2][hours];
+    }
+
+    /**
+     * Simulates every appliance of a house over the given hours, from the
+     * current state of the house, and keeps the units of each one.
+     *
+     * @param house the house.
+     * @param hours the hours of the horizon.
+     * @return the ledger.
+     */
+    static CostLedger record(House house, int hours) {
+        CostLedger ledger = new CostLedger(house, hours);
+        house.suspendStepper();
+        try {
+            for (Appliance appliance : house.getAppliances()) {
+                ledger.added(appliance);
+            }
+        } finally {
+            house.resumeStepper();
+        }
+        return ledger;
+    }
+
+    /**
+     * Returns the hours of the horizon of the ledger.
+     * @return the number of hours
+     */
+    public int getHours() {
+        return hours;
+    }
+
+    /**
+     * Simulates an appliance just added to the house over the
+     * horizon, and adds its units to the totals of its meter.
+     *
+     * @param appliance the appliance added.
+     */
+    void added(Appliance appliance) {
+        long[] units = simulate(appliance);
+        contributions.put(appliance, units);
+        add(series(appliance), units, 1);
+    }
+
+    /**
+     * Subtracts the units of an appliance just removed from
+     * the house from the totals of its meter.
+     *
+     * @param appliance the appliance removed.
+     */
+    void removed(Appliance appliance) {
+        long[] units = contributions.remove(appliance);
+        if (units != null) {
+            add(series(appliance), units, -1);
+        }
+    }
+
+    /**
+     * Returns the cost of the house over the horizon,
+     * with the appliances it has now.
+     *
+     * @return the total cost.
+     */
+    public double getTotalCost() {
+        return cost();
+    }
+
+    /**
+     * Returns the cost the house would have over the horizon without
+     * one of its appliances, leaving the ledger as it is.
+     *
+     * @param appliance an appliance of the house.
+     * @return the total cost without the appliance.
+     */
+    public double getCostWithout(Appliance appliance) {
+        long[] units = contributions.get(appliance);
+        if (units == null) {
+            throw new IllegalArgumentException(appliance.getName() + " is not in the ledger");
+        }
+        int s = series(appliance);
+        add(s, units, -1);
+        try {
+            return cost();
+        } finally {
+            add(s, units, 1);
+        }
+    }
+
+    /**
+     * Returns the milli-units consumed each hour by one of the appliances.
+     *
+     * @param appliance an appliance of the house.
+     * @return the milli-units of each hour, {@code null} if the appliance is not in the ledger.
+     */
+    long[] getContribution(Appliance appliance) {
+        return contributions.get(appliance);
+    }
+
+    /**
+     * Returns the series of the meter of an appliance:
+     * 0 for the water meter, 1 for the electricity meter.
+     */
+    private int series(Appliance appliance) {
+        return appliance.getMeter() == house.getWaterMeter() ? 0 : 1;
+    }
+
+    private void add(int s, long[] units, int sign) {
+        long[] total = totals[s];
+        for (int hour = 0; hour < hours; hour++) {
+            total[hour] += sign * units[hour];
+        }
+    }
+
+    /**
+     * Simulates one appliance over the horizon on a scratch meter, and
+     * then puts its state back as it was.
+     *
+     * @return the milli-units consumed in each hour.
+     */
+    private long[] simulate(Appliance appliance) {
+        Meter meter   = appliance.getMeter();
+        Meter scratch = new Meter(meter.getUtilityName(), meter.getUnitCost());
+        long  random  = appliance.getRandomStream().getState();
+        int   time    = currentTime(appliance);
+
+        long[] units = new long[hours];
+        appliance.setMeter(scratch);
+        for (int hour = 0; hour < hours; hour++) {
+            appliance.timePasses();
+            units[hour] = scratch.getMilliUnits();
+            scratch.setMilliUnits(0);
+        }
+
+        appliance.setMeter(meter);
+        appliance.getRandomStream().setState(random);
+        setCurrentTime(appliance, time);
+        return units;
+    }
+
+    private static int currentTime(Appliance appliance) {
+        if (appliance instanceof CyclicFixed) {
+            return ((CyclicFixed) appliance).getCurrentTime();
+        } else if (appliance instanceof CyclicVaries) {
+            return ((CyclicVaries) appliance).getCurrentTime();
+        }
+        return 0;
+    }
+
+    private static void setCurrentTime(Appliance appliance, int time) {
+        if (appliance instanceof CyclicFixed) {
+            ((CyclicFixed) appliance).setCurrentTime(time);
+        } else if (appliance instanceof CyclicVaries) {
+            ((CyclicVaries) appliance).setCurrentTime(time);
+        }
+    }
+
+    /**
+     * Reports the hourly totals through copies of the meters of the house,
+     * with its battery as it was at the start of the horizon. The copies
+     * do not count the {@link SimulatorMetrics}, as no hour is simulated.
+     *
+     * @return the total cost.
+     */
+    private double cost() {
+        Meter[] meters = {copy(house.getWaterMeter()), copy(house.getElectricMeter())};
+        double totalCost = 0;
+        for (int hour = 0; hour < hours; hour++) {
+            // Summed in the same order as the house, so the costs are exactly the same
+            double hourCost = 0;
+            for (int s = 0; s < meters.length; s++) {
+                meters[s].setTariffHour(startHour + hour);
+                meters[s].consumeMilliUnits(totals[s][hour]);
+                hourCost += meters[s].report(ReportSink.NONE);
+            }
+            totalCost += hourCost;
+        }
+        return totalCost;
+    }
+
+    private Meter copy(Meter meter) {
+        Meter copy;
+        if (meter instanceof BatteryMeter) {
+            Battery battery = new Battery(((BatteryMeter) meter).getBattery().getBatteryCapacity());
+            battery.setMilliUnits(startBatteryUnits);
+            copy = new BatteryMeter(meter.getUtilityName(), meter.getUnitCost(), battery);
+        } else {
+            copy = new Meter(meter.getUtilityName(), meter.getUnitCost());
+        }
+        copy.setTariff(meter.getTariff());
+        copy.stopCountingMetrics();
+        return copy;
+    }
+}
@@ -0,0 +1,73 @@
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * {@inheritDoc}
+ *
+ * This class writes one CSV row for each {@link Meter} reported
+ * every hour, with the following columns:
+ *
+ *      day, hour, utility, consumed, reading, cost,
+ *      units from the mains, units from the battery, units in the battery
+ *
+ * The battery columns are left empty for plain {@link Meter} objects.
+ */
+public class CsvSink implements ReportSink, Flushable {
+    private Writer out;
+    private int    day;
+    private int    hour;
+
+    /**
+     * Creates a new {@code CsvSink} and writes the header row.
+     *
+     * @param out the writer where the rows are written.
+     */
+    public CsvSink(Writer out) {
+        this.out = out;
+        write("day,hour,utility,consumed,reading,cost,units_from_mains,units_from_battery,battery_units\n");
+    }
+
+    @Override
+    public void hourStarted(int day, int hour) {
+        this.day  = day;
+        this.hour = hour;
+    }
+
+    @Override
+    public void meterReported(Meter meter, float reading, double cost) {
+        float unitsFromMains = reading > 0 ? reading : 0.0f;
+        write(day + "," + hour + "," + meter.getUtilityName() + "," + reading + "," + reading + "," + cost + ","
+              + unitsFromMains + ",,\n");
+    }
+
+    @Override
+    public void batteryMeterReported(BatteryMeter meter, float consumed, float reading, double cost,
+                                     float unitsFromMains, float unitsFromBattery) {
+        write(day + "," + hour + "," + meter.getUtilityName() + "," + consumed + "," + reading + "," + cost + ","
+              + unitsFromMains + "," + unitsFromBattery + "," + meter.getBattery().getBatteryUnits() + "\n");
+    }
+
+    @Override
+    public void simulationFinished(double totalCost) {
+        flush();
+    }
+
+    @Override
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(String row) {
+        try {
+            out.write(row);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
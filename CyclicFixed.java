@@ -61,4 +61,83 @@ public class CyclicFixed extends Appliance {
             tellMeterToConsumeUnits(unitsFixed);
         }
     }
+
+    /**
+     * {@inheritDoc}
+     *
+     * A {@code CyclicFixed} appliance is always deterministic.
+     */
+    @Override
+    public boolean isDeterministic() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Counts the hours of the range which fall in the first
+     * {@code cycleLength} hours of the day: {@code cycleLength}
+     * hours for every full day, plus the hours of the last
+     * partial day, which may wrap around midnight.
+     */
+    @Override
+    public double unitsOver(int hours) {
+        if(hours <= 0){
+            return 0;
+        }
+        int start = currentTime % 24;     // hours 1..24 already passed today
+        int rest  = hours % 24;
+
+        long hoursOn = (long) (hours / 24) * cycleLength;
+        if(start + rest <= 24){
+            hoursOn += hoursOnUntil(start + rest) - hoursOnUntil(start);
+        }else{
+            hoursOn += hoursOnUntil(24) - hoursOnUntil(start) + hoursOnUntil(start + rest - 24);
+        }
+
+        currentTime = (start + hours - 1) % 24 + 1;
+        // Exactly the milli-units the meter would have been given hour by hour
+        return Meter.toUnits(hoursOn * Meter.toMilliUnits(unitsFixed));
+    }
+
+    /**
+     * Returns how many of the hours from 1 to {@code time} of a day
+     * the appliance is on.
+     */
+    private int hoursOnUntil(int time) {
+        return Math.min(time, cycleLength);
+    }
+
+    /**
+     * Returns the units consumed each hour the appliance is on.
+     * @return the fixed units
+     */
+    float getUnitsFixed() {
+        return unitsFixed;
+    }
+
+    /**
+     * Returns the number of hours the appliance is on each day.
+     * @return the cycle length
+     */
+    int getCycleLength() {
+        return cycleLength;
+    }
+
+    /**
+     * Returns the hour of the day the appliance has reached,
+     * 0 if it has never been activated.
+     * @return the current time
+     */
+    int getCurrentTime() {
+        return currentTime;
+    }
+
+    /**
+     * Sets the hour of the day the appliance has reached.
+     * @param currentTime the current time, between 0 and 24
+     */
+    void setCurrentTime(int currentTime) {
+        this.currentTime = currentTime;
+    }
 }
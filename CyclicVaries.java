@@ -68,4 +68,45 @@ public class CyclicVaries extends Appliance {
             tellMeterToConsumeUnits(randomUnits);
         }
     }
+
+    /**
+     * Returns the min units that can be consumed each hour.
+     * @return the min units
+     */
+    float getMinUnits() {
+        return minUnits;
+    }
+
+    /**
+     * Returns the max units that can be consumed each hour.
+     * @return the max units
+     */
+    float getMaxUnits() {
+        return maxUnits;
+    }
+
+    /**
+     * Returns the number of hours the appliance is on each day.
+     * @return the cycle length
+     */
+    int getCycleLength() {
+        return cycleLength;
+    }
+
+    /**
+     * Returns the hour of the day the appliance has reached,
+     * 0 if it has never been activated.
+     * @return the current time
+     */
+    int getCurrentTime() {
+        return currentTime;
+    }
+
+    /**
+     * Sets the hour of the day the appliance has reached.
+     * @param currentTime the current time, between 0 and 24
+     */
+    void setCurrentTime(int currentTime) {
+        this.currentTime = currentTime;
+    }
 }
@@ -0,0 +1,71 @@
+import java.util.Arrays;
+
+/**
+ * This class summarises the values of many independent simulations,
+ * e.g. the total cost of each replica of a {@link MonteCarlo} run,
+ * with their mean, standard deviation and percentiles.
+ */
+public class Distribution {
+    private double[] sorted;
+    private double   mean;
+    private double   standardDeviation;
+
+    /**
+     * Creates a new {@code Distribution} of the given values.
+     * The array is sorted in place.
+     *
+     * @param values the values, at least one.
+     */
+    Distribution(double[] values) {
+        Arrays.parallelSort(values);
+        this.sorted = values;
+
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        this.mean = sum / values.length;
+
+        double squares = 0;
+        for (double value : values) {
+            squares += (value - mean) * (value - mean);
+        }
+        this.standardDeviation = values.length > 1 ? Math.sqrt(squares / (values.length - 1)) : 0;
+    }
+
+    /**
+     * Returns the number of values.
+     * @return the number of values
+     */
+    public int getCount() {
+        return sorted.length;
+    }
+
+    /**
+     * Returns the mean of the values.
+     * @return the mean
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Returns the sample standard deviation of the values.
+     * @return the standard deviation
+     */
+    public double getStandardDeviation() {
+        return standardDeviation;
+    }
+
+    /**
+     * Returns the value below which the given percentage of
+     * values fall, using the nearest-rank method.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the value of the percentile
+     */
+    public double getPercentile(double percentile) {
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+}
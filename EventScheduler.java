@@ -0,0 +1,214 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@inheritDoc}
+ *
+ * This class simulates the {@link RandomFixed} and {@link RandomVaries}
+ * appliances of a {@link House} by events, instead of drawing a random
+ * number for each of them every hour.
+ * <p>
+ * An appliance switched on "1 in N" hours is on in each hour with a
+ * probability of {@code 1/N}, so the hours between two times it is on
+ * follow a geometric distribution. The next hour each random appliance
+ * is on is drawn from that distribution and kept in a binary heap of
+ * primitive arrays, ordered by hour. Every hour only the appliances at
+ * the top of the heap whose hour has come are switched on and scheduled
+ * again, so the cost of an hour depends on the number of appliances on,
+ * not on the number of appliances in the house. Cyclic appliances, which
+ * are on every day, are still simulated by {@link Appliance#timePasses()}.
+ * <p>
+ * The readings have the same distribution as the ones of
+ * {@link Appliance#timePasses()}, but not the same values for the same
+ * seed, as the random streams are used in a different way. Since the hours
+ * of a Bernoulli process are independent, nothing has to be written back
+ * to the appliances when the scheduler is released.
+ */
+class EventScheduler implements ApplianceStepper {
+    private List<Appliance> cyclic;
+    private int[]           cyclicStepsPerHour;
+
+    private Appliance[] random;
+    private boolean[]   varies;
+    private float[]     minUnits;
+    private float[]     maxUnits;
+    private double[]    logNotOn;
+    private long[]      nextOn;
+
+    private int[] heap;
+    private long  hour;
+
+    /**
+     * Creates a new {@code EventScheduler} for the given appliances,
+     * drawing the first hour each random appliance is on.
+     *
+     * @param appliances the appliances of the house.
+     * @return the scheduler.
+     * @throws Exception if an appliance has no meter or its probability is not positive.
+     */
+    static EventScheduler create(List<Appliance> appliances) throws Exception {
+        return create(appliances, null);
+    }
+
+    /**
+     * Creates a new {@code EventScheduler} for the given appliances, going on
+     * from the hours returned by {@link #getPendingHours()} of a previous one,
+     * so no hour is drawn again, or drawing the first hours if none is given.
+     *
+     * @param appliances the appliances of the house.
+     * @param pending    the hours until each random appliance is on, {@code null} to draw them.
+     * @return the scheduler.
+     * @throws Exception if an appliance has no meter or its probability is not positive,
+     *                   or if the pending hours do not match the random appliances.
+     */
+    static EventScheduler create(List<Appliance> appliances, long[] pending) throws Exception {
+        EventScheduler scheduler = new EventScheduler();
+        scheduler.cyclic = new ArrayList<>();
+        List<Appliance> random = new ArrayList<>();
+        for (Appliance appliance : appliances) {
+            appliance.checkMeterSet();
+            if (appliance instanceof RandomFixed || appliance instanceof RandomVaries) {
+                random.add(appliance);
+            } else {
+                scheduler.cyclic.add(appliance);
+            }
+        }
+
+        scheduler.cyclicStepsPerHour = SimulatorMetrics.stepsPerHour(scheduler.cyclic);
+
+        int size = random.size();
+        if (pending != null && pending.length != size) {
+            throw new Exception("The pending hours of " + pending.length + " appliances do not match the "
+                                + size + " random appliances of the house");
+        }
+        scheduler.random   = random.toArray(new Appliance[0]);
+        scheduler.varies   = new boolean[size];
+        scheduler.minUnits = new float[size];
+        scheduler.maxUnits = new float[size];
+        scheduler.logNotOn = new double[size];
+        scheduler.nextOn   = new long[size];
+        scheduler.heap     = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            int probability;
+            if (scheduler.random[i] instanceof RandomFixed) {
+                RandomFixed a = (RandomFixed) scheduler.random[i];
+                probability           = a.getProbability();
+                scheduler.minUnits[i] = a.getUnitsFixed();
+                scheduler.maxUnits[i] = a.getUnitsFixed();
+            } else {
+                RandomVaries a = (RandomVaries) scheduler.random[i];
+                probability           = a.getProbability();
+                scheduler.varies[i]   = true;
+                scheduler.minUnits[i] = a.getMinUnits();
+                scheduler.maxUnits[i] = a.getMaxUnits();
+            }
+            if (probability <= 0) {
+                throw new Exception("The probability must be positive. Error in appliance: " + scheduler.random[i].getName());
+            }
+            // log(1 - 1/N), -Infinity for "1 in 1", i.e. on every hour
+            scheduler.logNotOn[i] = Math.log1p(-1.0 / probability);
+            scheduler.nextOn[i]   = pending != null ? pending[i] : scheduler.hoursUntilOn(i);
+            scheduler.heap[i]     = i;
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            scheduler.siftDown(i);
+        }
+        return scheduler;
+    }
+
+    /**
+     * Returns the number of random appliances scheduled by events.
+     *
+     * @return the number of random appliances.
+     */
+    int numScheduled() {
+        return random.length;
+    }
+
+    /**
+     * Returns the hours until each random appliance is on next, in the order
+     * they were added to the house, e.g. to create the scheduler again.
+     *
+     * @return the hours, at least 1.
+     */
+    long[] getPendingHours() {
+        long[] pending = new long[random.length];
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = nextOn[i] - hour;
+        }
+        return pending;
+    }
+
+    @Override
+    public void stepHour() {
+        for (Appliance appliance : cyclic) {
+            appliance.timePasses();
+        }
+        SimulatorMetrics.countSteps(cyclicStepsPerHour, 1);
+
+        // Only the random appliances switched on are counted as stepped
+        long firedFixed  = 0;
+        long firedVaries = 0;
+        hour++;
+        while (heap.length > 0 && nextOn[heap[0]] <= hour) {
+            int i = heap[0];
+            if (varies[i]) {
+                firedVaries++;
+            } else {
+                firedFixed++;
+            }
+            float units = minUnits[i] == maxUnits[i]
+                          ? minUnits[i]
+                          : Appliance.randomUnits(minUnits[i], maxUnits[i], random[i].getRandomStream().nextFloat());
+            random[i].getMeter().consumeUnits(units);
+
+            nextOn[i] = hour + hoursUntilOn(i);
+            siftDown(0);
+        }
+        SimulatorMetrics.add(SimulatorMetrics.RANDOM_FIXED_STEPS, firedFixed);
+        SimulatorMetrics.add(SimulatorMetrics.RANDOM_VARIES_STEPS, firedVaries);
+    }
+
+    @Override
+    public void release() {
+        // The appliances are memoryless: only the pending hours are kept, by the house
+    }
+
+    /**
+     * Draws the number of hours until the next hour the appliance is on,
+     * at least 1, from the geometric distribution of its probability,
+     * by inverting its cumulative distribution function.
+     *
+     * @param i the index of the appliance.
+     * @return the hours until the appliance is on.
+     */
+    private long hoursUntilOn(int i) {
+        double uniform = 1.0 - random[i].getRandomStream().nextDouble();   // in (0, 1]
+        return 1 + (long) Math.floor(Math.log(uniform) / logNotOn[i]);
+    }
+
+    /**
+     * Moves the appliance at the given position of the heap down,
+     * until its next hour is not later than the ones of its children.
+     *
+     * @param position the position in the heap.
+     */
+    private void siftDown(int position) {
+        int  i    = heap[position];
+        long next = nextOn[i];
+        int  half = heap.length >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < heap.length && nextOn[heap[child + 1]] < nextOn[heap[child]]) {
+                child++;
+            }
+            if (next <= nextOn[heap[child]]) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = i;
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * This class is an exponentially weighted moving average of the values of
+ * a stream: each new hour is given the weight {@code alpha}, and the weight of
+ * older hours decays geometrically, so recent hours matter more than old ones.
+ * It is updated in constant time and keeps a single value.
+ */
+public class Ewma {
+    private double alpha;
+    private double value;
+    private long   hours;
+
+    /**
+     * Creates a new {@code Ewma}.
+     *
+     * @param alpha the weight of each new hour, between 0 (excluded) and 1.
+     */
+    public Ewma(double alpha) {
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("The weight must be between 0 and 1: " + alpha);
+        }
+        this.alpha = alpha;
+    }
+
+    /**
+     * Creates an {@code Ewma} whose weight of an hour halves after the given hours.
+     *
+     * @param halfLife the hours after which the weight of an hour is halved.
+     * @return the average.
+     */
+    public static Ewma withHalfLife(double halfLife) {
+        return new Ewma(1 - Math.pow(0.5, 1 / halfLife));
+    }
+
+    /**
+     * Adds the value of the next hour. The first value
+     * added is taken as the average.
+     *
+     * @param value the value of the hour.
+     */
+    public void add(double value) {
+        this.value = hours++ == 0 ? value : this.value + alpha * (value - this.value);
+    }
+
+    /**
+     * Returns the weight of each new hour.
+     * @return alpha
+     */
+    public double getAlpha() {
+        return alpha;
+    }
+
+    /**
+     * Returns the average.
+     * @return the average, 0 if no hour has been added
+     */
+    public double getValue() {
+        return value;
+    }
+}
@@ -1,6 +1,4 @@
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Class for reading different types of {@link Appliance} objects
@@ -8,9 +6,15 @@ import java.util.List;
  * {@code FileParser} class define the format of the TXT file needed
  * to individuate all properties of each {@link Appliance} object.
  * <p>
- * The format (stored in {@code paragraphFormat}) of the TXT file
- * should therefore be strictly correct, there will be thrown exceptions
- * otherwise.
+ * The file is read line by line: each line is matched against the
+ * properties of {@code paragraphFormat}, and the properties of the
+ * current paragraph are kept until the paragraph is complete, i.e. a
+ * blank line, a new "name" property or the end of the file is found.
+ * Only one paragraph is held in memory, so files with millions of
+ * appliances can be read, and the order of the properties inside a
+ * paragraph and the number of blank lines between paragraphs do not matter.
+ * Any line which is not a property, or any property which is not valid,
+ * is reported with its line number.
  * <p>
  * If the TXT file add some new {@link Appliance} properties or properties of
  * file itself, the format could be easily changed by just reassigning different
@@ -26,13 +30,15 @@ import java.util.List;
 
 public class FileParser {
     private House  house;
+    private HouseConfiguration configuration;
     private String CONFIGURATION_FILE;
 
-    private int SUBCLASS_PROPERTY_POSITION =  2;
-    private int DISTANCE_FIRST_PROPERTY    = -1;
-    private int DISTANCE_LAST_PROPERTY     =  6;
-    private int DISTANCE_NEXT_SUBCLASS     =  9;
-    private String[] properties            = new String[SUBCLASS_PROPERTY_POSITION + DISTANCE_LAST_PROPERTY+1];
+    private int NAME_PROPERTY              = 1;
+    private int SUBCLASS_PROPERTY          = 2;
+    private int METER_PROPERTY             = 3;
+    private String[] properties;
+    private int[]    propertyLines;
+    private int      paragraphLine;
     private String[] paragraphFormat       = new String[]{"",
             "name:",
             "subclass:",
@@ -55,19 +61,32 @@ public class FileParser {
     public FileParser(House house, String CONFIGURATION_FILE){
         this.house                      = house;
         this.CONFIGURATION_FILE         = CONFIGURATION_FILE;
+        this.properties                 = new String[paragraphFormat.length];
+        this.propertyLines              = new int[paragraphFormat.length];
     }
 
-    /**
-     * This method will start parsing the TXT file converted into a
-     * {@code List<String>} object by using {@link #convertFileToList(String)};
+    /***
+     *  Instantiate a {@code FileParse} object, specifying the configuration
+     *  which will store the properties of the {@link Appliance} objects read
+     *  from the {@code CONFIGURATION_FILE} given.
      *
-     * It is only used to individuate all "Subclass" fields, which refers
-     * to the number of {@link Appliance} objects to create. When it finds them,
-     * it will use {@link #parseList(List, String[])} to return the first property
-     * of the paragraph just identified.
+     * @param configuration a {@link HouseConfiguration} object.
+     * @param CONFIGURATION_FILE a TXT
+     */
+    public FileParser(HouseConfiguration configuration, String CONFIGURATION_FILE){
+        this.configuration              = configuration;
+        this.CONFIGURATION_FILE         = CONFIGURATION_FILE;
+        this.properties                 = new String[paragraphFormat.length];
+        this.propertyLines              = new int[paragraphFormat.length];
+    }
+
+    /**
+     * This method will start parsing the TXT file line by line,
+     * using {@link #parseLine(String, int)} to store each property
+     * of the current paragraph.
      *
-     * All properties extracted will be stored in {@code properties}, and they
-     * will be used to instantiate an {@link Appliance} with the method:
+     * When a paragraph is complete, all properties extracted will be used
+     * to instantiate an {@link Appliance} with the method:
      *
      * {@link #instantiateApplianceFromFile(String, String, String,
      *                                      String, String, String,
@@ -75,108 +94,174 @@ public class FileParser {
      *
      */
     public void start() {
-        List<String> listLines = null;
+        long start = System.nanoTime();
+        BufferedReader in = null;
         try {
-            listLines = convertFileToList(CONFIGURATION_FILE);
+            in = new BufferedReader(new FileReader(CONFIGURATION_FILE));
         } catch (IOException e) {
             System.out.println("File not found");
             System.exit(1);
         }
-	    
-        // Stops when cannot find any other subclass property.
-        while (SUBCLASS_PROPERTY_POSITION < listLines.size()){
-            try {
-                properties = parseList(listLines, paragraphFormat);
-            } catch (Exception e) {
-                System.out.println(e.getMessage());
-                System.exit(1);
-            }
-            try {
-                instantiateApplianceFromFile(
-                        properties[1],
-                        properties[2],
-                        properties[3],
-                        properties[4],
-                        properties[5],
-                        properties[6],
-                        properties[7],
-                        properties[8]);
-
-            } catch (Exception e) {
-                System.out.println(e.getMessage());
-                System.exit(1);
+
+        try (BufferedReader reader = in) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                parseLine(line, lineNumber);
             }
-            // The "subclass" property line is updated to the next one
-            SUBCLASS_PROPERTY_POSITION += DISTANCE_NEXT_SUBCLASS; // Next subclass of the file
+            // The last paragraph may not be followed by a blank line
+            finishParagraph();
+        } catch (IOException e) {
+            System.out.println("Cannot read the file '" + CONFIGURATION_FILE + "': " + e.getMessage());
+            System.exit(1);
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
         }
+        SimulatorMetrics.FILES_PARSED.increment();
+        SimulatorMetrics.PARSE_NANOS.add(System.nanoTime() - start);
     }
 
     /**
-     * Creates a {@code List<String>} instance by reading
-     * and adding each line of {@code file}.
+     *  Parses one line of the file, checking it against the
+     *  properties of {@code paragraphFormat}.
+     *
+     *  A blank line completes the current paragraph, as does a
+     *  "name" property when the current paragraph already has
+     *  some properties.
      *
-     * @param fileName a {@code String} object which is the pathname of the TXT file to parse.
-     * @return the {@code file} converted into a {@code List<String>}.
-     * @throws IOException if the {@code file} is not found
+     * @param line        the line to parse.
+     * @param lineNumber  the number of the line in the file, starting from 1.
+     * @throws Exception  if the line is not a property of the format, or the
+     *                    property has already been found in the paragraph,
+     *                    specifying in which line the error is.
      */
-    private List<String> convertFileToList(String fileName) throws IOException {
+    private void parseLine(String line, int lineNumber) throws Exception {
+        String lineFile = line.trim();
+        if (lineFile.isEmpty()) {
+            finishParagraph();
+            return;
+        }
 
-        FileReader file = new FileReader(fileName);
-        BufferedReader in = new BufferedReader(file);
-        List<String> listLines = new ArrayList<>();
+        for (int property = 1; property < paragraphFormat.length; property++) {
+            if (lineFile.startsWith(paragraphFormat[property])) {
+                if (property == NAME_PROPERTY) {
+                    finishParagraph();
+                }
+                if (properties[property] != null) {
+                    throw formatException(lineNumber, line, "Property repeated in the same appliance.");
+                }
+                if (paragraphLine == 0) {
+                    paragraphLine = lineNumber;
+                }
+                String propertyExtracted = lineFile.substring(paragraphFormat[property].length());
+                if (propertyExtracted.startsWith(":")) {
+                    propertyExtracted = propertyExtracted.substring(1);
+                }
+                properties[property]    = propertyExtracted.trim();
+                propertyLines[property] = lineNumber;
+                return;
+            }
+        }
+        throw formatException(lineNumber, line, null);
+    }
 
-        // Makes first line of the file with index 1.
-        listLines.add("");
+    /**
+     * Instantiates the {@link Appliance} of the current paragraph,
+     * if any, and starts a new empty paragraph.
+     *
+     * @throws Exception if the "name", "subclass" or "meter" property
+     *                   is missing or a property is not valid.
+     */
+    private void finishParagraph() throws Exception {
+        if (paragraphLine == 0) {
+            return;
+        }
+        for (int property : new int[]{NAME_PROPERTY, SUBCLASS_PROPERTY, METER_PROPERTY}) {
+            if (properties[property] == null || properties[property].isEmpty()) {
+                throw new Exception(
+                        "The format of your file" + " '" + CONFIGURATION_FILE + " is not correct." +
+                        "\nLine: " + paragraphLine +
+                        " \nError:" + " the appliance has no '" + paragraphFormat[property] + "' property"
+                );
+            }
+        }
+
+        instantiateApplianceFromFile(
+                properties[1],
+                properties[2],
+                properties[3],
+                properties[4],
+                properties[5],
+                properties[6],
+                properties[7],
+                properties[8]);
 
-        String line;
-        while ((line = in.readLine()) != null) {
-            listLines.add(line);
+        for (int property = 0; property < properties.length; property++) {
+            properties[property]    = null;
+            propertyLines[property] = 0;
         }
-        return listLines;
+        paragraphLine = 0;
     }
 
     /**
-     *  Parses all properties of the paragraph with the current
-     *  {@code SUBCLASS_PROPERTY_POSITION}.
+     * Creates the exception for a line which is not correct.
      *
-     *  The{@code fileLine} to parse is checked with
-     *  the appropriate {@code fileFormat}.
+     * @param lineNumber the number of the line.
+     * @param lineFile   the line.
+     * @param reason     why the line is not correct, {@code null} if it is not a property.
+     * @return the exception, specifying in which line the error is.
+     */
+    private Exception formatException(int lineNumber, String lineFile, String reason) {
+        return new Exception(
+                "The format of your file" + " '" + CONFIGURATION_FILE + " is not correct." +
+                "\nLine: " + lineNumber +
+                " \nError:" + " ' " + lineFile + " '" +
+                (reason == null ? "" : " " + reason)
+        );
+    }
+
+    /**
+     * Parses a {@code float} property of the current paragraph.
      *
-     * @param listLines       the txt file converted into a {@code List<String>}
-     * @param paragraphFormat the original paragraph format to be checked against
-     *                        the {@code listLines}
+     * @param property the index of the property in {@code paragraphFormat}.
+     * @return the value of the property.
+     * @throws Exception if the property is missing or is not a number.
+     */
+    private float parseFloatProperty(int property) throws Exception {
+        try {
+            return Float.parseFloat(properties[property]);
+        } catch (NullPointerException | NumberFormatException e) {
+            throw propertyException(property, "a number");
+        }
+    }
+
+    /**
+     * Parses an {@code int} property of the current paragraph,
+     * removing the text around the number, e.g. "1 in " or "/24".
      *
-     * @return                a {@code String[]} object containing all extracted properties
-     * @throws Exception      if the format of the paragraph is not correct, specifying in
-     *                        which line the error is.
+     * @param property the index of the property in {@code paragraphFormat}.
+     * @param text     the text to remove.
+     * @return the value of the property.
+     * @throws Exception if the property is missing or is not a number.
      */
-    private String[] parseList(List<String> listLines, String []paragraphFormat) throws Exception {
-
-        String EXCEPTION_FORMAT_MESSAGE = "The format of your file" + " '" + CONFIGURATION_FILE + " is not correct.";
-        String propertyExtracted;
-
-        // First line of the paragraph
-        int currentLineParsed = 1; //Starts always with 1
-
-        // Iterates through all properties position using distances
-        for (int d = DISTANCE_FIRST_PROPERTY; d <= DISTANCE_LAST_PROPERTY; d++) {
-			
-                String lineFormat = paragraphFormat[currentLineParsed];
-                String lineFile = listLines.get(SUBCLASS_PROPERTY_POSITION + d);
-
-                if (lineFile.contains(lineFormat)) {
-                    propertyExtracted = lineFile.substring(lineFile.lastIndexOf(": ") + 2);
-                    properties[currentLineParsed] = propertyExtracted;
-                }else{
-                    throw new Exception(
-                            EXCEPTION_FORMAT_MESSAGE +
-                            "\nLine: " + (SUBCLASS_PROPERTY_POSITION + d) +
-                            " \nError:" + " ' " + lineFile + " '"
-                    );
-                }
-                currentLineParsed++;
-            }
-            return properties;
+    private int parseIntProperty(int property, String text) throws Exception {
+        try {
+            return Integer.parseInt(properties[property].replace(text, "").trim());
+        } catch (NullPointerException | NumberFormatException e) {
+            throw propertyException(property, "an integer");
+        }
+    }
+
+    private Exception propertyException(int property, String expected) {
+        int lineNumber = propertyLines[property] != 0 ? propertyLines[property] : paragraphLine;
+        return new Exception(
+                "The format of your file" + " '" + CONFIGURATION_FILE + " is not correct." +
+                "\nLine: " + lineNumber +
+                " \nError:" + " '" + paragraphFormat[property] + "' must be " + expected +
+                " in appliance: " + properties[NAME_PROPERTY]
+        );
     }
 
     /**
@@ -199,31 +284,37 @@ public class FileParser {
                                               String cycle) throws Exception {
             switch (subclass) {
                 case "CyclicFixed":
-                    addUnknownAppliance(new CyclicFixed(name, Float.parseFloat(units), Integer.parseInt(cycle.replaceAll("/24", ""))), meter);
+                    addUnknownAppliance(new CyclicFixed(name, parseFloatProperty(6), parseIntProperty(8, "/24")), meter);
                     break;
                 case "CyclicVaries":
-                    addUnknownAppliance(new CyclicVaries(name, Integer.parseInt(cycle.replaceAll("/24", "")), Float.parseFloat(min), Float.parseFloat(max)), meter);
+                    addUnknownAppliance(new CyclicVaries(name, parseIntProperty(8, "/24"), parseFloatProperty(4), parseFloatProperty(5)), meter);
                     break;
                 case "RandomFixed":
-                    addUnknownAppliance(new RandomFixed(name, Float.parseFloat(units), Integer.parseInt(probability.replaceAll("1 in ", ""))), meter);
+                    addUnknownAppliance(new RandomFixed(name, parseFloatProperty(6), parseIntProperty(7, "1 in ")), meter);
                     break;
                 case "RandomVaries":
-                    addUnknownAppliance(new RandomVaries(name, Integer.parseInt(probability.replaceAll("1 in ", "")), Float.parseFloat(min), Float.parseFloat(max)), meter);
+                    addUnknownAppliance(new RandomVaries(name, parseIntProperty(7, "1 in "), parseFloatProperty(4), parseFloatProperty(5)), meter);
                     break;
                 default:
-                    throw new Exception("'" + subclass + "'" + " is not a valid type of appliance. Error in appliance: " + name);
+                    throw new Exception("'" + subclass + "'" + " is not a valid type of appliance. Error in appliance: " + name +
+                                        " (line " + propertyLines[SUBCLASS_PROPERTY] + ")");
             }
     }
 
     /**
      * Instantiates the {@link Appliance} object to the appropriate
-     * {@link Meter} type, using methods from {@link House} class.
+     * {@link Meter} type, using methods from {@link House} class,
+     * or stores it in the {@link HouseConfiguration}.
      *
      * @param appliance the appliance to add.
      * @param meter     the meter.
      * @throws Exception if {@param meter} is not a valid meter.
      */
     private void addUnknownAppliance(Appliance appliance, String meter) throws Exception {
+        if (configuration != null) {
+            configuration.add(appliance, meter);
+            return;
+        }
         switch (meter) {
             case "water":
                 house.addWaterAppliance(appliance);
@@ -232,7 +323,8 @@ public class FileParser {
                 house.addElectricAppliance(appliance);
                 break;
             default:
-                throw new Exception(meter + " is not a valid type of meter. Error in appliance: " + appliance.getName());
+                throw new Exception(meter + " is not a valid type of meter. Error in appliance: " + appliance.getName() +
+                                    " (line " + propertyLines[METER_PROPERTY] + ")");
         }
     }
 }
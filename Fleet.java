@@ -0,0 +1,387 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class simulates a fleet of {@link House} objects, e.g. a whole
+ * estate, in parallel on a {@link ForkJoinPool}.
+ * <p>
+ * The houses do not share any mutable state, so the fleet is split in
+ * ranges of houses which are simulated for all hours by different workers.
+ * The cost and the units in the battery of each house are aggregated for
+ * each hour, and the ranges are merged in a fixed order. The ranges only
+ * depend on the number of houses, so the result, down to the last bit of
+ * the costs summed, does not depend on the number of workers nor on which
+ * worker simulated which range.
+ */
+public class Fleet {
+    private static final int RANGES = 256;
+
+    private List<House>       houses;
+    private List<HouseMeters> meters;
+    private ForkJoinPool      pool;
+    private ReadingRecorder   recorder;
+    private long              elapsedHours;
+
+    /**
+     * Runs the simulation of a fleet of houses.
+     * <p>
+     * Usage: {@code java Fleet CONFIGURATION_FILE... [--copies=N] [--hours=N] [--seed=N] [--record=FILE] [--windows]}
+     * <p>
+     * Each configuration file is loaded {@code N} times (1 by default) and
+     * the fleet is simulated for the hours given (168 by default). With a seed
+     * every run gives the same results. With {@code --record} the readings of
+     * every meter of every house are written to a {@link ReadingRecorder} file.
+     * With {@code --windows} the daily peak, rolling and moving averages of the
+     * units of each utility and of the cost of the fleet are printed by a
+     * {@link WindowedSink} while the fleet is simulated.
+     */
+    public static void main(String[] args) {
+        List<String> files = new ArrayList<>();
+        int copies = 1;
+        int hours  = 168;
+        Long seed  = null;
+        String record = null;
+        boolean windows = false;
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--copies=")) {
+                    copies = Integer.parseInt(arg.substring("--copies=".length()));
+                } else if (arg.startsWith("--hours=")) {
+                    hours = Integer.parseInt(arg.substring("--hours=".length()));
+                } else if (arg.startsWith("--seed=")) {
+                    seed = Long.parseLong(arg.substring("--seed=".length()));
+                } else if (arg.startsWith("--record=")) {
+                    record = arg.substring("--record=".length());
+                } else if (arg.equals("--windows")) {
+                    windows = true;
+                } else {
+                    files.add(arg);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Not a valid number: " + e.getMessage());
+            System.exit(1);
+        }
+
+        Fleet fleet = new Fleet(Runtime.getRuntime().availableProcessors());
+        for (String file : files) {
+            fleet.load(file, copies);
+        }
+        if (seed != null) {
+            fleet.setSeed(seed);
+        }
+        if (record != null) {
+            try {
+                fleet.record(new ReadingRecorder(record, hours, fleet.numHouses() * House.METERS, House.METERS));
+            } catch (IOException e) {
+                System.out.println("Cannot write the recording file: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        FleetReport report = fleet.simulate(hours, windows ? new WindowedSink(System.out) : null);
+        report.print(System.out);
+        fleet.closeRecorder();
+    }
+
+    /**
+     * Creates a new empty {@code Fleet}.
+     *
+     * @param parallelism the number of workers simulating the houses.
+     */
+    public Fleet(int parallelism) {
+        this.houses = new ArrayList<>();
+        this.meters = new ArrayList<>();
+        this.pool   = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Adds a {@link House} to the fleet. The house will be simulated
+     * without waiting between hours and without reporting each hour.
+     *
+     * @param house the house to add.
+     */
+    public void addHouse(House house) {
+        HouseMeters houseMeters = new HouseMeters(house);
+        house.setHourDelay(0);
+        house.setReportSink(houseMeters);
+        houses.add(house);
+        meters.add(houseMeters);
+    }
+
+    /**
+     * Adds {@code copies} houses to the fleet, each one with the
+     * appliances of the configuration file given.
+     *
+     * @param configurationFile the configuration file of the houses.
+     * @param copies            the number of houses to add.
+     */
+    public void load(String configurationFile, int copies) {
+        load(HouseConfiguration.load(configurationFile), copies);
+    }
+
+    /**
+     * Adds {@code copies} houses to the fleet, each one with the
+     * appliances of the configuration given.
+     *
+     * @param configuration the configuration of the houses.
+     * @param copies        the number of houses to add.
+     */
+    public void load(HouseConfiguration configuration, int copies) {
+        for (int i = 0; i < copies; i++) {
+            addHouse(configuration.newHouse());
+        }
+    }
+
+    /**
+     * Sets the seed of every house of the fleet. Each house gets
+     * its own seed, derived from the given one and its position in
+     * the fleet, so the results do not depend on the number of workers.
+     *
+     * @param seed the seed of the fleet.
+     */
+    public void setSeed(long seed) {
+        setSeed(seed, 0);
+    }
+
+    /**
+     * Sets the seed of every house of the fleet, as part of a larger
+     * fleet whose houses are split between several fleets, e.g. the
+     * shards of a {@link ShardedFleet}: each house gets the seed it
+     * would have in the whole fleet.
+     *
+     * @param seed       the seed of the whole fleet.
+     * @param firstHouse the position of the first house in the whole fleet.
+     */
+    void setSeed(long seed, long firstHouse) {
+        for (int i = 0; i < houses.size(); i++) {
+            houses.get(i).setSeed(RandomStream.derive(seed, firstHouse + i));
+        }
+    }
+
+    /**
+     * Records the readings of every house of the fleet in the next
+     * simulation. The two meters of the house {@code i} are recorded
+     * as the series {@code 2 * i} (water) and {@code 2 * i + 1} (electricity).
+     *
+     * @param recorder the recorder, with at least two series for each house.
+     */
+    public void record(ReadingRecorder recorder) {
+        if (recorder.getSeries() < houses.size() * House.METERS) {
+            throw new IllegalArgumentException("The recorder has " + recorder.getSeries() + " series, "
+                                               + houses.size() * House.METERS + " are needed");
+        }
+        this.recorder = recorder;
+        for (int i = 0; i < houses.size(); i++) {
+            meters.get(i).sink = recorder.sink(i * House.METERS);
+        }
+    }
+
+    /**
+     * Closes the recorder of the fleet, if any, and stops recording.
+     */
+    public void closeRecorder() {
+        if (recorder == null) {
+            return;
+        }
+        try {
+            recorder.close();
+        } catch (IOException e) {
+            System.out.println("Cannot write the recording file: " + e.getMessage());
+        }
+        recorder = null;
+        for (HouseMeters houseMeters : meters) {
+            houseMeters.sink = ReportSink.NONE;
+        }
+    }
+
+    /**
+     * Returns the number of houses in the fleet.
+     *
+     * @return the number of houses
+     */
+    public int numHouses() {
+        return houses.size();
+    }
+
+    /**
+     * Simulates all houses of the fleet for the given hours.
+     *
+     * @param hours the hours to simulate.
+     * @return the costs, units and battery units of the fleet for each hour.
+     */
+    public FleetReport simulate(int hours) {
+        return simulate(hours, null);
+    }
+
+    /**
+     * Simulates all houses of the fleet for the given hours, sending the
+     * meters and the cost of the whole fleet to a {@link ReportSink} as each
+     * hour is simulated. With a sink the houses are simulated hour by hour,
+     * all of them before the next hour, which gives the same results.
+     *
+     * @param hours the hours to simulate.
+     * @param sink  the sink receiving each hour of the fleet, {@code null} for none.
+     * @return the costs, units and battery units of the fleet for each hour.
+     */
+    public FleetReport simulate(int hours, ReportSink sink) {
+        long start = System.nanoTime();
+        int threshold = rangeSize(houses.size());
+        FleetReport report;
+        if (sink == null) {
+            report = pool.invoke(new HouseRange(0, houses.size(), elapsedHours, hours, threshold)).report;
+        } else {
+            report = new FleetReport(houses.size(), hours, elapsedHours);
+            for (int hour = 0; hour < hours; hour++) {
+                FleetReport hourReport = pool.invoke(new HouseRange(0, houses.size(), elapsedHours + hour, 1, threshold)).report;
+                hourReport.sendHours(sink);
+                report.append(hourReport, hour);
+            }
+            sink.simulationFinished(report.getTotalCost());
+        }
+        elapsedHours += hours;
+        if (recorder != null) {
+            recorder.hoursRecorded(hours);
+            recorder.force();
+        }
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * Returns the number of houses of the ranges a fleet is split in,
+     * the same for any number of workers, so the costs of the houses
+     * are always added up in the same order.
+     *
+     * @param houses the number of houses of the fleet.
+     * @return the largest number of houses of a range.
+     */
+    static int rangeSize(int houses) {
+        return Math.max(1, houses / RANGES);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Keeps the meters a house reports in each hour, to be added to the
+     * report of the fleet, and passes every result on to the sink of the house.
+     */
+    private static class HouseMeters implements ReportSink {
+        private House      house;
+        private ReportSink sink;
+        private double     waterCost;
+        private double     electricityCost;
+        private long       waterUnits;
+        private long       electricityUnits;
+        private long       unitsFromMains;
+        private long       unitsFromBattery;
+
+        HouseMeters(House house) {
+            this.house = house;
+            this.sink  = ReportSink.NONE;
+        }
+
+        @Override
+        public void hourStarted(int day, int hour) {
+            sink.hourStarted(day, hour);
+        }
+
+        @Override
+        public void meterTableStarted() {
+            sink.meterTableStarted();
+        }
+
+        @Override
+        public void meterReported(Meter meter, float reading, double cost) {
+            // The meter is reset after the report, so it still holds the milli-units of the hour
+            if (meter == house.getWaterMeter()) {
+                waterUnits = meter.getMilliUnits();
+                waterCost  = cost;
+            } else {
+                electricityUnits = unitsFromMains = meter.getMilliUnits();
+                unitsFromBattery = 0;
+                electricityCost  = cost;
+            }
+            sink.meterReported(meter, reading, cost);
+        }
+
+        @Override
+        public void meterTableFinished() {
+            sink.meterTableFinished();
+        }
+
+        @Override
+        public void batteryMeterReported(BatteryMeter meter, float consumed, float reading, double cost,
+                                         float unitsFromMains, float unitsFromBattery) {
+            this.electricityUnits = meter.getMilliUnits();
+            this.unitsFromMains   = meter.getUnitsFromMainsMilliUnits();
+            this.unitsFromBattery = meter.getUnitsFromBatteryMilliUnits();
+            this.electricityCost  = cost;
+            sink.batteryMeterReported(meter, consumed, reading, cost, unitsFromMains, unitsFromBattery);
+        }
+
+        @Override
+        public void hourFinished(double cost) {
+            sink.hourFinished(cost);
+        }
+
+        @Override
+        public void simulationFinished(double totalCost) {
+            sink.simulationFinished(totalCost);
+        }
+    }
+
+    /**
+     * Simulates a range of houses of the fleet, splitting it in
+     * two halves until it is smaller than {@code threshold}.
+     */
+    private class HouseRange extends RecursiveTask<HouseRange> {
+        private static final long serialVersionUID = 1L;
+
+        private int         from;
+        private int         to;
+        private long        firstHour;
+        private int         hours;
+        private int         threshold;
+        private FleetReport report;
+
+        HouseRange(int from, int to, long firstHour, int hours, int threshold) {
+            this.from      = from;
+            this.to        = to;
+            this.firstHour = firstHour;
+            this.hours     = hours;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected HouseRange compute() {
+            if (to - from <= threshold) {
+                report = new FleetReport(to - from, hours, firstHour);
+                for (int i = from; i < to; i++) {
+                    House house = houses.get(i);
+                    HouseMeters m = meters.get(i);
+                    for (int hour = 0; hour < hours; hour++) {
+                        double cost = house.activateHour();
+                        report.addHour(hour, cost, m.waterCost, m.electricityCost, m.waterUnits, m.electricityUnits,
+                                       m.unitsFromMains, m.unitsFromBattery, house.getBatteryMilliUnits());
+                    }
+                }
+                return this;
+            }
+
+            int middle = (from + to) >>> 1;
+            HouseRange left  = new HouseRange(from, middle, firstHour, hours, threshold);
+            HouseRange right = new HouseRange(middle, to, firstHour, hours, threshold);
+            right.fork();
+            left.compute();
+            right.join();
+
+            report = left.report;
+            report.merge(right.report);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+import java.io.PrintStream;
+
+/**
+ * This class holds the results of a {@link Fleet} simulation, aggregated
+ * over all houses for each simulated hour: the cost, the units of the water
+ * and electricity meters (before and after using the batteries) and the
+ * units stored in the batteries.
+ * <p>
+ * The units are added up in milli-units, which is exact, so the units of a
+ * fleet do not depend on how its houses are split, e.g. between the workers
+ * of a {@link Fleet} or the shards of a {@link ShardedFleet}. The costs are
+ * added up in {@code double}s: a {@link Fleet} always adds them in the same
+ * order, whatever its parallelism, but the costs of a {@link ShardedFleet},
+ * the sums of the costs of its shards, may differ in the last digits from
+ * the ones of a single {@link Fleet} of the same houses. The reports of
+ * the parts of a fleet are {@link #merge(FleetReport) merged}, and the reports
+ * of consecutive epochs are {@link #append(FleetReport, int) appended}.
+ */
+public class FleetReport {
+    private int      houses;
+    private long     firstHour;
+    private double[] hourlyCost;
+    private double[] hourlyWaterCost;
+    private double[] hourlyElectricityCost;
+    private long[]   hourlyWaterUnits;
+    private long[]   hourlyElectricityUnits;
+    private long[]   hourlyUnitsFromMains;
+    private long[]   hourlyUnitsFromBattery;
+    private long[]   hourlyBatteryUnits;
+    private long     elapsedNanos;
+
+    /**
+     * Creates a new empty {@code FleetReport}.
+     *
+     * @param houses    the number of houses simulated.
+     * @param hours     the number of hours simulated.
+     * @param firstHour the hours simulated by the houses before the first hour of the report.
+     */
+    FleetReport(int houses, int hours, long firstHour) {
+        this.houses                 = houses;
+        this.firstHour              = firstHour;
+        this.hourlyCost             = new double[hours];
+        this.hourlyWaterCost        = new double[hours];
+        this.hourlyElectricityCost  = new double[hours];
+        this.hourlyWaterUnits       = new long[hours];
+        this.hourlyElectricityUnits = new long[hours];
+        this.hourlyUnitsFromMains   = new long[hours];
+        this.hourlyUnitsFromBattery = new long[hours];
+        this.hourlyBatteryUnits     = new long[hours];
+    }
+
+    /**
+     * Adds the results of one house, or of a group of houses, to an hour.
+     *
+     * @param hour             the hour, starting from 0.
+     * @param cost             the cost of the hour.
+     * @param waterCost        the cost of the water meter.
+     * @param electricityCost  the cost of the electricity meter.
+     * @param waterUnits       the milli-units of the water meter.
+     * @param electricityUnits the milli-units of the electricity meter, before using the battery.
+     * @param unitsFromMains   the milli-units of electricity drawn from the mains.
+     * @param unitsFromBattery the milli-units of electricity drawn from the battery.
+     * @param batteryUnits     the milli-units in the battery at the end of the hour.
+     */
+    void addHour(int hour, double cost, double waterCost, double electricityCost, long waterUnits,
+                 long electricityUnits, long unitsFromMains, long unitsFromBattery, long batteryUnits) {
+        hourlyCost[hour]             += cost;
+        hourlyWaterCost[hour]        += waterCost;
+        hourlyElectricityCost[hour]  += electricityCost;
+        hourlyWaterUnits[hour]       += waterUnits;
+        hourlyElectricityUnits[hour] += electricityUnits;
+        hourlyUnitsFromMains[hour]   += unitsFromMains;
+        hourlyUnitsFromBattery[hour] += unitsFromBattery;
+        hourlyBatteryUnits[hour]     += batteryUnits;
+    }
+
+    /**
+     * Adds the report of other houses over the same hours to this one.
+     *
+     * @param other the report of the other houses.
+     */
+    void merge(FleetReport other) {
+        houses += other.houses;
+        append(other, 0);
+    }
+
+    /**
+     * Adds the hours of the report of a later epoch of the same houses
+     * to the hours of this one, starting from the given hour.
+     *
+     * @param epoch the report of the epoch.
+     * @param hour  the hour of this report where the epoch starts.
+     */
+    void append(FleetReport epoch, int hour) {
+        for (int h = 0; h < epoch.getHours(); h++) {
+            addHour(hour + h, epoch.hourlyCost[h], epoch.hourlyWaterCost[h], epoch.hourlyElectricityCost[h],
+                    epoch.hourlyWaterUnits[h], epoch.hourlyElectricityUnits[h], epoch.hourlyUnitsFromMains[h],
+                    epoch.hourlyUnitsFromBattery[h], epoch.hourlyBatteryUnits[h]);
+        }
+    }
+
+    /**
+     * Sets the time taken by the simulation.
+     *
+     * @param elapsedNanos the elapsed nanoseconds.
+     */
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the number of houses simulated.
+     * @return the number of houses
+     */
+    public int getHouses() {
+        return houses;
+    }
+
+    /**
+     * Returns the number of hours simulated.
+     * @return the number of hours
+     */
+    public int getHours() {
+        return hourlyCost.length;
+    }
+
+    /**
+     * Returns the cost of all houses in the given hour.
+     *
+     * @param hour the hour, starting from 0.
+     * @return the cost of the hour
+     */
+    public double getHourlyCost(int hour) {
+        return hourlyCost[hour];
+    }
+
+    /**
+     * Returns the cost of the water meters of all houses in the given hour.
+     *
+     * @param hour the hour, starting from 0.
+     * @return the cost of water
+     */
+    public double getHourlyWaterCost(int hour) {
+        return hourlyWaterCost[hour];
+    }
+
+    /**
+     * Returns the cost of the electricity meters of all houses in the given hour.
+     *
+     * @param hour the hour, starting from 0.
+     * @return the cost of electricity
+     */
+    public double getHourlyElectricityCost(int hour) {
+        return hourlyElectricityCost[hour];
+    }
+
+    /**
+     * Returns the units stored in the batteries of all houses
+     * at the end of the given hour.
+     *
+     * @param hour the hour, starting from 0.
+     * @return the units in the batteries
+     */
+    public double getHourlyBatteryUnits(int hour) {
+        return Meter.toUnits(hourlyBatteryUnits[hour]);
+    }
+
+    /**
+     * Returns the units of the water meters of all houses in the given hour.
+     *
+     * @param hour the hour, starting from 0.
+     * @return the units of water
+     */
+    public double getHourlyWaterUnits(int hour) {
+        return Meter.toUnits(hourlyWaterUnits[hour]);
+    }
+
+    /**
+     * Returns the net units of the electricity meters of all houses in
+     * the given hour, before using the batteries.
+     *
+     * @param hour the hour, starting from 0.
+     * @return the units of electricity
+     */
+    public double getHourlyElectricityUnits(int hour) {
+        return Meter.toUnits(hourlyElectricityUnits[hour]);
+    }
+
+    /**
+     * Returns the units of electricity all houses drew from the mains in the given hour.
+     *
+     * @param hour the hour, starting from 0.
+     * @return the units from the mains
+     */
+    public double getHourlyUnitsFromMains(int hour) {
+        return Meter.toUnits(hourlyUnitsFromMains[hour]);
+    }
+
+    /**
+     * Returns the units of electricity all houses drew from their batteries in the given hour.
+     *
+     * @param hour the hour, starting from 0.
+     * @return the units from the batteries
+     */
+    public double getHourlyUnitsFromBattery(int hour) {
+        return Meter.toUnits(hourlyUnitsFromBattery[hour]);
+    }
+
+    /**
+     * Returns the hours simulated by the houses before the first hour of the report.
+     * @return the first hour, starting from 0
+     */
+    public long getFirstHour() {
+        return firstHour;
+    }
+
+    /**
+     * Returns the cost of all houses over all hours.
+     * @return the total cost
+     */
+    public double getTotalCost() {
+        double totalCost = 0;
+        for (double cost : hourlyCost) {
+            totalCost += cost;
+        }
+        return totalCost;
+    }
+
+    /**
+     * Returns the time taken by the simulation.
+     * @return the elapsed nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the number of house-hours simulated each second.
+     * @return the throughput of the simulation
+     */
+    public double getHouseHoursPerSecond() {
+        return (double) houses * hourlyCost.length / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * Sends every hour of the fleet to a {@link ReportSink}, as a {@link House}
+     * does, followed by the total cost, e.g. to aggregate the report with a
+     * {@link WindowedSink}. The meters of the fleet are reported as the meters
+     * of one house, with the units and costs of all houses.
+     *
+     * @param sink the sink receiving the hours.
+     */
+    public void replay(ReportSink sink) {
+        sendHours(sink);
+        sink.simulationFinished(getTotalCost());
+    }
+
+    /**
+     * Sends every hour of the fleet to a {@link ReportSink}, without the
+     * total cost, e.g. while the fleet is being simulated.
+     *
+     * @param sink the sink receiving the hours.
+     */
+    void sendHours(ReportSink sink) {
+        House meters = House.createDefault();
+        Meter water = meters.getWaterMeter();
+        BatteryMeter electricity = (BatteryMeter) meters.getElectricMeter();
+        for (int hour = 0; hour < hourlyCost.length; hour++) {
+            long elapsed = firstHour + hour;
+            electricity.getBattery().setMilliUnits(hourlyBatteryUnits[hour]);
+
+            sink.hourStarted((int) (elapsed / 24) + 1, (int) (elapsed % 24) + 1);
+            sink.meterTableStarted();
+            sink.meterReported(water, (float) Meter.toUnits(hourlyWaterUnits[hour]), hourlyWaterCost[hour]);
+            sink.meterTableFinished();
+            sink.batteryMeterReported(electricity, (float) Meter.toUnits(hourlyElectricityUnits[hour]),
+                                      (float) Meter.toUnits(hourlyUnitsFromMains[hour]), hourlyElectricityCost[hour],
+                                      (float) Meter.toUnits(hourlyUnitsFromMains[hour]),
+                                      (float) Meter.toUnits(hourlyUnitsFromBattery[hour]));
+            sink.hourFinished(hourlyCost[hour]);
+        }
+    }
+
+    /**
+     * Prints out the cost and battery units of every day
+     * followed by the total cost and the throughput.
+     *
+     * @param out the stream where the report is printed.
+     */
+    public void print(PrintStream out) {
+        String format = "| %-12s | %-14s | %-24s |%n";
+        String line   = "+--------------+----------------+--------------------------+%n";
+
+        out.format(line);
+        out.format("|     Day      |   Cost(GPB)    | Units in the batteries   |%n");
+        out.format(line);
+        for (int start = 0; start < hourlyCost.length; start += 24) {
+            int end = Math.min(start + 24, hourlyCost.length);
+            double cost = 0;
+            for (int hour = start; hour < end; hour++) {
+                cost += hourlyCost[hour];
+            }
+            out.format(format, (firstHour + start) / 24 + 1, String.format("%.2f", cost),
+                       (float) getHourlyBatteryUnits(end - 1));
+        }
+        out.format(line);
+
+        out.println("Houses: " + houses + ", hours: " + hourlyCost.length);
+        out.println(String.format("The total cost is: " + "%.2f", getTotalCost()) + "GPB");
+        out.println(String.format("Throughput: %.0f house-hours per second", getHouseHoursPerSecond()));
+    }
+}
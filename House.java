@@ -1,4 +1,13 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This class defines a simulation of a real house in which
@@ -11,29 +20,253 @@ import java.util.ArrayList;
  */
 public class House {
 
+    /**
+     * The number of meters of a house, reported every hour in this
+     * order: the water meter and then the electricity meter.
+     */
+    static final int METERS = 2;
+
     private Meter waterMeter;
     private Meter electricMeter;
     private ArrayList<Appliance> appliancesHouse;
+    private ReportSink reportSink;
+    private long hourDelay;
+    private ApplianceStepper stepper;
+    private StepperFactory stepperFactory;
+    private long[] pendingEvents;
+    private RandomStream seeds;
+    private int[] stepsPerHour;
+    private int   activations;
+    private long   elapsedHours;
+    private double runningCost;
+    private CostLedger ledger;
+
+    /**
+     * Creates the {@link ApplianceStepper} used by {@link #activate()}.
+     */
+    private interface StepperFactory {
+        ApplianceStepper create(List<Appliance> appliances) throws Exception;
+    }
 
 
+    /**
+     * Runs the simulation of the house described in the configuration file,
+     * either a TXT file or a file compiled by {@link CompiledConfiguration}.
+     * <p>
+     * Usage: {@code java House CONFIGURATION_FILE [hours] [--headless[=summary|none|csv[:FILE]|json[:FILE]|windows|record:FILE]] [--async]}
+     * <p>
+     * By default the simulation waits 50 milliseconds between hours and prints
+     * the tables of every hour. With {@code --headless} the hours are simulated
+     * without waiting and the results are sent to the sink chosen, which is
+     * "summary" if none is given. "record" writes the readings of every hour
+     * into a {@link ReadingRecorder} file. "windows" prints the daily peaks and
+     * the rolling averages of a {@link WindowedSink}. With {@code --async} the results are
+     * rendered by a background thread through an {@link AsyncReportSink}.
+     * <p>
+     * With {@code --compiled} the appliances are simulated by a {@link HouseKernel}.
+     * With {@code --event-driven} the random appliances are simulated by an {@link EventScheduler}.
+     * With {@code --parallel=N} the appliances are stepped by N threads with a {@link ParallelStepper}.
+     * With {@code --fast-forward} the whole simulation is run by {@link #fastForward(int)}.
+     * With {@code --seed=N} the random values of the appliances are derived from
+     * the seed given, so every run with the same seed gives the same readings.
+     * With {@code --tariff=R0,R1,...} the electricity is costed with a time-of-use
+     * {@link Tariff} of 24 or 168 hourly rates instead of a single unit cost.
+     * With {@code --resume=FILE} the simulation goes on from a {@link Checkpoint}
+     * file, and with {@code --checkpoint=FILE} a checkpoint is written at the end.
+     */
     public static void main(String[] args) {
 
-        BatteryMeter electricMeter = new BatteryMeter("Electricity", 0.013f, new Battery(500));
-        Meter waterMeter = new Meter("Water", 0.002f);
-        House house = new House(electricMeter, waterMeter);
+        House house = createDefault();
+
+        List<String> arguments = new ArrayList<>();
+        boolean compiled = false;
+        boolean eventDriven = false;
+        int threads = 0;
+        boolean fastForward = false;
+        boolean async = false;
+        String headless = null;
+        String resume = null;
+        String checkpoint = null;
+        for (String arg : args) {
+            if (arg.startsWith("--headless")) {
+                headless = arg.substring("--headless".length());
+            } else if (arg.equals("--compiled")) {
+                compiled = true;
+            } else if (arg.equals("--event-driven")) {
+                eventDriven = true;
+            } else if (arg.startsWith("--parallel=")) {
+                try {
+                    threads = Integer.parseInt(arg.substring("--parallel=".length()));
+                } catch (NumberFormatException e) {
+                    System.out.println("Not a valid number of threads: " + arg.substring("--parallel=".length()));
+                    System.exit(1);
+                }
+            } else if (arg.equals("--fast-forward")) {
+                fastForward = true;
+            } else if (arg.equals("--async")) {
+                async = true;
+            } else if (arg.startsWith("--resume=")) {
+                resume = arg.substring("--resume=".length());
+            } else if (arg.startsWith("--checkpoint=")) {
+                checkpoint = arg.substring("--checkpoint=".length());
+            } else if (arg.startsWith("--seed=")) {
+                try {
+                    house.setSeed(Long.parseLong(arg.substring("--seed=".length())));
+                } catch (NumberFormatException e) {
+                    System.out.println("Not a valid seed: " + arg.substring("--seed=".length()));
+                    System.exit(1);
+                }
+            } else if (arg.startsWith("--tariff=")) {
+                try {
+                    house.getElectricMeter().setTariff(Tariff.parse(arg.substring("--tariff=".length())));
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Not a valid tariff: " + e.getMessage());
+                    System.exit(1);
+                }
+            } else {
+                arguments.add(arg);
+            }
+        }
+
+        if (fastForward && (compiled || eventDriven || threads > 0)) {
+            System.out.println("--fast-forward steps the appliances itself and cannot be used with "
+                               + "--compiled, --event-driven or --parallel");
+            System.exit(1);
+        }
 
         int hours;
-        String CONFIGURATION_FILE = args[0];
+        String CONFIGURATION_FILE = arguments.get(0);
 
         try {
-            hours = Integer.parseInt(args[1]);
+            hours = Integer.parseInt(arguments.get(1));
         }catch (Exception e){
             hours = 168;
         }
+
+        ReportSink sink = house.reportSink;
+        ReadingRecorder recorder = null;
+        if (headless != null && headless.startsWith("=record:")) {
+            house.setHourDelay(0);
+            try {
+                // One series for each meter of the house
+                recorder = new ReadingRecorder(headless.substring("=record:".length()), hours, METERS);
+            } catch (IOException e) {
+                System.out.println("Cannot write the recording file: " + e.getMessage());
+                System.exit(1);
+            }
+            sink = recorder.sink(0);
+        } else if (headless != null) {
+            house.setHourDelay(0);
+            sink = createSink(headless, hours);
+        } else if (async) {
+            // The writer thread flushes the tables after each batch
+            sink = new ConsoleSink(new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16)));
+        }
+        AsyncReportSink asyncSink = async ? new AsyncReportSink(sink) : null;
+        house.setReportSink(async ? asyncSink : sink);
 	    
-        FileParser configFile = new FileParser(house, CONFIGURATION_FILE);
-        configFile.start();
-	house.activate(hours);
+        if (CompiledConfiguration.isCompiled(CONFIGURATION_FILE)) {
+            HouseConfiguration.load(CONFIGURATION_FILE).populate(house);
+        } else {
+            FileParser configFile = new FileParser(house, CONFIGURATION_FILE);
+            configFile.start();
+        }
+        try {
+            if (compiled) {
+                house.compile();
+            } else if (eventDriven) {
+                house.scheduleEvents();
+            } else if (threads > 0) {
+                house.stepInParallel(threads);
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+        if (resume != null) {
+            try {
+                Checkpoint.load(house, resume);
+            } catch (IOException e) {
+                System.out.println("Cannot resume from the checkpoint: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        if (fastForward) {
+            house.fastForward(hours);
+        } else {
+	    house.activate(hours);
+        }
+        if (asyncSink != null) {
+            asyncSink.close();
+        }
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                System.out.println("Cannot write the recording file: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        if (checkpoint != null) {
+            try {
+                Checkpoint.save(house, checkpoint);
+            } catch (IOException e) {
+                System.out.println("Cannot write the checkpoint: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Creates a new empty {@code House} with the meters used by the
+     * simulator: a water {@link Meter} and an electricity {@link BatteryMeter}
+     * with a {@link Battery} of 500 units.
+     *
+     * @return the house.
+     */
+    static House createDefault() {
+        BatteryMeter electricMeter = new BatteryMeter("Electricity", 0.013f, new Battery(500));
+        Meter waterMeter = new Meter("Water", 0.002f);
+        return new House(electricMeter, waterMeter);
+    }
+
+    /**
+     * Creates the {@link ReportSink} chosen with the
+     * {@code --headless} argument.
+     *
+     * @param option the text following {@code --headless}.
+     * @param hours  the hours to simulate.
+     * @return the sink.
+     */
+    private static ReportSink createSink(String option, int hours) {
+        if (option.isEmpty() || option.equals("=summary")) {
+            return new SummarySink(System.out);
+        } else if (option.equals("=none")) {
+            return ReportSink.NONE;
+        } else if (option.equals("=csv")) {
+            return new CsvSink(new BufferedWriter(new OutputStreamWriter(System.out)));
+        } else if (option.startsWith("=csv:")) {
+            try {
+                return new CsvSink(new BufferedWriter(new FileWriter(option.substring("=csv:".length()))));
+            } catch (IOException e) {
+                System.out.println("Cannot write the CSV file: " + e.getMessage());
+                System.exit(1);
+            }
+        } else if (option.equals("=windows")) {
+            return new WindowedSink(System.out);
+        } else if (option.equals("=json")) {
+            return new JsonSink(new BufferedWriter(new OutputStreamWriter(System.out)));
+        } else if (option.startsWith("=json:")) {
+            try {
+                return new JsonSink(new BufferedWriter(new FileWriter(option.substring("=json:".length()))));
+            } catch (IOException e) {
+                System.out.println("Cannot write the JSON file: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        System.out.println("'" + option.substring(1) + "' is not a valid headless sink. Use summary, none, csv[:FILE], json[:FILE], windows or record:FILE");
+        System.exit(1);
+        return null;
     }
 	
 
@@ -46,6 +279,9 @@ public class House {
         this.waterMeter = new Meter("Water", 0.002f);
         this.electricMeter = new Meter("Electricity", 0.013f);
         this.appliancesHouse = new ArrayList<Appliance>();
+        this.reportSink = ConsoleSink.SYSTEM_OUT;
+        this.hourDelay = 50;
+        this.seeds = new RandomStream(RandomStream.randomSeed());
     }
 
 
@@ -64,6 +300,9 @@ public class House {
         this.waterMeter = waterMeter;
         this.electricMeter = batteryMeter;
         this.appliancesHouse = new ArrayList<>();
+        this.reportSink = ConsoleSink.SYSTEM_OUT;
+        this.hourDelay = 50;
+        this.seeds = new RandomStream(RandomStream.randomSeed());
     }
 
 
@@ -75,8 +314,14 @@ public class House {
      * @param a the appliance to add to the house.
      */
     public void addWaterAppliance(Appliance a){
+        releaseStepper();
         appliancesHouse.add(a);
+        stepsPerHour = null;
         a.setMeter(waterMeter);
+        a.setRandomStream(seeds.split());
+        if (ledger != null) {
+            ledger.added(a);
+        }
 
     }
 
@@ -88,8 +333,14 @@ public class House {
      * @param a the appliance to add the house
      */
     public void addElectricAppliance(Appliance a) {
+        releaseStepper();
         appliancesHouse.add(a);
+        stepsPerHour = null;
         a.setMeter(electricMeter);
+        a.setRandomStream(seeds.split());
+        if (ledger != null) {
+            ledger.added(a);
+        }
     }
 
     /**
@@ -99,7 +350,325 @@ public class House {
      * @param a the appliance to remove.
      */
     public void removeAppliance(Appliance a) {
-        appliancesHouse.remove(a);
+        releaseStepper();
+        if (appliancesHouse.remove(a) && ledger != null) {
+            ledger.removed(a);
+        }
+        stepsPerHour = null;
+    }
+
+    /**
+     * Sets the seed of the random values consumed by the appliances.
+     * <p>
+     * Each appliance gets its own stream of random numbers, derived from
+     * the seed in the order the appliances have been added, so the same
+     * seed always gives the same readings. The appliances already in the
+     * house get a new stream too.
+     *
+     * @param seed the seed.
+     */
+    public void setSeed(long seed) {
+        releaseStepper();
+        seeds = new RandomStream(seed);
+        for (Appliance appliance : appliancesHouse) {
+            appliance.setRandomStream(seeds.split());
+        }
+        recordLedgerAgain();
+    }
+
+    /**
+     * Starts keeping a {@link CostLedger} of the next {@code hours}: the
+     * units of each appliance in each hour, from the current state of the
+     * house. While it is kept, adding or removing an appliance updates the
+     * ledger, so the cost of the horizon is known without simulating the
+     * house again.
+     * <p>
+     * The horizon starts at the hour the ledger is taken, and simulating the
+     * house does not move it. Setting the seed or restoring a {@link Checkpoint}
+     * replaces the state the ledger was taken from, so a new ledger of the same
+     * hours is taken from the new state, returned by {@link #getLedger()}.
+     *
+     * @param hours the hours of the horizon.
+     * @return the ledger.
+     */
+    public CostLedger keepLedger(int hours) {
+        ledger = CostLedger.record(this, hours);
+        return ledger;
+    }
+
+    /**
+     * Takes the {@link CostLedger} kept, if any, again from the current
+     * state of the house, over the same number of hours.
+     */
+    void recordLedgerAgain() {
+        if (ledger != null) {
+            ledger = CostLedger.record(this, ledger.getHours());
+        }
+    }
+
+    /**
+     * Stops keeping the {@link CostLedger}, if any.
+     */
+    public void dropLedger() {
+        ledger = null;
+    }
+
+    /**
+     * Returns the {@link CostLedger} kept by the house.
+     *
+     * @return the ledger, {@code null} if none is kept.
+     */
+    public CostLedger getLedger() {
+        return ledger;
+    }
+
+    /**
+     * Compiles the appliances of the house into a {@link HouseKernel},
+     * which is used by {@link #activate()} until an appliance is added
+     * or removed.
+     *
+     * @throws IllegalArgumentException if an appliance cannot be compiled.
+     */
+    public void compile() {
+        useStepper(HouseKernel::compile);
+    }
+
+    /**
+     * Simulates the random appliances of the house with an {@link EventScheduler},
+     * which is used by {@link #activate()} until an appliance is added or
+     * removed. Only the random appliances switched on in an hour are simulated,
+     * so the readings have the same distribution but not the same values
+     * as the ones of {@link Appliance#timePasses()} for the same seed.
+     *
+     * @throws IllegalArgumentException if a random appliance is not valid.
+     */
+    public void scheduleEvents() {
+        useStepper(appliances -> EventScheduler.create(appliances, pendingEvents));
+    }
+
+    /**
+     * Steps the appliances of the house on the given number of threads with
+     * a {@link ParallelStepper}, which is used by {@link #activate()} until an
+     * appliance is added or removed. For the same seed the readings are
+     * exactly the same as the ones of the sequential simulation.
+     *
+     * @param threads the number of threads, including the one calling {@link #activate()}.
+     * @throws IllegalArgumentException if the number of threads is not positive.
+     */
+    public void stepInParallel(int threads) {
+        useStepper(appliances -> ParallelStepper.create(appliances, threads));
+    }
+
+    /**
+     * Steps the appliances one by one again, as before {@link #compile()},
+     * {@link #scheduleEvents()} or {@link #stepInParallel(int)}, writing the
+     * state of the stepper used back to the appliances and stopping its threads.
+     */
+    public void stepSequentially() {
+        releaseStepper();
+    }
+
+    /**
+     * Starts using the {@link ApplianceStepper} created by the given factory.
+     */
+    private void useStepper(StepperFactory factory) {
+        releaseStepper();
+        stepperFactory = factory;
+        try {
+            resumeStepper();
+        } catch (IllegalArgumentException e) {
+            stepperFactory = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Stops using the current {@link ApplianceStepper}, if any,
+     * writing its state back to the appliances.
+     */
+    private void releaseStepper() {
+        suspendStepper();
+        stepperFactory = null;
+        pendingEvents  = null;
+    }
+
+    /**
+     * Writes the state of the current {@link ApplianceStepper}, if any, back
+     * to the appliances and stops using it until {@link #resumeStepper()},
+     * so the state of the appliances can be read or changed. The hours an
+     * {@link EventScheduler} has drawn are kept, see {@link #getPendingEvents()}.
+     */
+    void suspendStepper() {
+        if (stepper != null) {
+            if (stepper instanceof EventScheduler) {
+                pendingEvents = ((EventScheduler) stepper).getPendingHours();
+            }
+            stepper.release();
+            stepper = null;
+        }
+    }
+
+    /**
+     * Returns the hours until each random appliance is on next, kept when
+     * the {@link EventScheduler} of the house was suspended, so it goes on
+     * from them when it is resumed.
+     *
+     * @return the hours, {@code null} if no scheduler has been suspended.
+     */
+    long[] getPendingEvents() {
+        return pendingEvents;
+    }
+
+    /**
+     * Sets the hours until each random appliance is on next, used by
+     * the {@link EventScheduler} of the house when it is resumed.
+     *
+     * @param pendingEvents the hours, {@code null} to draw them again.
+     */
+    void setPendingEvents(long[] pendingEvents) {
+        this.pendingEvents = pendingEvents;
+    }
+
+    /**
+     * Creates the {@link ApplianceStepper} suspended by {@link #suspendStepper()}
+     * again, from the current state of the appliances.
+     *
+     * @throws IllegalArgumentException if the stepper cannot be created,
+     *                                  with the exception of the factory as the cause.
+     */
+    void resumeStepper() {
+        if (stepperFactory == null || stepper != null) {
+            pendingEvents = null;
+            return;
+        }
+        try {
+            stepper = stepperFactory.create(appliancesHouse);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        } finally {
+            pendingEvents = null;
+        }
+    }
+
+    /**
+     * Sets the {@link ReportSink} receiving the hourly results
+     * of the simulation. By default they are printed on the console.
+     *
+     * @param reportSink the sink receiving the hourly results.
+     */
+    public void setReportSink(ReportSink reportSink) {
+        this.reportSink = reportSink;
+    }
+
+    /**
+     * Sets how many milliseconds {@link #activate(int)} waits between
+     * two simulated hours. By default it waits 50 milliseconds, a delay
+     * of 0 simulates the hours as fast as possible.
+     *
+     * @param hourDelay the milliseconds to wait each hour.
+     */
+    public void setHourDelay(long hourDelay) {
+        this.hourDelay = hourDelay;
+    }
+
+    /**
+     * Returns the {@link Meter} of the electricity consumed by the house.
+     *
+     * @return the electricity meter.
+     */
+    Meter getElectricMeter() {
+        return electricMeter;
+    }
+
+    /**
+     * Returns the {@link Meter} of the water consumed by the house.
+     *
+     * @return the water meter.
+     */
+    Meter getWaterMeter() {
+        return waterMeter;
+    }
+
+    /**
+     * Returns the appliances of the house, in the order they have been added.
+     *
+     * @return the appliances.
+     */
+    List<Appliance> getAppliances() {
+        return appliancesHouse;
+    }
+
+    /**
+     * Returns the stream the random streams of new appliances are split from.
+     *
+     * @return the stream of seeds.
+     */
+    RandomStream getSeeds() {
+        return seeds;
+    }
+
+    /**
+     * Returns the number of hours simulated so far.
+     *
+     * @return the elapsed hours.
+     */
+    public long getElapsedHours() {
+        return elapsedHours;
+    }
+
+    /**
+     * Returns the cost of all hours simulated so far.
+     *
+     * @return the running cost.
+     */
+    public double getRunningCost() {
+        return runningCost;
+    }
+
+    /**
+     * Sets the hours simulated so far and their cost,
+     * e.g. when the state of a simulation is restored.
+     *
+     * @param elapsedHours the elapsed hours.
+     * @param runningCost  the cost of the elapsed hours.
+     */
+    void setElapsed(long elapsedHours, double runningCost) {
+        this.elapsedHours = elapsedHours;
+        this.runningCost  = runningCost;
+    }
+
+    /**
+     * Sets the hour of the {@link Tariff} of both meters, counted
+     * from the first hour of the simulation.
+     *
+     * @param hour the hour about to be simulated.
+     */
+    private void setTariffHour(long hour) {
+        waterMeter.setTariffHour(hour);
+        electricMeter.setTariffHour(hour);
+    }
+
+    /**
+     * Returns the units currently stored in the {@link Battery}
+     * of the electricity meter.
+     *
+     * @return the units in the battery, 0 if the house has no battery.
+     */
+    float getBatteryUnits() {
+        return (float) Meter.toUnits(getBatteryMilliUnits());
+    }
+
+    /**
+     * Returns the milli-units currently stored in the {@link Battery}
+     * of the electricity meter.
+     *
+     * @return the milli-units in the battery, 0 if the house has no battery.
+     */
+    long getBatteryMilliUnits() {
+        if (electricMeter instanceof BatteryMeter) {
+            return ((BatteryMeter) electricMeter).getBattery().getMilliUnits();
+        }
+        return 0;
     }
 
     /**
@@ -114,59 +683,222 @@ public class House {
     /**
      * Simulates one hour of consumption of every appliances,
      * by calling {@link Appliance#timePasses()} on each {@link Appliance}
-     * contained in {@code appliancesHouse].
+     * contained in {@code appliancesHouse], or by the {@link HouseKernel}
+     * if the house has been compiled, the {@link EventScheduler} if its
+     * events are scheduled or the {@link ParallelStepper} if it is stepped
+     * in parallel.
      *
      * Calculates the total cost of every appliances in one hour consumption.
      *
      * @return the total cost
      */
     public double activate() {
+        boolean timed = ++activations % SimulatorMetrics.TIMING_INTERVAL == 0;
+        long start = timed ? System.nanoTime() : 0;
         double totalCost = 0;
-        for (Appliance appliance : this.appliancesHouse) {
-            appliance.timePasses();
+        setTariffHour(elapsedHours);
+        if (stepper != null) {
+            stepper.stepHour();
+        } else {
+            for (Appliance appliance : this.appliancesHouse) {
+                appliance.timePasses();
+            }
+            if (stepsPerHour == null) {
+                stepsPerHour = SimulatorMetrics.stepsPerHour(appliancesHouse);
+            }
+            SimulatorMetrics.countSteps(stepsPerHour, 1);
         }
         totalCost += getTotalCost();
+        elapsedHours++;
+        runningCost += totalCost;
+
+        SimulatorMetrics.SIMULATED_HOURS.increment();
+        if (timed) {
+            SimulatorMetrics.TIMED_HOURS.increment();
+            SimulatorMetrics.ACTIVATE_NANOS.add(System.nanoTime() - start);
+        }
         return totalCost;
     }
 
+    /**
+     * Simulates one hour as {@link #activate()} does, sending the
+     * {@link ReportSink#hourStarted(int, int)} and {@link ReportSink#hourFinished(double)}
+     * of the hour to the sink, without waiting, e.g. for the houses of a {@link Fleet}.
+     *
+     * @return the cost of the hour.
+     */
+    double activateHour() {
+        reportSink.hourStarted((int) (elapsedHours / 24) + 1, (int) (elapsedHours % 24) + 1);
+        double hourCost = activate();
+        reportSink.hourFinished(hourCost);
+        return hourCost;
+    }
+
     /**
      * Simulates n hours of consumption of every appliances,
      * by calling "n" times {@link Appliance#timePasses()} on each {@link Appliance}
      * contained in {@code appliancesHouse].
+     * <p>
+     * The days and hours go on from the hours already simulated, e.g. by
+     * a previous call or before a {@link Checkpoint} was taken, and also
+     * select the rate of the {@link Tariff} of the meters, if any. The
+     * total cost reported at the end is the one of all those hours.
      *
      * @param     the hours to simulate the consumption
-     * @return    the total cost of the entire simulation.
+     * @return    the total cost of the hours simulated by this call.
      */
     public double activate(int hours) {
         double totalCost = 0;
-        int currentHour  = 0;
-        int currentDay   = 1;
 
         for (int hour = 0; hour < hours; hour++) {
-            if (currentHour != 24) {
-                currentHour++;
+            int currentDay  = (int) (elapsedHours / 24) + 1;
+            int currentHour = (int) (elapsedHours % 24) + 1;
+            reportSink.hourStarted(currentDay, currentHour);
+            if (hourDelay > 0) {
+                try {
+                    Thread.sleep(hourDelay);
+                } catch (InterruptedException e) {
+                }
+            }
+            double hourCost = activate();
+            totalCost += hourCost;
+            reportSink.hourFinished(hourCost);
+        }
+
+        reportSink.simulationFinished(runningCost);
+        return totalCost;
+    }
+
+
+    /**
+     * Simulates n hours of consumption of every appliances, as
+     * {@link #activate(int)} does, skipping the hours which do not
+     * need to be simulated one by one.
+     * <p>
+     * The cost of a plain {@link Meter} only depends on the units
+     * consumed over all hours, so the units of the deterministic
+     * appliances attached to it (e.g. {@link CyclicFixed}) are computed
+     * at once with {@link Appliance#unitsOver(int)}. Only the other
+     * appliances, and those attached to a {@link BatteryMeter}, which
+     * needs the net units of every hour to store or take units to/from
+     * the battery, are simulated hour by hour.
+     * <p>
+     * The {@link ReportSink} receives every hour stepped, as with
+     * {@link #activate(int)}. Battery meters, and meters with a {@link Tariff},
+     * which costs every hour at its own rate, are reported every hour, while
+     * the plain meters are reported once, in the last hour, with the units of
+     * all hours. If no appliance or meter needs to be stepped, that last hour is
+     * the only one reported. Any {@link ApplianceStepper} of the house is released.
+     *
+     * @param hours the hours to simulate the consumption
+     * @return      the total cost of the hours simulated by this call.
+     */
+    public double fastForward(int hours) {
+        releaseStepper();
+        setTariffHour(elapsedHours);
+        double totalCost = 0;
+
+        // Milli-units consumed over all hours by the deterministic appliances of plain meters
+        long waterUnits    = 0;
+        long electricUnits = 0;
+        List<Appliance> stepped = new ArrayList<>();
+        for (Appliance appliance : this.appliancesHouse) {
+            if (appliance.isDeterministic() && !reportsHourly(appliance.getMeter())) {
+                if (appliance.getMeter() == waterMeter) {
+                    waterUnits += Meter.toMilliUnits(appliance.unitsOver(hours));
+                } else {
+                    electricUnits += Meter.toMilliUnits(appliance.unitsOver(hours));
+                }
             } else {
-                currentHour = 1;
-                currentDay++;
+                stepped.add(appliance);
             }
-            try {
-                System.out.println("Day: " + currentDay);
-                System.out.println("Time: " + currentHour + ":00");
-                Thread.sleep(50);
-                totalCost += activate();
-                System.out.println();
-            } catch (InterruptedException e) {
+        }
+
+        // Without any appliance or meter to step, the plain meters are reported in a single hour
+        boolean hourly = !stepped.isEmpty() || reportsHourly(waterMeter) || reportsHourly(electricMeter);
+        int reportedHours = hourly ? hours : Math.min(hours, 1);
+        for (int hour = 0; hour < reportedHours; hour++) {
+            long elapsed = elapsedHours + (hourly ? hour : hours - 1);
+            reportSink.hourStarted((int) (elapsed / 24) + 1, (int) (elapsed % 24) + 1);
+            if (hourly) {
+                for (Appliance appliance : stepped) {
+                    appliance.timePasses();
+                }
+                waterUnits    += collectHour(waterMeter);
+                electricUnits += collectHour(electricMeter);
             }
+            boolean last = hour == reportedHours - 1;
+            if (last) {
+                if (!reportsHourly(waterMeter)) {
+                    waterMeter.consumeMilliUnits(waterUnits);
+                }
+                if (!reportsHourly(electricMeter)) {
+                    electricMeter.consumeMilliUnits(electricUnits);
+                }
+            }
+            double hourCost = reportFastForwardHour(last);
+            totalCost += hourCost;
+            reportSink.hourFinished(hourCost);
+        }
+        if (hourly) {
+            SimulatorMetrics.countSteps(SimulatorMetrics.stepsPerHour(stepped), hours);
+        }
+        elapsedHours += hours;
+        runningCost  += totalCost;
+
+        reportSink.simulationFinished(runningCost);
+        return totalCost;
+    }
+
+    /**
+     * Returns whether a {@link Meter} must be reported every hour during
+     * {@link #fastForward(int)}: a {@link BatteryMeter}, or a meter with a {@link Tariff}.
+     */
+    private boolean reportsHourly(Meter meter) {
+        return meter instanceof BatteryMeter || meter.getTariff() != null;
+    }
+
+    /**
+     * Takes the milli-units consumed in the last hour from a plain {@link Meter},
+     * so they can be reported at the end of {@link #fastForward(int)}.
+     */
+    private long collectHour(Meter meter) {
+        if (reportsHourly(meter)) {
+            return 0;
         }
+        long milliUnits = meter.getMilliUnits();
+        meter.setMilliUnits(0);
+        return milliUnits;
+    }
 
-        if (totalCost < 0) {
-            System.out.println(String.format("The total cost is: " + "%.2f", 0.0) + "GPB");
+    /**
+     * Reports the meters of an hour of {@link #fastForward(int)} in the same
+     * table as {@link #getTotalCost()}: the meters reported every hour and,
+     * in the last hour, the plain meters with the units of all hours.
+     */
+    private double reportFastForwardHour(boolean last) {
+        reportSink.meterTableStarted();
+        double cost = reportHour(waterMeter, last);
+        if (electricMeter instanceof BatteryMeter) {
+            reportSink.meterTableFinished();
+            cost += reportHour(electricMeter, last);
         } else {
-            System.out.println(String.format("The total cost is: " + "%.2f", totalCost) + "GPB");
+            cost += reportHour(electricMeter, last);
+            reportSink.meterTableFinished();
         }
-        return totalCost;
+        return cost;
     }
 
+    /**
+     * Reports a meter in an hour of {@link #fastForward(int)}, if it is reported
+     * every hour or if the hour is the last one.
+     */
+    private double reportHour(Meter meter, boolean last) {
+        if (reportsHourly(meter) || last) {
+            return meter.report(reportSink);
+        }
+        return 0;
+    }
 
     /**
      * Returns the total cost calculated by adding values return by each
@@ -177,18 +909,15 @@ public class House {
     public double getTotalCost() {
         double cost = 0;
 
-        System.out.format("+--------------+--------------+--------------+%n");
-        System.out.format("|   Utility    |    Meter     |    Cost(GPB) |%n");
-        System.out.format("+--------------+--------------+--------------+%n");
-
-        // Prints out the correct format of the table
+        // Reports the correct format of the table
+        reportSink.meterTableStarted();
         if (electricMeter instanceof BatteryMeter) {
-            cost = (waterMeter.report());
-            System.out.format("+--------------+--------------+--------------+%n");
-            cost += electricMeter.report();
+            cost = (waterMeter.report(reportSink));
+            reportSink.meterTableFinished();
+            cost += electricMeter.report(reportSink);
         } else {
-            cost = (waterMeter.report()) + (electricMeter.report());
-            System.out.format("+--------------+--------------+--------------+%n");
+            cost = (waterMeter.report(reportSink)) + (electricMeter.report(reportSink));
+            reportSink.meterTableFinished();
         }
         return cost;
     }
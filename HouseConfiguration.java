@@ -0,0 +1,275 @@
+import java.util.Arrays;
+
+/**
+ * This class holds the appliances read from a configuration file,
+ * without creating any {@link Appliance} object.
+ * <p>
+ * The properties of each appliance are stored in primitive arrays, so a
+ * {@code HouseConfiguration} can be parsed once and then be used to populate
+ * any number of {@link House} objects, e.g. the copies of a {@link Fleet} or
+ * the replicas of a {@link MonteCarlo} simulation. Once loaded it is never
+ * modified, so it can be shared by many threads.
+ */
+public class HouseConfiguration {
+    static final byte CYCLIC_FIXED  = 0;
+    static final byte CYCLIC_VARIES = 1;
+    static final byte RANDOM_FIXED  = 2;
+    static final byte RANDOM_VARIES = 3;
+
+    static final byte WATER    = 0;
+    static final byte ELECTRIC = 1;
+
+    private int      size;
+    private String[] names;
+    private byte[]   types;
+    private byte[]   meters;
+    private float[]  minUnits;
+    private float[]  maxUnits;
+    private float[]  fixedUnits;
+    private int[]    probabilities;
+    private int[]    cycleLengths;
+
+    /**
+     * Creates a new empty {@code HouseConfiguration}.
+     */
+    HouseConfiguration() {
+        this(16);
+    }
+
+    /**
+     * Creates a new empty {@code HouseConfiguration} with room
+     * for the given number of appliances.
+     *
+     * @param capacity the number of appliances expected.
+     */
+    HouseConfiguration(int capacity) {
+        resize(Math.max(1, capacity));
+    }
+
+    /**
+     * Reads a new {@code HouseConfiguration} from a configuration file,
+     * either a TXT file or a file compiled by {@link CompiledConfiguration}.
+     *
+     * @param configurationFile the configuration file.
+     * @return the configuration.
+     */
+    public static HouseConfiguration load(String configurationFile) {
+        if (CompiledConfiguration.isCompiled(configurationFile)) {
+            try {
+                return CompiledConfiguration.read(configurationFile);
+            } catch (Exception e) {
+                System.out.println(e.getMessage());
+                System.exit(1);
+            }
+        }
+        HouseConfiguration configuration = new HouseConfiguration();
+        new FileParser(configuration, configurationFile).start();
+        return configuration;
+    }
+
+    /**
+     * Adds an appliance to the configuration, storing its properties.
+     *
+     * @param appliance the appliance read from the configuration file.
+     * @param meter     the meter of the appliance, "water" or "electric".
+     * @throws Exception if {@param meter} is not a valid meter.
+     */
+    void add(Appliance appliance, String meter) throws Exception {
+        byte meterType;
+        switch (meter) {
+            case "water":
+                meterType = WATER;
+                break;
+            case "electric":
+                meterType = ELECTRIC;
+                break;
+            default:
+                throw new Exception(meter + " is not a valid type of meter. Error in appliance: " + appliance.getName());
+        }
+
+        if (appliance instanceof CyclicFixed) {
+            CyclicFixed a = (CyclicFixed) appliance;
+            add(a.getName(), CYCLIC_FIXED, meterType, 0, 0, a.getUnitsFixed(), 0, a.getCycleLength());
+        } else if (appliance instanceof CyclicVaries) {
+            CyclicVaries a = (CyclicVaries) appliance;
+            add(a.getName(), CYCLIC_VARIES, meterType, a.getMinUnits(), a.getMaxUnits(), 0, 0, a.getCycleLength());
+        } else if (appliance instanceof RandomFixed) {
+            RandomFixed a = (RandomFixed) appliance;
+            add(a.getName(), RANDOM_FIXED, meterType, 0, 0, a.getUnitsFixed(), a.getProbability(), 0);
+        } else if (appliance instanceof RandomVaries) {
+            RandomVaries a = (RandomVaries) appliance;
+            add(a.getName(), RANDOM_VARIES, meterType, a.getMinUnits(), a.getMaxUnits(), 0, a.getProbability(), 0);
+        } else {
+            throw new Exception("'" + appliance.getClass().getName() + "' is not a valid type of appliance. Error in appliance: "
+                                + appliance.getName());
+        }
+    }
+
+    /**
+     * Adds an appliance to the configuration, given all its properties.
+     * The properties not used by the type of appliance are ignored.
+     *
+     * @param name        the name of the appliance.
+     * @param type        the type of the appliance, e.g. {@link #CYCLIC_FIXED}.
+     * @param meter       the meter of the appliance, {@link #WATER} or {@link #ELECTRIC}.
+     * @param min         the min units consumed each hour.
+     * @param max         the max units consumed each hour.
+     * @param fixed       the fixed units consumed each hour.
+     * @param probability the probability of being on, i.e. "1 in N".
+     * @param cycle       the number of hours the appliance is on each day.
+     */
+    void add(String name, byte type, byte meter, float min, float max, float fixed, int probability, int cycle) {
+        if (size == types.length) {
+            resize(size * 2);
+        }
+        names[size]         = name;
+        types[size]         = type;
+        meters[size]        = meter;
+        minUnits[size]      = min;
+        maxUnits[size]      = max;
+        fixedUnits[size]    = fixed;
+        probabilities[size] = probability;
+        cycleLengths[size]  = cycle;
+        size++;
+    }
+
+    private void resize(int capacity) {
+        names         = Arrays.copyOf(names == null ? new String[0] : names, capacity);
+        types         = Arrays.copyOf(types == null ? new byte[0] : types, capacity);
+        meters        = Arrays.copyOf(meters == null ? new byte[0] : meters, capacity);
+        minUnits      = Arrays.copyOf(minUnits == null ? new float[0] : minUnits, capacity);
+        maxUnits      = Arrays.copyOf(maxUnits == null ? new float[0] : maxUnits, capacity);
+        fixedUnits    = Arrays.copyOf(fixedUnits == null ? new float[0] : fixedUnits, capacity);
+        probabilities = Arrays.copyOf(probabilities == null ? new int[0] : probabilities, capacity);
+        cycleLengths  = Arrays.copyOf(cycleLengths == null ? new int[0] : cycleLengths, capacity);
+    }
+
+    /**
+     * Returns the number of appliances in the configuration.
+     *
+     * @return the number of appliances
+     */
+    public int numAppliances() {
+        return size;
+    }
+
+    /**
+     * Creates a new {@link House} with the default meters of
+     * {@link House#createDefault()} and all appliances of the configuration.
+     *
+     * @return the house.
+     */
+    public House newHouse() {
+        House house = House.createDefault();
+        populate(house);
+        return house;
+    }
+
+    /**
+     * Adds a new {@link Appliance} object for each appliance
+     * of the configuration to the given house.
+     *
+     * @param house the house to populate.
+     */
+    public void populate(House house) {
+        for (int i = 0; i < size; i++) {
+            if (meters[i] == WATER) {
+                house.addWaterAppliance(createAppliance(i));
+            } else {
+                house.addElectricAppliance(createAppliance(i));
+            }
+        }
+    }
+
+    /**
+     * Creates a new {@link Appliance} object for the appliance
+     * with the given index.
+     *
+     * @param i the index of the appliance in the configuration.
+     * @return the appliance.
+     */
+    Appliance createAppliance(int i) {
+        switch (types[i]) {
+            case CYCLIC_FIXED:
+                return new CyclicFixed(names[i], fixedUnits[i], cycleLengths[i]);
+            case CYCLIC_VARIES:
+                return new CyclicVaries(names[i], cycleLengths[i], minUnits[i], maxUnits[i]);
+            case RANDOM_FIXED:
+                return new RandomFixed(names[i], fixedUnits[i], probabilities[i]);
+            default:
+                return new RandomVaries(names[i], probabilities[i], minUnits[i], maxUnits[i]);
+        }
+    }
+
+    /**
+     * Returns the name of the appliance.
+     * @param i the index of the appliance.
+     * @return the name of the appliance
+     */
+    String getName(int i) {
+        return names[i];
+    }
+
+    /**
+     * Returns the type of the appliance, e.g. {@link #CYCLIC_FIXED}.
+     * @param i the index of the appliance.
+     * @return the type of the appliance
+     */
+    byte getType(int i) {
+        return types[i];
+    }
+
+    /**
+     * Returns the meter of the appliance, {@link #WATER} or {@link #ELECTRIC}.
+     * @param i the index of the appliance.
+     * @return the meter of the appliance
+     */
+    byte getMeter(int i) {
+        return meters[i];
+    }
+
+    /**
+     * Returns the min units consumed each hour.
+     * @param i the index of the appliance.
+     * @return the min units consumed each hour
+     */
+    float getMinUnits(int i) {
+        return minUnits[i];
+    }
+
+    /**
+     * Returns the max units consumed each hour.
+     * @param i the index of the appliance.
+     * @return the max units consumed each hour
+     */
+    float getMaxUnits(int i) {
+        return maxUnits[i];
+    }
+
+    /**
+     * Returns the fixed units consumed each hour.
+     * @param i the index of the appliance.
+     * @return the fixed units consumed each hour
+     */
+    float getFixedUnits(int i) {
+        return fixedUnits[i];
+    }
+
+    /**
+     * Returns the probability of being on, i.e. "1 in N".
+     * @param i the index of the appliance.
+     * @return the probability of being on
+     */
+    int getProbability(int i) {
+        return probabilities[i];
+    }
+
+    /**
+     * Returns the number of hours the appliance is on each day.
+     * @param i the index of the appliance.
+     * @return the number of hours the appliance is on each day
+     */
+    int getCycleLength(int i) {
+        return cycleLengths[i];
+    }
+}
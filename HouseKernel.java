@@ -0,0 +1,389 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@inheritDoc}
+ *
+ * This class is a compiled form of the appliances of a {@link House}.
+ * Instead of calling {@link Appliance#timePasses()} on each object, the
+ * properties of the {@link CyclicFixed}, {@link CyclicVaries}, {@link RandomFixed}
+ * and {@link RandomVaries} appliances are packed into primitive arrays, one
+ * group for each type of appliance, and every hour is simulated by a tight
+ * loop over each group without any allocation or virtual call.
+ * <p>
+ * Each appliance gets a slot in {@code units}, where the milli-units consumed
+ * in the current hour are written. Slots are ordered by meter and then by the
+ * position of the appliance in the house, and inside each group the appliances
+ * are ordered by slot, so every group is split in one run for each meter.
+ * The slots of each meter are then added up and consumed at once, as the
+ * addition of milli-units is exact, and the state of the {@link RandomStream}
+ * of each appliance is copied into the kernel and advanced in the same way, so the
+ * readings are exactly the same as the ones of {@link Appliance#timePasses()} for
+ * the same seed.
+ * <p>
+ * The hours are simulated by {@link #step(Properties, long[], int[], long[], long[], int)}
+ * over primitive state only, which an {@link OffHeapFleet} calls too for each
+ * of its houses.
+ */
+class HouseKernel implements ApplianceStepper {
+    private Meter[]    meters;
+    private long[]     units;
+    private long[]     consumed;
+    private int[]      stepsPerHour;
+    private Properties properties;
+    private long[]     random;
+    private int[]      time;
+
+    private CyclicFixed[]  cyclicFixed;
+    private CyclicVaries[] cyclicVaries;
+    private RandomFixed[]  randomFixed;
+    private RandomVaries[] randomVaries;
+
+    /**
+     * The properties of compiled appliances, which do not change while they
+     * are simulated, in one group of primitive arrays for each type of
+     * appliance. The state of the appliances is kept apart, so the same
+     * properties can be shared by many houses.
+     */
+    static final class Properties {
+        final int[]   meterEnd;
+
+        final int[]   cfSlot;
+        final long[]  cfUnits;
+        final int[]   cfCycle;
+
+        final int[]   cvSlot;
+        final float[] cvMin;
+        final float[] cvMax;
+        final int[]   cvCycle;
+
+        final int[]   rfSlot;
+        final long[]  rfUnits;
+        final int[]   rfProbability;
+
+        final int[]   rvSlot;
+        final float[] rvMin;
+        final float[] rvMax;
+        final int[]   rvProbability;
+
+        /**
+         * Creates the properties of the given number of appliances of each
+         * type, whose slots are ordered by meter: {@code meterEnd} gives the
+         * slot after the last one of each meter.
+         */
+        Properties(int cf, int cv, int rf, int rv, int[] meterEnd) {
+            this.meterEnd = meterEnd;
+
+            cfSlot        = new int[cf];
+            cfUnits       = new long[cf];
+            cfCycle       = new int[cf];
+
+            cvSlot        = new int[cv];
+            cvMin         = new float[cv];
+            cvMax         = new float[cv];
+            cvCycle       = new int[cv];
+
+            rfSlot        = new int[rf];
+            rfUnits       = new long[rf];
+            rfProbability = new int[rf];
+
+            rvSlot        = new int[rv];
+            rvMin         = new float[rv];
+            rvMax         = new float[rv];
+            rvProbability = new int[rv];
+        }
+
+        /**
+         * Returns the number of slots, one for each appliance.
+         *
+         * @return the number of slots.
+         */
+        int numSlots() {
+            return cfUnits.length + cvMin.length + rfUnits.length + rvMin.length;
+        }
+
+        /**
+         * Returns the number of random streams of the state, one for each
+         * {@link CyclicVaries}, {@link RandomFixed} and {@link RandomVaries}
+         * appliance, in this order.
+         *
+         * @return the number of random streams.
+         */
+        int numRandom() {
+            return cvMin.length + rfUnits.length + rvMin.length;
+        }
+
+        /**
+         * Returns the number of current times of the state, one for each
+         * {@link CyclicFixed} and {@link CyclicVaries} appliance, in this order.
+         *
+         * @return the number of current times.
+         */
+        int numCyclic() {
+            return cfUnits.length + cvMin.length;
+        }
+
+        /**
+         * Returns the number of appliances of each type stepped each hour,
+         * see {@link SimulatorMetrics#countSteps(int[], long)}.
+         *
+         * @return the number of appliances of each type.
+         */
+        int[] stepsPerHour() {
+            return new int[]{cfUnits.length, cvMin.length, rfUnits.length, rvMin.length};
+        }
+
+        /**
+         * Checks that the probability of every random appliance is positive.
+         *
+         * @throws IllegalArgumentException if a probability is not positive.
+         */
+        void checkProbabilities() {
+            for (int probability : rfProbability) {
+                checkProbability(probability);
+            }
+            for (int probability : rvProbability) {
+                checkProbability(probability);
+            }
+        }
+
+        private static void checkProbability(int probability) {
+            if (probability <= 0) {
+                throw new IllegalArgumentException("The probability must be positive: " + probability);
+            }
+        }
+    }
+
+    /**
+     * Compiles the given appliances into a new {@code HouseKernel}.
+     *
+     * @param appliances the appliances of the house.
+     * @return the compiled kernel.
+     * @throws Exception if an appliance has no meter or its type cannot be compiled.
+     */
+    static HouseKernel compile(List<Appliance> appliances) throws Exception {
+        HouseKernel kernel = new HouseKernel();
+
+        // Finds the meters in the order they are first used
+        List<Meter> meterList = new ArrayList<>();
+        for (Appliance appliance : appliances) {
+            appliance.checkMeterSet();
+            if (!meterList.contains(appliance.getMeter())) {
+                meterList.add(appliance.getMeter());
+            }
+        }
+
+        // Orders the appliances by meter, keeping the order of the house
+        List<Appliance> slots = new ArrayList<>();
+        int[] meterEnd = new int[meterList.size()];
+        for (int m = 0; m < meterEnd.length; m++) {
+            for (Appliance appliance : appliances) {
+                if (appliance.getMeter() == meterList.get(m)) {
+                    slots.add(appliance);
+                }
+            }
+            meterEnd[m] = slots.size();
+        }
+
+        int cf = 0, cv = 0, rf = 0, rv = 0;
+        for (Appliance appliance : slots) {
+            if (appliance instanceof CyclicFixed) {
+                cf++;
+            } else if (appliance instanceof CyclicVaries) {
+                cv++;
+            } else if (appliance instanceof RandomFixed) {
+                rf++;
+            } else if (appliance instanceof RandomVaries) {
+                rv++;
+            } else {
+                throw new Exception("'" + appliance.getClass().getName() + "' cannot be compiled. Error in appliance: "
+                                    + appliance.getName());
+            }
+        }
+        kernel.meters   = meterList.toArray(new Meter[0]);
+        kernel.units    = new long[slots.size()];
+        kernel.consumed = new long[kernel.meters.length];
+
+        for (Appliance appliance : slots) {
+            if ((appliance instanceof RandomFixed && ((RandomFixed) appliance).getProbability() <= 0)
+                || (appliance instanceof RandomVaries && ((RandomVaries) appliance).getProbability() <= 0)) {
+                throw new Exception("The probability must be positive. Error in appliance: " + appliance.getName());
+            }
+        }
+
+        Properties p = new Properties(cf, cv, rf, rv, meterEnd);
+        kernel.properties   = p;
+        kernel.stepsPerHour = p.stepsPerHour();
+        kernel.random       = new long[p.numRandom()];
+        kernel.time         = new int[p.numCyclic()];
+        kernel.cyclicFixed  = new CyclicFixed[cf];
+        kernel.cyclicVaries = new CyclicVaries[cv];
+        kernel.randomFixed  = new RandomFixed[rf];
+        kernel.randomVaries = new RandomVaries[rv];
+
+        // The offsets of each type in the state, see Properties
+        int cvTime = cf, rfRandom = cv, rvRandom = cv + rf;
+        cf = cv = rf = rv = 0;
+        for (int slot = 0; slot < slots.size(); slot++) {
+            Appliance appliance = slots.get(slot);
+            if (appliance instanceof CyclicFixed) {
+                CyclicFixed a = (CyclicFixed) appliance;
+                kernel.cyclicFixed[cf]       = a;
+                p.cfSlot[cf]                 = slot;
+                p.cfUnits[cf]                = Meter.toMilliUnits(a.getUnitsFixed());
+                p.cfCycle[cf]                = a.getCycleLength();
+                kernel.time[cf]              = a.getCurrentTime();
+                cf++;
+            } else if (appliance instanceof CyclicVaries) {
+                CyclicVaries a = (CyclicVaries) appliance;
+                kernel.cyclicVaries[cv]      = a;
+                p.cvSlot[cv]                 = slot;
+                p.cvMin[cv]                  = a.getMinUnits();
+                p.cvMax[cv]                  = a.getMaxUnits();
+                p.cvCycle[cv]                = a.getCycleLength();
+                kernel.time[cvTime + cv]     = a.getCurrentTime();
+                kernel.random[cv]            = a.getRandomStream().getState();
+                cv++;
+            } else if (appliance instanceof RandomFixed) {
+                RandomFixed a = (RandomFixed) appliance;
+                kernel.randomFixed[rf]       = a;
+                p.rfSlot[rf]                 = slot;
+                p.rfUnits[rf]                = Meter.toMilliUnits(a.getUnitsFixed());
+                p.rfProbability[rf]          = a.getProbability();
+                kernel.random[rfRandom + rf] = a.getRandomStream().getState();
+                rf++;
+            } else {
+                RandomVaries a = (RandomVaries) appliance;
+                kernel.randomVaries[rv]      = a;
+                p.rvSlot[rv]                 = slot;
+                p.rvMin[rv]                  = a.getMinUnits();
+                p.rvMax[rv]                  = a.getMaxUnits();
+                p.rvProbability[rv]          = a.getProbability();
+                kernel.random[rvRandom + rv] = a.getRandomStream().getState();
+                rv++;
+            }
+        }
+        return kernel;
+    }
+
+    /**
+     * Returns the number of appliances compiled.
+     *
+     * @return the number of appliances.
+     */
+    int numAppliances() {
+        return units.length;
+    }
+
+    @Override
+    public void stepHour() {
+        step(properties, random, time, units, consumed, 1);
+        for (int m = 0; m < meters.length; m++) {
+            meters[m].consumeMilliUnits(consumed[m]);
+        }
+        SimulatorMetrics.countSteps(stepsPerHour, 1);
+    }
+
+    /**
+     * Simulates the given hours of the appliances with the given properties,
+     * advancing their state, and gives the milli-units consumed by each meter
+     * in each hour. For the same state, the units are exactly the ones of
+     * {@link Appliance#timePasses()}.
+     *
+     * @param p        the properties of the appliances.
+     * @param random   the states of the random streams, see {@link Properties#numRandom()}.
+     * @param time     the current times of the cyclic appliances, see {@link Properties#numCyclic()}.
+     * @param units    the milli-units consumed by each slot, see {@link Properties#numSlots()}.
+     * @param consumed the milli-units consumed by meter {@code m} in hour {@code h}
+     *                 at {@code h * meters + m}, set.
+     * @param hours    the hours to simulate.
+     */
+    static void step(Properties p, long[] random, int[] time, long[] units, long[] consumed, int hours) {
+        int cf = p.cfSlot.length, cv = p.cvSlot.length, rf = p.rfSlot.length;
+        int meters = p.meterEnd.length;
+        for (int hour = 0; hour < hours; hour++) {
+            // One small method for each group, so each one is inlined in this loop
+            stepCyclicFixed(p, time, units);
+            stepCyclicVaries(p, random, time, cf, units);
+            stepRandomFixed(p, random, cv, units);
+            stepRandomVaries(p, random, cv + rf, units);
+
+            // Adds up the slots of each meter
+            int slot = 0;
+            for (int m = 0; m < meters; m++) {
+                long milliUnits = 0;
+                for (; slot < p.meterEnd[m]; slot++) {
+                    milliUnits += units[slot];
+                }
+                consumed[hour * meters + m] = milliUnits;
+            }
+        }
+    }
+
+    /**
+     * CyclicFixed: same units for the first cycleLength hours of the day.
+     */
+    private static void stepCyclicFixed(Properties p, int[] time, long[] units) {
+        for (int i = 0; i < p.cfSlot.length; i++) {
+            int t = time[i] != 24 ? time[i] + 1 : 1;
+            time[i] = t;
+            units[p.cfSlot[i]] = t <= p.cfCycle[i] ? p.cfUnits[i] : 0;
+        }
+    }
+
+    /**
+     * CyclicVaries: random units for the first cycleLength hours of the day.
+     */
+    private static void stepCyclicVaries(Properties p, long[] random, int[] time, int cf, long[] units) {
+        for (int i = 0; i < p.cvSlot.length; i++) {
+            long state = random[i] += RandomStream.GOLDEN_GAMMA;
+            float randomUnits = Appliance.randomUnits(p.cvMin[i], p.cvMax[i], RandomStream.toFloat(RandomStream.mix64(state)));
+            int t = time[cf + i] != 24 ? time[cf + i] + 1 : 1;
+            time[cf + i] = t;
+            units[p.cvSlot[i]] = t <= p.cvCycle[i] ? Meter.toMilliUnits(randomUnits) : 0;
+        }
+    }
+
+    /**
+     * RandomFixed: same units with a probability of 1 in N.
+     */
+    private static void stepRandomFixed(Properties p, long[] random, int rf, long[] units) {
+        for (int i = 0; i < p.rfSlot.length; i++) {
+            long state = random[rf + i] += RandomStream.GOLDEN_GAMMA;
+            int randomProbability = RandomStream.toInt(RandomStream.mix64(state), p.rfProbability[i]);
+            units[p.rfSlot[i]] = randomProbability == 0 ? p.rfUnits[i] : 0;
+        }
+    }
+
+    /**
+     * RandomVaries: random units with a probability of 1 in N.
+     */
+    private static void stepRandomVaries(Properties p, long[] random, int rv, long[] units) {
+        for (int i = 0; i < p.rvSlot.length; i++) {
+            long state = random[rv + i] + RandomStream.GOLDEN_GAMMA;
+            float randomUnits = Appliance.randomUnits(p.rvMin[i], p.rvMax[i], RandomStream.toFloat(RandomStream.mix64(state)));
+            state += RandomStream.GOLDEN_GAMMA;
+            int randomProbability = RandomStream.toInt(RandomStream.mix64(state), p.rvProbability[i]);
+            random[rv + i] = state;
+            units[p.rvSlot[i]] = randomProbability == 0 ? Meter.toMilliUnits(randomUnits) : 0;
+        }
+    }
+
+    @Override
+    public void release() {
+        int cf = cyclicFixed.length, cv = cyclicVaries.length, rf = randomFixed.length;
+        for (int i = 0; i < cf; i++) {
+            cyclicFixed[i].setCurrentTime(time[i]);
+        }
+        for (int i = 0; i < cv; i++) {
+            cyclicVaries[i].setCurrentTime(time[cf + i]);
+            cyclicVaries[i].getRandomStream().setState(random[i]);
+        }
+        for (int i = 0; i < rf; i++) {
+            randomFixed[i].getRandomStream().setState(random[cv + i]);
+        }
+        for (int i = 0; i < randomVaries.length; i++) {
+            randomVaries[i].getRandomStream().setState(random[cv + rf + i]);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * {@inheritDoc}
+ *
+ * This class writes the results of the simulation as JSON lines: one object
+ * for each simulated hour, with the readings of all its {@link Meter} objects,
+ *
+ *      {"day":1,"hour":1,"meters":[{"utility":"Water","reading":2.0,"cost":0.004},...],"cost":0.12}
+ *
+ * followed by one object with the total cost, {@code {"totalCost":12.5}}.
+ * A {@link BatteryMeter} also has the {@code consumed}, {@code unitsFromMains},
+ * {@code unitsFromBattery} and {@code batteryUnits} fields.
+ */
+public class JsonSink implements ReportSink, Flushable {
+    private Writer        out;
+    private StringBuilder line;
+    private boolean       firstMeter;
+
+    /**
+     * Creates a new {@code JsonSink}.
+     *
+     * @param out the writer where the lines are written.
+     */
+    public JsonSink(Writer out) {
+        this.out  = out;
+        this.line = new StringBuilder();
+    }
+
+    @Override
+    public void hourStarted(int day, int hour) {
+        line.setLength(0);
+        line.append("{\"day\":").append(day).append(",\"hour\":").append(hour).append(",\"meters\":[");
+        firstMeter = true;
+    }
+
+    @Override
+    public void meterReported(Meter meter, float reading, double cost) {
+        startMeter(meter);
+        line.append(",\"reading\":").append(reading)
+            .append(",\"cost\":").append(cost).append('}');
+    }
+
+    @Override
+    public void batteryMeterReported(BatteryMeter meter, float consumed, float reading, double cost,
+                                     float unitsFromMains, float unitsFromBattery) {
+        startMeter(meter);
+        line.append(",\"consumed\":").append(consumed)
+            .append(",\"reading\":").append(reading)
+            .append(",\"cost\":").append(cost)
+            .append(",\"unitsFromMains\":").append(unitsFromMains)
+            .append(",\"unitsFromBattery\":").append(unitsFromBattery)
+            .append(",\"batteryUnits\":").append(meter.getBattery().getBatteryUnits()).append('}');
+    }
+
+    @Override
+    public void hourFinished(double cost) {
+        line.append("],\"cost\":").append(cost).append("}\n");
+        write(line);
+    }
+
+    @Override
+    public void simulationFinished(double totalCost) {
+        line.setLength(0);
+        line.append("{\"totalCost\":").append(totalCost).append("}\n");
+        write(line);
+        flush();
+    }
+
+    @Override
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void startMeter(Meter meter) {
+        if (!firstMeter) {
+            line.append(',');
+        }
+        firstMeter = false;
+        line.append("{\"utility\":\"");
+        // The utility names come from the configuration files
+        for (char c : meter.getUtilityName().toCharArray()) {
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < ' ') {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    private void write(CharSequence text) {
+        try {
+            out.append(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
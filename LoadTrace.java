@@ -0,0 +1,340 @@
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * This class holds the units consumed each hour by the meters of a house,
+ * before any battery, so they can be replayed against other meters without
+ * simulating the appliances again.
+ * <p>
+ * Simulating the appliances is the expensive, random part of a run, while
+ * the cost and the battery of a {@link Meter} or {@link BatteryMeter} only
+ * depend on the units consumed each hour. A {@code LoadTrace} is recorded
+ * once, from a {@link House} or from a {@link ReadingRecorder} file, and then
+ * {@link #replay(Meter[], ReportSink) replayed} against any number of
+ * alternative meters, e.g. with other unit costs or batteries, by consuming
+ * the milli-units of each hour into them and reporting them as a house would.
+ * <p>
+ * Each meter of the trace is a "series", in the order the meters are reported
+ * by the house: the water meter and then the electricity meter. A trace holds
+ * the series of one house, so from the recording of a {@link Fleet} one house
+ * is read at a time.
+ */
+public class LoadTrace {
+    private String[] utilities;
+    private long[][] consumed;
+    private int      hours;
+
+    /**
+     * Replays a recording against other meters.
+     * <p>
+     * Usage: {@code java LoadTrace RECORDING_FILE [--house=N] [--unit-costs=C0,C1,...] [--batteries=CAPACITY,...]
+     * [--tariff=R0,R1,...]}
+     * <p>
+     * The series of the house {@code N} of the recording (0 by default) are replayed against plain meters with the
+     * unit costs given (0.002 for water and 0.013 for electricity by default),
+     * and then once for each battery capacity given, with a {@link BatteryMeter}
+     * for the last series. With a {@link Tariff} of 24 or 168 hourly rates the
+     * last series is costed with the tariff instead of its unit cost. The total
+     * cost of each setup is printed.
+     */
+    public static void main(String[] args) {
+        String   recordingFile = null;
+        double[] unitCosts     = {0.002, 0.013};
+        float[]  batteries     = {};
+        Tariff   tariff        = null;
+        int      house         = 0;
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--unit-costs=")) {
+                    String[] values = arg.substring("--unit-costs=".length()).split(",");
+                    unitCosts = new double[values.length];
+                    for (int s = 0; s < values.length; s++) {
+                        unitCosts[s] = Double.parseDouble(values[s]);
+                    }
+                } else if (arg.startsWith("--batteries=")) {
+                    String[] values = arg.substring("--batteries=".length()).split(",");
+                    batteries = new float[values.length];
+                    for (int b = 0; b < values.length; b++) {
+                        batteries[b] = Float.parseFloat(values[b]);
+                    }
+                } else if (arg.startsWith("--house=")) {
+                    house = Integer.parseInt(arg.substring("--house=".length()));
+                } else if (arg.startsWith("--tariff=")) {
+                    tariff = Tariff.parse(arg.substring("--tariff=".length()));
+                } else {
+                    recordingFile = arg;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Not a valid number: " + e.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Not a valid tariff: " + e.getMessage());
+            System.exit(1);
+        }
+        if (recordingFile == null) {
+            System.out.println("Usage: java LoadTrace RECORDING_FILE [--house=N] [--unit-costs=C0,C1,...] "
+                               + "[--batteries=CAPACITY,...] [--tariff=R0,R1,...]");
+            System.exit(1);
+        }
+
+        LoadTrace trace = null;
+        try {
+            RecordedReadings readings = new RecordedReadings(recordingFile);
+            if (house < 0 || house >= readings.getHouses()) {
+                System.out.println("The recording has " + readings.getHouses() + " houses, no house " + house);
+                System.exit(1);
+            }
+            trace = read(readings, house);
+        } catch (IOException e) {
+            System.out.println("Cannot read the recording: " + e.getMessage());
+            System.exit(1);
+        }
+        if (unitCosts.length != trace.numSeries()) {
+            System.out.println("The recording has " + trace.numSeries() + " meters, " + unitCosts.length + " unit costs given");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        trace.printCost(System.out, "No battery", trace.newMeters(unitCosts, -1, tariff));
+        for (float capacity : batteries) {
+            trace.printCost(System.out, "Battery of " + capacity, trace.newMeters(unitCosts, capacity, tariff));
+        }
+        System.out.println(String.format("Setups: %d, hours: %d, elapsed: %.3fs",
+                                         batteries.length + 1, trace.getHours(), (System.nanoTime() - start) / 1e9));
+    }
+
+    /**
+     * Creates a new {@code LoadTrace}.
+     *
+     * @param utilities the utility name of each series.
+     * @param consumed  the milli-units consumed by each series each hour.
+     */
+    LoadTrace(String[] utilities, long[][] consumed) {
+        this.utilities = utilities;
+        this.consumed  = consumed;
+        this.hours     = consumed.length == 0 ? 0 : consumed[0].length;
+    }
+
+    /**
+     * Records the units consumed each hour by the meters of a house,
+     * simulating it once for the given hours. The report sink of the
+     * house is replaced.
+     *
+     * @param house the house.
+     * @param hours the hours to simulate.
+     * @return the trace.
+     */
+    static LoadTrace record(House house, int hours) {
+        String[] utilities = new String[House.METERS];
+        long[][] consumed  = new long[House.METERS][hours];
+        house.setReportSink(new ReportSink() {
+            private int hour = -1;
+            private int series;
+
+            @Override
+            public void meterTableStarted() {
+                hour++;
+                series = 0;
+            }
+
+            @Override
+            public void meterReported(Meter meter, float reading, double cost) {
+                record(meter);
+            }
+
+            @Override
+            public void batteryMeterReported(BatteryMeter meter, float consumedUnits, float reading, double cost,
+                                             float unitsFromMains, float unitsFromBattery) {
+                record(meter);
+            }
+
+            /**
+             * Records the milli-units of the hour, which the meter
+             * still holds while it is reported.
+             */
+            private void record(Meter meter) {
+                utilities[series] = meter.getUtilityName();
+                consumed[series++][hour] = meter.getMilliUnits();
+            }
+        });
+        house.activate(hours);
+        return new LoadTrace(utilities, consumed);
+    }
+
+    /**
+     * Reads the units consumed each hour by the series of one house of a
+     * recording, as many as the header of the recording gives each house.
+     *
+     * @param readings the recording.
+     * @param house    the house, starting from 0.
+     * @return the trace.
+     */
+    static LoadTrace read(RecordedReadings readings, int house) {
+        int first = house * readings.getSeriesPerHouse();
+        String[] utilities = new String[readings.getSeriesPerHouse()];
+        long[][] consumed  = new long[utilities.length][readings.getHoursRecorded()];
+        for (int s = 0; s < utilities.length; s++) {
+            utilities[s] = readings.getName(first + s);
+            float[] column = readings.readColumn(ReadingRecorder.CONSUMED, first + s);
+            for (int hour = 0; hour < consumed[s].length; hour++) {
+                consumed[s][hour] = Meter.toMilliUnits(column[hour]);
+            }
+        }
+        return new LoadTrace(utilities, consumed);
+    }
+
+    /**
+     * Returns the number of hours of the trace.
+     * @return the number of hours
+     */
+    public int getHours() {
+        return hours;
+    }
+
+    /**
+     * Returns the number of series, i.e. meters, of the trace.
+     * @return the number of series
+     */
+    public int numSeries() {
+        return utilities.length;
+    }
+
+    /**
+     * Returns the utility name of a series.
+     *
+     * @param s the series.
+     * @return the utility name.
+     */
+    public String getUtilityName(int s) {
+        return utilities[s];
+    }
+
+    /**
+     * Returns the units consumed by a series in each hour.
+     *
+     * @param s the series.
+     * @return the units consumed each hour, before any battery.
+     */
+    public float[] getConsumed(int s) {
+        float[] units = new float[hours];
+        for (int hour = 0; hour < hours; hour++) {
+            units[hour] = (float) Meter.toUnits(consumed[s][hour]);
+        }
+        return units;
+    }
+
+    /**
+     * Returns the cost of the units consumed by a series, before any
+     * battery, with a {@link Tariff}, without replaying the trace.
+     *
+     * @param s      the series.
+     * @param tariff the tariff.
+     * @return the total cost of the series.
+     */
+    public double price(int s, Tariff tariff) {
+        return tariff.price(getConsumed(s), 0);
+    }
+
+    /**
+     * Creates new empty meters for the series of the trace, with the given
+     * unit costs, and a {@link BatteryMeter} for the last series if a
+     * capacity is given. The units replayed against them are not added
+     * to the {@link SimulatorMetrics}.
+     *
+     * @param unitCosts the cost of a unit of each series.
+     * @param capacity  the capacity of the battery, negative for no battery.
+     * @return the meters.
+     */
+    Meter[] newMeters(double[] unitCosts, float capacity) {
+        return newMeters(unitCosts, capacity, null);
+    }
+
+    /**
+     * Creates new empty meters for the series of the trace, as
+     * {@link #newMeters(double[], float)} does, costing the last
+     * series with the given {@link Tariff}.
+     *
+     * @param unitCosts the cost of a unit of each series.
+     * @param capacity  the capacity of the battery, negative for no battery.
+     * @param tariff    the tariff of the last series, {@code null} for its unit cost.
+     * @return the meters.
+     */
+    Meter[] newMeters(double[] unitCosts, float capacity, Tariff tariff) {
+        Meter[] meters = new Meter[utilities.length];
+        for (int s = 0; s < meters.length; s++) {
+            if (capacity >= 0 && s == meters.length - 1) {
+                meters[s] = new BatteryMeter(utilities[s], unitCosts[s], new Battery(capacity));
+            } else {
+                meters[s] = new Meter(utilities[s], unitCosts[s]);
+            }
+            // A replay is not an hour simulated by a house
+            meters[s].stopCountingMetrics();
+        }
+        if (meters.length > 0) {
+            meters[meters.length - 1].setTariff(tariff);
+        }
+        return meters;
+    }
+
+    /**
+     * Replays the trace against the given meters, one for each series,
+     * without any appliance. Each hour the milli-units of every series
+     * are consumed into its meter, and the meters are reported to the
+     * sink as {@link House#activate(int)} does: the plain meters first,
+     * in the order of the series, and then the battery meters. The meters
+     * with a {@link Tariff} are costed from the first hour of the cycle.
+     *
+     * @param meters the meters, one for each series.
+     * @param sink   the sink receiving the hourly results.
+     * @return the total cost.
+     */
+    public double replay(Meter[] meters, ReportSink sink) {
+        if (meters.length != utilities.length) {
+            throw new IllegalArgumentException(meters.length + " meters given for " + utilities.length + " series");
+        }
+        double totalCost   = 0;
+        int    currentHour = 0;
+        int    currentDay  = 1;
+
+        for (int hour = 0; hour < hours; hour++) {
+            if (currentHour != 24) {
+                currentHour++;
+            } else {
+                currentHour = 1;
+                currentDay++;
+            }
+            sink.hourStarted(currentDay, currentHour);
+            for (Meter meter : meters) {
+                meter.setTariffHour(hour);
+            }
+
+            double hourCost = 0;
+            sink.meterTableStarted();
+            for (int s = 0; s < meters.length; s++) {
+                if (!(meters[s] instanceof BatteryMeter)) {
+                    meters[s].consumeMilliUnits(consumed[s][hour]);
+                    hourCost += meters[s].report(sink);
+                }
+            }
+            sink.meterTableFinished();
+            for (int s = 0; s < meters.length; s++) {
+                if (meters[s] instanceof BatteryMeter) {
+                    meters[s].consumeMilliUnits(consumed[s][hour]);
+                    hourCost += meters[s].report(sink);
+                }
+            }
+
+            totalCost += hourCost;
+            sink.hourFinished(hourCost);
+        }
+
+        sink.simulationFinished(totalCost);
+        return totalCost;
+    }
+
+    private void printCost(PrintStream out, String setup, Meter[] meters) {
+        out.println(String.format("%-24s The total cost is: %.2fGPB", setup, replay(meters, ReportSink.NONE)));
+    }
+}
@@ -0,0 +1,69 @@
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * {@inheritDoc}
+ *
+ * This class simulates its houses in the process of the coordinator, on a
+ * {@link Fleet} of its own, e.g. to run a {@link ShardedFleet} in tests without
+ * starting any {@link ShardWorker}. The configuration goes through the same
+ * encoding as for a remote worker, so the results are the same.
+ */
+public class LocalShard implements Shard {
+    private int             parallelism;
+    private Fleet           fleet;
+    private ExecutorService epochs;
+    private Future<FleetReport> epoch;
+
+    /**
+     * Creates a new {@code LocalShard}.
+     *
+     * @param parallelism the number of workers simulating the houses of the shard.
+     */
+    public LocalShard(int parallelism) {
+        this.parallelism = parallelism;
+        this.epochs      = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "LocalShard-epochs");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void load(byte[] configuration, int firstHouse, int houses, long seed) throws IOException {
+        fleet = ShardWorker.newFleet(configuration, firstHouse, houses, seed, parallelism);
+    }
+
+    @Override
+    public void advance(int hours) throws IOException {
+        if (fleet == null) {
+            throw new IOException("The shard has not been loaded");
+        }
+        epoch = epochs.submit(() -> fleet.simulate(hours));
+    }
+
+    @Override
+    public FleetReport await() throws IOException {
+        if (epoch == null) {
+            throw new IOException("No epoch has been started");
+        }
+        try {
+            return epoch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the shard", e);
+        } catch (ExecutionException e) {
+            throw new IOException("The shard has failed: " + e.getCause(), e.getCause());
+        } finally {
+            epoch = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        epochs.shutdownNow();
+    }
+}
@@ -1,12 +1,34 @@
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  *  This class represents an object that manages the consumption and
  *  production of a particular utility. Utilities are measures in units.
+ *  <p>
+ *  The reading is kept in fixed point, as a {@code long} number of
+ *  thousandths of a unit ("milli-units"), and converted from and to units
+ *  only by the methods taking or returning units. Each consumption is
+ *  rounded to the nearest milli-unit, and then added exactly, so the
+ *  reading does not drift over long runs and does not depend on the order
+ *  the units are consumed in.
+ *  <p>
+ *  By default a {@code Meter} must be used by one thread at a time. A
+ *  {@link #setConcurrent(boolean) concurrent} meter adds the units consumed
+ *  into striped cells, one for each group of threads consuming at the same
+ *  time, which are summed when the reading is needed, so appliances stepped
+ *  by many threads can consume into the same meter without losing updates
+ *  or contending on the same cache line.
  *
  */
 public class Meter{
+     static final long MILLI_UNITS_PER_UNIT = 1000;
+
      private String utility;
      private double unitCost;
-     private float  meterReading;
+     private long   meterReading;
+     private LongAdder concurrentReading;
+     private LongAdder consumedMetric;
+     private Tariff tariff;
+     private long   tariffHour;
 
     /**
      *  Instantiate a new meter
@@ -18,6 +40,7 @@ public class Meter{
         this.utility      =  utility;
         this.unitCost     =  unitCost;
         this.meterReading =  0;
+        this.consumedMetric = SimulatorMetrics.unitsConsumed(utility);
     }
 
     /**
@@ -28,6 +51,66 @@ public class Meter{
         return unitCost;
     }
 
+    /**
+     * Sets the time-of-use {@link Tariff} of the {@code Meter}. With a tariff
+     * the reading of each hour is costed at the rate of that hour instead of
+     * the unit cost.
+     *
+     * @param tariff the tariff, {@code null} to cost every hour at the unit cost.
+     */
+    public void setTariff(Tariff tariff) {
+        this.tariff = tariff;
+    }
+
+    /**
+     * Returns the time-of-use {@link Tariff} of the {@code Meter}, if any.
+     *
+     * @return the tariff, {@code null} if every hour is costed at the unit cost.
+     */
+    public Tariff getTariff() {
+        return tariff;
+    }
+
+    /**
+     * Sets the hour the next reading is costed in, counted from the first
+     * hour of the simulation. The hour goes on by one after each report.
+     *
+     * @param hour the hour of the next report.
+     */
+    void setTariffHour(long hour) {
+        this.tariffHour = hour;
+    }
+
+    /**
+     * Returns the cost of a unit in the hour of the next report:
+     * the rate of the {@link Tariff} if any, the unit cost otherwise.
+     *
+     * @return the cost of a unit in the current hour.
+     */
+    double getCurrentUnitCost() {
+        return tariff == null ? unitCost : tariff.getRate(tariffHour);
+    }
+
+    /**
+     * Converts units to the nearest number of milli-units.
+     *
+     * @param units the units.
+     * @return the milli-units.
+     */
+    static long toMilliUnits(double units) {
+        return Math.round(units * MILLI_UNITS_PER_UNIT);
+    }
+
+    /**
+     * Converts milli-units to units.
+     *
+     * @param milliUnits the milli-units.
+     * @return the units.
+     */
+    static double toUnits(long milliUnits) {
+        return (double) milliUnits / MILLI_UNITS_PER_UNIT;
+    }
+
     /**
      * Returns the number of units consumed by different
      * appliances attached to the same {@code Meter} object.
@@ -35,14 +118,65 @@ public class Meter{
      * @return {@code meterReading}
      */
     public float getMeterReading() {
-        return meterReading;
+        return (float) toUnits(getMilliUnits());
     }
 
     /**
      * Sets the {@code meterReading} to a specific value passed.
      */
     public void setMeterReading(float meterReading) {
-        this.meterReading = meterReading;
+        setMilliUnits(toMilliUnits(meterReading));
+    }
+
+    /**
+     * Returns the reading of the {@code Meter} in milli-units.
+     *
+     * @return the milli-units consumed.
+     */
+    long getMilliUnits() {
+        if (concurrentReading != null) {
+            return concurrentReading.sum();
+        }
+        return meterReading;
+    }
+
+    /**
+     * Sets the reading of the {@code Meter} in milli-units.
+     *
+     * @param milliUnits the milli-units consumed.
+     */
+    void setMilliUnits(long milliUnits) {
+        if (concurrentReading != null) {
+            concurrentReading.reset();
+            concurrentReading.add(milliUnits);
+        }
+        this.meterReading = milliUnits;
+    }
+
+    /**
+     * Sets whether the {@code Meter} can be used by many threads at the
+     * same time. The reading is kept when switching between the two modes,
+     * and is always the same as the one of a meter used by one thread, as
+     * milli-units are added exactly in any order.
+     *
+     * @param concurrent {@code true} to accept units from many threads.
+     */
+    public void setConcurrent(boolean concurrent) {
+        if (concurrent == isConcurrent()) {
+            return;
+        }
+        long reading = getMilliUnits();
+        concurrentReading = concurrent ? new LongAdder() : null;
+        setMilliUnits(reading);
+    }
+
+    /**
+     * Returns whether the {@code Meter} can be used by many threads at the same time.
+     *
+     * @return {@code true} if the meter is concurrent.
+     */
+    public boolean isConcurrent() {
+        return concurrentReading != null;
     }
 
     /**
@@ -57,11 +191,53 @@ public class Meter{
     /**
      * This method is used to consumed units
      * in the {@code Meter} updating {@code meterReading} property.
+     * The units are rounded to the nearest milli-unit.
      *
      * @param units the {@code units} to consume
      */
     public void consumeUnits(double units){
-        this.meterReading += units;
+        consumeMilliUnits(toMilliUnits(units));
+    }
+
+    /**
+     * Consumes the given milli-units in the {@code Meter}.
+     *
+     * @param milliUnits the milli-units to consume.
+     */
+    void consumeMilliUnits(long milliUnits) {
+        if (concurrentReading != null) {
+            concurrentReading.add(milliUnits);
+            return;
+        }
+        this.meterReading += milliUnits;
+    }
+
+    /**
+     * Moves on to the next hour of the {@link Tariff} after a report.
+     */
+    void nextTariffHour() {
+        tariffHour++;
+    }
+
+    /**
+     * Adds the milli-units reported in an hour to the
+     * {@link SimulatorMetrics} of the utility.
+     *
+     * @param milliUnits the milli-units consumed in the hour.
+     */
+    void countConsumed(long milliUnits) {
+        if (consumedMetric != null) {
+            SimulatorMetrics.add(consumedMetric, milliUnits);
+        }
+    }
+
+    /**
+     * Stops adding the units reported by this meter to the {@link SimulatorMetrics},
+     * e.g. for the copies of the meters a {@link CostLedger} reports its hours to,
+     * which are not hours simulated by a house.
+     */
+    void stopCountingMetrics() {
+        consumedMetric = null;
     }
 
     /**
@@ -71,17 +247,26 @@ public class Meter{
      * @return the cost of the {@code Meter} consumption
      */
     public double report(){
-        String leftAlignFormat = "| %-12s | %-12s | %-12s | %n";
+        return report(ConsoleSink.SYSTEM_OUT);
+    }
+
+    /**
+     * Sends the total cost of hour consumption and the
+     * current {@code meterReading} to the given {@code sink}.
+     *
+     * @param sink the sink receiving the hourly results.
+     * @return the cost of the {@code Meter} consumption
+     */
+    public double report(ReportSink sink){
+        long milliUnits = getMilliUnits();
+        countConsumed(milliUnits);
+        double reading = toUnits(milliUnits);
+        double cost = getCurrentUnitCost() * reading;
 
-        double cost = unitCost * this.meterReading;
+        sink.meterReported(this, (float) reading, cost);
 
-        if(this.meterReading < 0){
-            System.out.format(leftAlignFormat, utility, 0.0f, 0.0f);
-        }else{
-            System.out.format(leftAlignFormat, utility, meterReading,  String.format("%.2f", cost));
-        }
-		
-        this.meterReading = 0;
+        setMilliUnits(0);
+        nextTariffHour();
         return cost;
     }
 }
@@ -0,0 +1,219 @@
+import java.io.PrintStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class runs many independent replicas of the same house
+ * configuration, in parallel on a {@link ForkJoinPool}.
+ * <p>
+ * {@link CyclicVaries}, {@link RandomFixed} and {@link RandomVaries} appliances
+ * consume random units, so one simulation is only one sample of the cost of
+ * a house. A {@code MonteCarlo} run simulates {@code K} replicas, each one
+ * with its own appliances and random stream, and reports the distribution
+ * of the total cost and of the units drawn from the battery and the mains.
+ * <p>
+ * All replicas are created from the same {@link HouseConfiguration}, which
+ * is parsed only once.
+ */
+public class MonteCarlo {
+    private HouseConfiguration configuration;
+    private ForkJoinPool       pool;
+    private long               seed;
+
+    private double[] totalCost;
+    private double[] unitsFromBattery;
+    private double[] unitsFromMains;
+
+    /**
+     * Runs a Monte Carlo simulation of a house.
+     * <p>
+     * Usage: {@code java MonteCarlo CONFIGURATION_FILE [--replicas=K] [--hours=n] [--seed=N]}
+     * <p>
+     * By default 1000 replicas are simulated for 168 hours. With a seed
+     * every run gives the same distributions.
+     */
+    public static void main(String[] args) {
+        String configurationFile = null;
+        int replicas = 1000;
+        int hours    = 168;
+        Long seed    = null;
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--replicas=")) {
+                    replicas = Integer.parseInt(arg.substring("--replicas=".length()));
+                } else if (arg.startsWith("--hours=")) {
+                    hours = Integer.parseInt(arg.substring("--hours=".length()));
+                } else if (arg.startsWith("--seed=")) {
+                    seed = Long.parseLong(arg.substring("--seed=".length()));
+                } else {
+                    configurationFile = arg;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Not a valid number: " + e.getMessage());
+            System.exit(1);
+        }
+        if (configurationFile == null || replicas <= 0) {
+            System.out.println("Usage: java MonteCarlo CONFIGURATION_FILE [--replicas=K] [--hours=n] [--seed=N]");
+            System.exit(1);
+        }
+
+        MonteCarlo monteCarlo = new MonteCarlo(HouseConfiguration.load(configurationFile),
+                                               Runtime.getRuntime().availableProcessors());
+        if (seed != null) {
+            monteCarlo.setSeed(seed);
+        }
+        long start = System.nanoTime();
+        monteCarlo.run(replicas, hours);
+        monteCarlo.print(System.out);
+        System.out.println(String.format("Replicas: %d, hours: %d, elapsed: %.2fs",
+                                         replicas, hours, (System.nanoTime() - start) / 1e9));
+    }
+
+    /**
+     * Creates a new {@code MonteCarlo} simulation of the given configuration.
+     *
+     * @param configuration the configuration of the house.
+     * @param parallelism   the number of workers simulating the replicas.
+     */
+    public MonteCarlo(HouseConfiguration configuration, int parallelism) {
+        this.configuration = configuration;
+        this.pool          = new ForkJoinPool(parallelism);
+        this.seed          = RandomStream.randomSeed();
+    }
+
+    /**
+     * Sets the seed of the simulation. Each replica gets its own
+     * seed, derived from the given one and the index of the replica,
+     * so the results do not depend on the number of workers.
+     *
+     * @param seed the seed of the simulation.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Simulates {@code replicas} independent copies of the house
+     * for the given hours.
+     *
+     * @param replicas the number of replicas.
+     * @param hours    the hours to simulate each replica.
+     * @throws IllegalArgumentException if {@code replicas} is not positive.
+     */
+    public void run(int replicas, int hours) {
+        if (replicas <= 0) {
+            throw new IllegalArgumentException("The number of replicas must be positive: " + replicas);
+        }
+        totalCost        = new double[replicas];
+        unitsFromBattery = new double[replicas];
+        unitsFromMains   = new double[replicas];
+
+        int threshold = Math.max(1, replicas / (pool.getParallelism() * 8));
+        pool.invoke(new ReplicaRange(0, replicas, hours, threshold));
+    }
+
+    /**
+     * Returns the distribution of the total cost of the last run.
+     * @return the distribution of the total cost
+     */
+    public Distribution getTotalCost() {
+        return new Distribution(totalCost.clone());
+    }
+
+    /**
+     * Returns the distribution of the electricity drawn from
+     * the battery in the last run.
+     * @return the distribution of the units drawn from the battery
+     */
+    public Distribution getUnitsFromBattery() {
+        return new Distribution(unitsFromBattery.clone());
+    }
+
+    /**
+     * Returns the distribution of the electricity drawn from
+     * the mains in the last run.
+     * @return the distribution of the units drawn from the mains
+     */
+    public Distribution getUnitsFromMains() {
+        return new Distribution(unitsFromMains.clone());
+    }
+
+    /**
+     * Prints out the mean, the standard deviation and the
+     * percentiles 50, 90 and 99 of the last run.
+     *
+     * @param out the stream where the table is printed.
+     */
+    public void print(PrintStream out) {
+        String format = "| %-28s | %-12s | %-12s | %-12s | %-12s | %-12s |%n";
+        String line   = "+------------------------------+--------------+--------------+--------------+--------------+--------------+%n";
+
+        out.format(line);
+        out.format("|                              |     Mean     |  Std. dev.   |     p50      |     p90      |     p99      |%n");
+        out.format(line);
+        printRow(out, format, "Total cost(GPB)", getTotalCost());
+        printRow(out, format, "Units drawn from the battery", getUnitsFromBattery());
+        printRow(out, format, "Units drawn from the mains", getUnitsFromMains());
+        out.format(line);
+    }
+
+    private void printRow(PrintStream out, String format, String name, Distribution distribution) {
+        out.format(format, name,
+                   String.format("%.2f", distribution.getMean()),
+                   String.format("%.2f", distribution.getStandardDeviation()),
+                   String.format("%.2f", distribution.getPercentile(50)),
+                   String.format("%.2f", distribution.getPercentile(90)),
+                   String.format("%.2f", distribution.getPercentile(99)));
+    }
+
+    /**
+     * Simulates a range of replicas, splitting it in two halves
+     * until it is smaller than {@code threshold}.
+     */
+    private class ReplicaRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private int from;
+        private int to;
+        private int hours;
+        private int threshold;
+
+        ReplicaRange(int from, int to, int hours, int threshold) {
+            this.from      = from;
+            this.to        = to;
+            this.hours     = hours;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                for (int replica = from; replica < to; replica++) {
+                    simulate(replica, hours);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ReplicaRange(from, middle, hours, threshold),
+                      new ReplicaRange(middle, to, hours, threshold));
+        }
+    }
+
+    /**
+     * Simulates one replica, storing its results.
+     */
+    private void simulate(int replica, int hours) {
+        House house = configuration.newHouse();
+        house.setSeed(RandomStream.derive(seed, replica));
+        SummarySink summary = new SummarySink(null);
+        house.setHourDelay(0);
+        house.setReportSink(summary);
+
+        String electricity = house.getElectricMeter().getUtilityName();
+        totalCost[replica]        = house.activate(hours);
+        unitsFromBattery[replica] = summary.getUnitsFromBattery(electricity);
+        unitsFromMains[replica]   = summary.getUnitsFromMains(electricity);
+    }
+}
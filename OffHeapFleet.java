@@ -0,0 +1,431 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class simulates a fleet of identical houses, e.g. millions of copies
+ * of one {@link HouseConfiguration}, without creating any {@link House} or
+ * {@link Appliance} object.
+ * <p>
+ * The properties of the appliances are shared by all houses and packed into
+ * primitive arrays, and each hour of a house is simulated by the same routine
+ * as a {@link HouseKernel}, {@link HouseKernel#step}. The mutable state of each house,
+ * i.e. the units in its battery, the state of the {@link RandomStream} of each
+ * random appliance and the current time of each cyclic appliance, is a fixed
+ * size record in direct {@link ByteBuffer}s, outside of the Java heap. The
+ * records of consecutive houses are contiguous, so each worker scans its range
+ * of houses sequentially, and the heap used does not depend on the number of
+ * houses: a fleet of ten million houses runs with a small heap and without
+ * garbage collections, given enough direct memory
+ * ({@code -XX:MaxDirectMemorySize}).
+ * <p>
+ * Every house is simulated as by {@link House#activate()} with the meters of
+ * {@link House#createDefault()}, and the houses get their seeds as in
+ * {@link Fleet#setSeed(long)}, and the fleet is split in the same ranges of
+ * houses as a {@link Fleet}, so with the same seed the results are exactly the
+ * ones of a {@link Fleet} of the same houses, whatever the parallelism of each.
+ */
+public class OffHeapFleet {
+    private static final int CHUNK_BYTES = 1 << 30;
+    private static final int WATER       = 0;
+    private static final int ELECTRIC    = 1;
+
+    private int          houses;
+    private ForkJoinPool pool;
+    private long         elapsedHours;
+
+    private int          recordBytes;
+    private int          housesPerChunk;
+    private ByteBuffer[] chunks;
+
+    private String  waterUtility;
+    private String  electricUtility;
+    private double  waterUnitCost;
+    private double  electricUnitCost;
+    private long    batteryCapacity;
+    private int[]   stepsPerHour;
+
+    // The index of each random appliance in the configuration, for its seed
+    private int[] randomIndex;
+
+    private HouseKernel.Properties properties;
+
+    /**
+     * Runs the simulation of a fleet of identical houses.
+     * <p>
+     * Usage: {@code java OffHeapFleet CONFIGURATION_FILE [--houses=N] [--hours=N] [--seed=N] [--windows]}
+     * <p>
+     * The fleet has {@code N} houses (1000000 by default), each one with the
+     * appliances of the configuration file, and is simulated for the hours
+     * given (168 by default). With a seed every run gives the same results.
+     * With {@code --windows} the daily peak, rolling and moving averages of
+     * the units of each utility and of the cost of the fleet are printed by a
+     * {@link WindowedSink} while the fleet is simulated.
+     */
+    public static void main(String[] args) {
+        String file = null;
+        int houses = 1000000;
+        int hours  = 168;
+        Long seed  = null;
+        boolean windows = false;
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--houses=")) {
+                    houses = Integer.parseInt(arg.substring("--houses=".length()));
+                } else if (arg.startsWith("--hours=")) {
+                    hours = Integer.parseInt(arg.substring("--hours=".length()));
+                } else if (arg.startsWith("--seed=")) {
+                    seed = Long.parseLong(arg.substring("--seed=".length()));
+                } else if (arg.equals("--windows")) {
+                    windows = true;
+                } else {
+                    file = arg;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Not a valid number: " + e.getMessage());
+            System.exit(1);
+        }
+        if (file == null) {
+            System.out.println("Usage: java OffHeapFleet CONFIGURATION_FILE [--houses=N] [--hours=N] [--seed=N] [--windows]");
+            System.exit(1);
+        }
+
+        OffHeapFleet fleet = null;
+        try {
+            fleet = new OffHeapFleet(HouseConfiguration.load(file), houses, Runtime.getRuntime().availableProcessors());
+        } catch (OutOfMemoryError e) {
+            System.out.println("Cannot allocate the state of " + houses + " houses, "
+                               + "increase -XX:MaxDirectMemorySize: " + e.getMessage());
+            System.exit(1);
+        }
+        if (seed != null) {
+            fleet.setSeed(seed);
+        }
+        FleetReport report = fleet.simulate(hours, windows ? new WindowedSink(System.out) : null);
+        report.print(System.out);
+        System.out.println(String.format("Off-heap state: %d bytes per house, %.1f MB",
+                                         fleet.getRecordBytes(), fleet.getStateBytes() / 1e6));
+    }
+
+    /**
+     * Creates a new {@code OffHeapFleet} of houses with the appliances of the
+     * given configuration and allocates their state, seeded at random.
+     *
+     * @param configuration the configuration of every house.
+     * @param houses        the number of houses.
+     * @param parallelism   the number of workers simulating the houses.
+     */
+    public OffHeapFleet(HouseConfiguration configuration, int houses, int parallelism) {
+        if (houses < 0) {
+            throw new IllegalArgumentException("The number of houses cannot be negative: " + houses);
+        }
+        this.houses = houses;
+        this.pool   = new ForkJoinPool(parallelism);
+
+        House template = House.createDefault();
+        BatteryMeter electricMeter = (BatteryMeter) template.getElectricMeter();
+        this.waterUtility     = template.getWaterMeter().getUtilityName();
+        this.electricUtility  = electricMeter.getUtilityName();
+        this.waterUnitCost    = template.getWaterMeter().getCurrentUnitCost();
+        this.electricUnitCost = electricMeter.getCurrentUnitCost();
+        this.batteryCapacity  = electricMeter.getBattery().getCapacityMilliUnits();
+
+        compile(configuration);
+
+        // The units in the battery, then the random states, then the current times
+        int randoms = properties.numRandom();
+        int cyclics = properties.numCyclic();
+        this.recordBytes    = (8 + 8 * randoms + cyclics + 7) & ~7;
+        this.housesPerChunk = Math.max(1, CHUNK_BYTES / recordBytes);
+        this.chunks         = new ByteBuffer[(int) ((houses + (long) housesPerChunk - 1) / housesPerChunk)];
+        for (int c = 0; c < chunks.length; c++) {
+            int chunkHouses = Math.min(housesPerChunk, houses - c * housesPerChunk);
+            chunks[c] = ByteBuffer.allocateDirect(chunkHouses * recordBytes).order(ByteOrder.nativeOrder());
+        }
+        setSeed(RandomStream.randomSeed());
+    }
+
+    private void compile(HouseConfiguration configuration) {
+        int cf = 0, cv = 0, rf = 0, rv = 0, water = 0;
+        for (int i = 0; i < configuration.numAppliances(); i++) {
+            if (configuration.getMeter(i) != HouseConfiguration.ELECTRIC) {
+                water++;
+            }
+            switch (configuration.getType(i)) {
+                case HouseConfiguration.CYCLIC_FIXED:
+                    cf++;
+                    break;
+                case HouseConfiguration.CYCLIC_VARIES:
+                    cv++;
+                    break;
+                case HouseConfiguration.RANDOM_FIXED:
+                    rf++;
+                    break;
+                default:
+                    rv++;
+            }
+        }
+        // The slots of the water appliances, then the ones of the electric appliances
+        HouseKernel.Properties p = new HouseKernel.Properties(cf, cv, rf, rv,
+                                                              new int[]{water, configuration.numAppliances()});
+        properties   = p;
+        stepsPerHour = p.stepsPerHour();
+        randomIndex  = new int[p.numRandom()];
+
+        // The offsets of each type in the random states, see HouseKernel.Properties
+        int rfRandom = cv, rvRandom = cv + rf;
+        int[] nextSlot = {0, water};
+        cf = cv = rf = rv = 0;
+        for (int i = 0; i < configuration.numAppliances(); i++) {
+            int slot = nextSlot[configuration.getMeter(i) == HouseConfiguration.ELECTRIC ? ELECTRIC : WATER]++;
+            switch (configuration.getType(i)) {
+                case HouseConfiguration.CYCLIC_FIXED:
+                    p.cfSlot[cf]  = slot;
+                    p.cfUnits[cf] = Meter.toMilliUnits(configuration.getFixedUnits(i));
+                    p.cfCycle[cf] = configuration.getCycleLength(i);
+                    cf++;
+                    break;
+                case HouseConfiguration.CYCLIC_VARIES:
+                    randomIndex[cv] = i;
+                    p.cvSlot[cv]    = slot;
+                    p.cvMin[cv]     = configuration.getMinUnits(i);
+                    p.cvMax[cv]     = configuration.getMaxUnits(i);
+                    p.cvCycle[cv]   = configuration.getCycleLength(i);
+                    cv++;
+                    break;
+                case HouseConfiguration.RANDOM_FIXED:
+                    randomIndex[rfRandom + rf] = i;
+                    p.rfSlot[rf]               = slot;
+                    p.rfUnits[rf]              = Meter.toMilliUnits(configuration.getFixedUnits(i));
+                    p.rfProbability[rf]        = configuration.getProbability(i);
+                    rf++;
+                    break;
+                default:
+                    randomIndex[rvRandom + rv] = i;
+                    p.rvSlot[rv]               = slot;
+                    p.rvMin[rv]                = configuration.getMinUnits(i);
+                    p.rvMax[rv]                = configuration.getMaxUnits(i);
+                    p.rvProbability[rv]        = configuration.getProbability(i);
+                    rv++;
+            }
+        }
+        p.checkProbabilities();
+    }
+
+    /**
+     * Sets the seed of every house of the fleet and resets its state, i.e.
+     * empties the batteries and restarts the cycles. Each house gets the
+     * seed {@link Fleet#setSeed(long)} would give it, and each appliance
+     * the stream {@link House#setSeed(long)} would give it.
+     *
+     * @param seed the seed of the fleet.
+     */
+    public void setSeed(long seed) {
+        int randoms = randomIndex.length;
+        for (int i = 0; i < houses; i++) {
+            ByteBuffer chunk = chunks[i / housesPerChunk];
+            int record = (i % housesPerChunk) * recordBytes;
+            long houseSeed = RandomStream.derive(seed, i);
+
+            chunk.putLong(record, 0);
+            for (int r = 0; r < randoms; r++) {
+                // The stream split for the appliance by the house, in the order of the configuration
+                chunk.putLong(record + 8 + 8 * r, RandomStream.derive(houseSeed, randomIndex[r]));
+            }
+            for (int b = record + 8 + 8 * randoms; b < record + recordBytes; b++) {
+                chunk.put(b, (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of houses in the fleet.
+     *
+     * @return the number of houses
+     */
+    public int numHouses() {
+        return houses;
+    }
+
+    /**
+     * Returns the size of the state of each house.
+     *
+     * @return the bytes of each record
+     */
+    public int getRecordBytes() {
+        return recordBytes;
+    }
+
+    /**
+     * Returns the size of the state of all houses, outside of the heap.
+     *
+     * @return the bytes of all records
+     */
+    public long getStateBytes() {
+        return (long) recordBytes * houses;
+    }
+
+    /**
+     * Returns the units in the battery of a house.
+     *
+     * @param house the index of the house, starting from 0.
+     * @return the units in the battery
+     */
+    public double getBatteryUnits(int house) {
+        return Meter.toUnits(chunks[house / housesPerChunk].getLong((house % housesPerChunk) * recordBytes));
+    }
+
+    /**
+     * Simulates all houses of the fleet for the given hours,
+     * going on from the state left by the previous call.
+     *
+     * @param hours the hours to simulate.
+     * @return the costs, units and battery units of the fleet for each hour.
+     */
+    public FleetReport simulate(int hours) {
+        return simulate(hours, null);
+    }
+
+    /**
+     * Simulates all houses of the fleet for the given hours, going on from
+     * the state left by the previous call, and sends the meters and the cost
+     * of the whole fleet to a {@link ReportSink} as each hour is simulated, as
+     * {@link Fleet#simulate(int, ReportSink)} does.
+     *
+     * @param hours the hours to simulate.
+     * @param sink  the sink receiving each hour of the fleet, {@code null} for none.
+     * @return the costs, units and battery units of the fleet for each hour.
+     */
+    public FleetReport simulate(int hours, ReportSink sink) {
+        long start = System.nanoTime();
+        int threshold = Fleet.rangeSize(houses);
+        FleetReport report;
+        if (sink == null) {
+            report = pool.invoke(new HouseRange(0, houses, elapsedHours, hours, threshold)).report;
+        } else {
+            report = new FleetReport(houses, hours, elapsedHours);
+            for (int hour = 0; hour < hours; hour++) {
+                FleetReport hourReport = pool.invoke(new HouseRange(0, houses, elapsedHours + hour, 1, threshold)).report;
+                hourReport.sendHours(sink);
+                report.append(hourReport, hour);
+            }
+            sink.simulationFinished(report.getTotalCost());
+        }
+        elapsedHours += hours;
+
+        SimulatorMetrics.countSteps(stepsPerHour, (long) houses * hours);
+        SimulatorMetrics.add(SimulatorMetrics.SIMULATED_HOURS, (long) houses * hours);
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * Simulates a range of houses of the fleet, splitting it in
+     * two halves until it is smaller than {@code threshold}.
+     */
+    private class HouseRange extends RecursiveTask<HouseRange> {
+        private static final long serialVersionUID = 1L;
+
+        private int         from;
+        private int         to;
+        private long        firstHour;
+        private int         hours;
+        private int         threshold;
+        private FleetReport report;
+
+        HouseRange(int from, int to, long firstHour, int hours, int threshold) {
+            this.from      = from;
+            this.to        = to;
+            this.firstHour = firstHour;
+            this.hours     = hours;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected HouseRange compute() {
+            if (to - from <= threshold) {
+                report = new FleetReport(to - from, hours, firstHour);
+                simulateRange();
+                return this;
+            }
+
+            int middle = (from + to) >>> 1;
+            HouseRange left  = new HouseRange(from, middle, firstHour, hours, threshold);
+            HouseRange right = new HouseRange(middle, to, firstHour, hours, threshold);
+            right.fork();
+            left.compute();
+            right.join();
+
+            report = left.report;
+            report.merge(right.report);
+            return this;
+        }
+
+        /**
+         * Simulates each house of the range for all hours, with its
+         * state loaded from its record and then written back.
+         */
+        private void simulateRange() {
+            long[] random   = new long[properties.numRandom()];
+            int[]  time     = new int[properties.numCyclic()];
+            long[] units    = new long[properties.numSlots()];
+            long[] consumed = new long[2 * hours];
+            long waterConsumed = 0, electricConsumed = 0, stored = 0, taken = 0, wasted = 0;
+
+            for (int house = from; house < to; house++) {
+                ByteBuffer chunk = chunks[house / housesPerChunk];
+                int record = (house % housesPerChunk) * recordBytes;
+                long battery = chunk.getLong(record);
+                for (int r = 0; r < random.length; r++) {
+                    random[r] = chunk.getLong(record + 8 + 8 * r);
+                }
+                int times = record + 8 + 8 * random.length;
+                for (int t = 0; t < time.length; t++) {
+                    time[t] = chunk.get(times + t);
+                }
+
+                HouseKernel.step(properties, random, time, units, consumed, hours);
+                for (int hour = 0; hour < hours; hour++) {
+                    long water    = consumed[2 * hour + WATER];
+                    long electric = consumed[2 * hour + ELECTRIC];
+
+                    // The battery of the electricity meter, as in BatteryMeter.report()
+                    long net        = Battery.netMilliUnits(electric, battery, batteryCapacity);
+                    long reading    = Math.max(0, electric + net);
+                    long unitsTaken = Math.max(0, -net);
+                    battery += net;
+                    if (electric < 0) {
+                        stored += net;
+                        wasted += -electric - net;
+                    } else {
+                        taken  += unitsTaken;
+                    }
+                    waterConsumed    += water;
+                    electricConsumed += electric;
+
+                    double waterCost    = waterUnitCost * Meter.toUnits(water);
+                    double electricCost = electricUnitCost * Meter.toUnits(reading);
+                    report.addHour(hour, waterCost + electricCost, waterCost, electricCost,
+                                   water, electric, reading, unitsTaken, battery);
+                }
+
+                chunk.putLong(record, battery);
+                for (int r = 0; r < random.length; r++) {
+                    chunk.putLong(record + 8 + 8 * r, random[r]);
+                }
+                for (int t = 0; t < time.length; t++) {
+                    chunk.put(times + t, (byte) time[t]);
+                }
+            }
+
+            SimulatorMetrics.add(SimulatorMetrics.unitsConsumed(waterUtility), waterConsumed);
+            SimulatorMetrics.add(SimulatorMetrics.unitsConsumed(electricUtility), electricConsumed);
+            SimulatorMetrics.add(SimulatorMetrics.UNITS_STORED, stored);
+            SimulatorMetrics.add(SimulatorMetrics.UNITS_TAKEN, taken);
+            SimulatorMetrics.add(SimulatorMetrics.UNITS_WASTED, wasted);
+        }
+    }
+}
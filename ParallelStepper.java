@@ -0,0 +1,207 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * {@inheritDoc}
+ *
+ * This class steps the appliances of a very large {@link House} on many
+ * threads. The appliances are split into contiguous ranges, one for each
+ * worker thread, and every hour each worker calls {@link Appliance#timePasses()}
+ * on its own range, waiting on a barrier for all the others before the meters
+ * are reported.
+ * <p>
+ * While the stepper is in use each appliance consumes into a shard of its
+ * meter, a {@link Meter} owned by its worker, so the workers never write to
+ * the same meter. After the barrier the milli-units of the shards are added
+ * to the real meters, which is exact in any order, before the battery is
+ * netted. Each appliance has its own {@link RandomStream}, so for the same
+ * seed the readings are exactly the same as the ones of the sequential
+ * simulation.
+ * <p>
+ * The workers are daemon threads kept alive between hours, and stopped
+ * when the stepper is released.
+ */
+class ParallelStepper implements ApplianceStepper {
+    private Appliance[] appliances;
+    private Meter[]     applianceMeters;
+    private Meter[]     meters;
+    private Shard[]     shards;
+    private int[]       stepsPerHour;
+
+    private CyclicBarrier    start;
+    private CyclicBarrier    finish;
+    private volatile boolean released;
+    private volatile Throwable failure;
+
+    /**
+     * The appliances of one worker and the shards of the
+     * meters they consume into, one for each meter.
+     */
+    private static class Shard {
+        private int     first;
+        private int     end;
+        private Meter[] meters;
+
+        Shard(int first, int end, Meter[] meters) {
+            this.first  = first;
+            this.end    = end;
+            this.meters = meters;
+        }
+    }
+
+    /**
+     * Creates a new {@code ParallelStepper} for the given appliances and
+     * starts its worker threads.
+     *
+     * @param appliances the appliances of the house.
+     * @param threads    the number of threads stepping the appliances,
+     *                   including the one calling {@link #stepHour()}.
+     * @return the stepper.
+     * @throws Exception if an appliance has no meter or the number of threads is not positive.
+     */
+    static ParallelStepper create(List<Appliance> appliances, int threads) throws Exception {
+        if (threads <= 0) {
+            throw new Exception("The number of threads must be positive: " + threads);
+        }
+        ParallelStepper stepper = new ParallelStepper();
+        int size = appliances.size();
+        stepper.appliances      = appliances.toArray(new Appliance[0]);
+        stepper.applianceMeters = new Meter[size];
+
+        // Finds the meters in the order they are first used
+        List<Meter> meterList = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            stepper.appliances[i].checkMeterSet();
+            stepper.applianceMeters[i] = stepper.appliances[i].getMeter();
+            if (!meterList.contains(stepper.applianceMeters[i])) {
+                meterList.add(stepper.applianceMeters[i]);
+            }
+        }
+        stepper.meters       = meterList.toArray(new Meter[0]);
+        stepper.stepsPerHour = SimulatorMetrics.stepsPerHour(appliances);
+
+        threads = Math.max(1, Math.min(threads, size));
+        stepper.shards = new Shard[threads];
+        for (int w = 0; w < threads; w++) {
+            Meter[] shardMeters = new Meter[stepper.meters.length];
+            for (int m = 0; m < shardMeters.length; m++) {
+                shardMeters[m] = new Meter(stepper.meters[m].getUtilityName(), stepper.meters[m].getUnitCost());
+            }
+            Shard shard = new Shard((int) ((long) size * w / threads), (int) ((long) size * (w + 1) / threads), shardMeters);
+            for (int i = shard.first; i < shard.end; i++) {
+                stepper.appliances[i].setMeter(shardMeters[meterList.indexOf(stepper.applianceMeters[i])]);
+            }
+            stepper.shards[w] = shard;
+        }
+
+        stepper.start  = new CyclicBarrier(threads);
+        stepper.finish = new CyclicBarrier(threads);
+        for (int w = 1; w < threads; w++) {
+            Thread worker = new Thread(stepper.new Worker(stepper.shards[w]), "ParallelStepper-" + w);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        return stepper;
+    }
+
+    /**
+     * Returns the number of threads stepping the appliances.
+     *
+     * @return the number of threads.
+     */
+    int numThreads() {
+        return shards.length;
+    }
+
+    @Override
+    public void stepHour() {
+        if (shards.length > 1) {
+            await(start);
+            try {
+                step(shards[0]);
+            } catch (Throwable e) {
+                // The workers wait for this thread at the finish barrier
+                failure = e;
+            }
+            await(finish);
+        } else {
+            step(shards[0]);
+        }
+        if (failure != null) {
+            Throwable cause = failure;
+            release();
+            throw new IllegalStateException("An appliance failed while stepping the appliances", cause);
+        }
+
+        SimulatorMetrics.countSteps(stepsPerHour, 1);
+
+        // Merges the shards into the meters
+        for (Shard shard : shards) {
+            for (int m = 0; m < meters.length; m++) {
+                meters[m].consumeMilliUnits(shard.meters[m].getMilliUnits());
+                shard.meters[m].setMilliUnits(0);
+            }
+        }
+    }
+
+    private void step(Shard shard) {
+        for (int i = shard.first; i < shard.end; i++) {
+            appliances[i].timePasses();
+        }
+    }
+
+    @Override
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        if (shards.length > 1) {
+            // Wakes the workers up, which stop as the stepper is released
+            await(start);
+        }
+        for (int i = 0; i < appliances.length; i++) {
+            appliances[i].setMeter(applianceMeters[i]);
+        }
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while stepping the appliances", e);
+        } catch (BrokenBarrierException e) {
+            throw new IllegalStateException("A worker thread stopped while stepping the appliances", e);
+        }
+    }
+
+    /**
+     * Steps the appliances of one shard every hour, until the stepper is released.
+     */
+    private class Worker implements Runnable {
+        private Shard shard;
+
+        Worker(Shard shard) {
+            this.shard = shard;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                await(start);
+                if (released) {
+                    return;
+                }
+                try {
+                    step(shard);
+                } catch (Throwable e) {
+                    failure = e;
+                }
+                await(finish);
+            }
+        }
+    }
+}
@@ -1,4 +1,3 @@
-import java.util.Random;
 /**
  * This class represents a type of {@link Appliance}
  * object which the {@code House} can have.
@@ -44,10 +43,26 @@ public class RandomFixed extends Appliance{
             System.exit(1);
         }
 
-        int randomProbability = new Random().nextInt(probability);
+        int randomProbability = getRandomStream().nextInt(probability);
 
         if(randomProbability == 0){
             tellMeterToConsumeUnits(unitsFixed);
         }
     }
+
+    /**
+     * Returns the units consumed each hour the appliance is on.
+     * @return the fixed units
+     */
+    float getUnitsFixed() {
+        return unitsFixed;
+    }
+
+    /**
+     * Returns the probability of being on, i.e. "1 in {@code probability}".
+     * @return the probability
+     */
+    int getProbability() {
+        return probability;
+    }
 }
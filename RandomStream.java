@@ -0,0 +1,160 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a small, splittable generator of pseudorandom numbers
+ * (SplitMix64), used by each {@link Appliance} to decide whether it is
+ * switched on and how many units it consumes.
+ * <p>
+ * The whole state of a {@code RandomStream} is a single {@code long}, so
+ * drawing a number never allocates, and the state can be copied into the
+ * primitive arrays of a {@link HouseKernel}. A {@link House} derives the
+ * stream of each appliance from one seed with {@link #split()}, so the same
+ * seed always gives the same readings, whichever thread steps the appliances.
+ */
+final class RandomStream {
+    static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private static final AtomicLong defaultSeeds = new AtomicLong(System.nanoTime());
+
+    private long state;
+
+    /**
+     * Creates a new {@code RandomStream} with the given seed.
+     *
+     * @param seed the seed.
+     */
+    RandomStream(long seed) {
+        this.state = seed;
+    }
+
+    /**
+     * Returns a different seed each time it is called, used when
+     * no seed is given to the simulation.
+     *
+     * @return a new seed.
+     */
+    static long randomSeed() {
+        return mix64(defaultSeeds.addAndGet(GOLDEN_GAMMA) ^ System.nanoTime());
+    }
+
+    /**
+     * Returns the {@code index}-th number of the stream with the given
+     * seed, without creating it. It is used to give an independent seed
+     * to each house of a fleet or replica of a simulation.
+     *
+     * @param seed  the seed of the stream.
+     * @param index the index of the number, starting from 0.
+     * @return the derived seed.
+     */
+    static long derive(long seed, long index) {
+        return mix64(seed + (index + 1) * GOLDEN_GAMMA);
+    }
+
+    /**
+     * Creates a new independent {@code RandomStream}, seeded
+     * with the next number of this stream.
+     *
+     * @return the new stream.
+     */
+    RandomStream split() {
+        return new RandomStream(nextLong());
+    }
+
+    /**
+     * Returns the state of the stream.
+     *
+     * @return the state.
+     */
+    long getState() {
+        return state;
+    }
+
+    /**
+     * Sets the state of the stream, e.g. the one returned
+     * by {@link #getState()} of another stream.
+     *
+     * @param state the state.
+     */
+    void setState(long state) {
+        this.state = state;
+    }
+
+    /**
+     * Returns the next pseudorandom {@code long} of the stream.
+     *
+     * @return the next number.
+     */
+    long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix64(state);
+    }
+
+    /**
+     * Returns the next pseudorandom {@code float} between
+     * 0 (inclusive) and 1 (exclusive).
+     *
+     * @return the next number.
+     */
+    float nextFloat() {
+        return toFloat(nextLong());
+    }
+
+    /**
+     * Returns the next pseudorandom {@code double} between
+     * 0 (inclusive) and 1 (exclusive), using 53 bits.
+     *
+     * @return the next number.
+     */
+    double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Returns the next pseudorandom {@code int} between
+     * 0 (inclusive) and {@code bound} (exclusive).
+     *
+     * @param bound the upper bound, must be positive.
+     * @return the next number.
+     */
+    int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive: " + bound);
+        }
+        return toInt(nextLong(), bound);
+    }
+
+    /**
+     * Mixes the bits of {@code z}, the output function of SplitMix64.
+     *
+     * @param z the value to mix.
+     * @return the mixed value.
+     */
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Converts a random {@code long} to a {@code float} between
+     * 0 (inclusive) and 1 (exclusive), using its top 24 bits.
+     *
+     * @param random the random number.
+     * @return the {@code float}.
+     */
+    static float toFloat(long random) {
+        return (random >>> 40) * 0x1.0p-24f;
+    }
+
+    /**
+     * Converts a random {@code long} to an {@code int} between
+     * 0 (inclusive) and {@code bound} (exclusive), using its top 32 bits.
+     *
+     * @param random the random number.
+     * @param bound  the upper bound, must be positive.
+     * @return the {@code int}.
+     */
+    static int toInt(long random, int bound) {
+        return (int) (((random >>> 32) * bound) >>> 32);
+    }
+}
@@ -1,4 +1,3 @@
-import java.util.Random;
 /**
  * This class represents a type of {@link Appliance}
  * object which the {@code House} can have.
@@ -13,7 +12,6 @@ public class RandomVaries extends Appliance {
     private int    probability;
     private float  minUnits;
     private float  maxUnits;
-    private Random random;
 
     /**
      * Creates a new {@code RandomVaries} appliance.
@@ -28,7 +26,6 @@ public class RandomVaries extends Appliance {
         this.probability = probability;
         this.minUnits    = minUnits;
         this.maxUnits    = maxUnits;
-        this.random      = new Random();
     }
 
     /**
@@ -49,10 +46,34 @@ public class RandomVaries extends Appliance {
         }
 
         float randomUnits       = generateRandomUnits(minUnits, maxUnits);
-        int   randomProbability = random.nextInt(probability);
+        int   randomProbability = getRandomStream().nextInt(probability);
 
         if(randomProbability == 0){
             tellMeterToConsumeUnits(randomUnits);
         }
     }
+
+    /**
+     * Returns the min units that can be consumed each hour.
+     * @return the min units
+     */
+    float getMinUnits() {
+        return minUnits;
+    }
+
+    /**
+     * Returns the max units that can be consumed each hour.
+     * @return the max units
+     */
+    float getMaxUnits() {
+        return maxUnits;
+    }
+
+    /**
+     * Returns the probability of being on, i.e. "1 in {@code probability}".
+     * @return the probability
+     */
+    int getProbability() {
+        return probability;
+    }
 }
@@ -0,0 +1,274 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class records the hourly readings of many meters into a columnar
+ * file of {@code float} values, written through memory-mapped buffers.
+ * <p>
+ * Each meter recorded is a "series". For every series and hour the file
+ * holds the units consumed, the reading, the cost, the units drawn from the
+ * mains and from the battery and the units in the battery. The values of one
+ * column of one series are contiguous, so a series can be read back as an
+ * array by {@link RecordedReadings} without simulating again.
+ * <pre>
+ *  header (32 bytes)        magic "HREC", version, hours, series, columns,
+ *                           hours recorded, series of each house, reserved
+ *  names (32 bytes each)    the utility name of each series, UTF-8
+ *  values                   float of (column, series, hour) at
+ *                           ((column * series + s) * hours + hour) * 4
+ * </pre>
+ * The file is mapped in chunks of whole series, so it can be larger than
+ * the 2GB of a single {@link MappedByteBuffer}. Recording an hour only
+ * writes primitive values into the buffers, without any allocation.
+ */
+public class ReadingRecorder implements Closeable {
+    static final int MAGIC       = 0x43455248;   // "HREC" in little-endian
+    static final int VERSION     = 1;
+    static final int HEADER_SIZE = 32;
+    static final int NAME_SIZE   = 32;
+
+    public static final int CONSUMED           = 0;
+    public static final int READING            = 1;
+    public static final int COST               = 2;
+    public static final int UNITS_FROM_MAINS   = 3;
+    public static final int UNITS_FROM_BATTERY = 4;
+    public static final int BATTERY_UNITS      = 5;
+    static final int COLUMNS = 6;
+
+    private static final long CHUNK_SIZE = 1L << 30;
+
+    private RandomAccessFile   file;
+    private FileChannel        channel;
+    private MappedByteBuffer   header;
+    private MappedByteBuffer[] chunks;
+    private int                hours;
+    private int                series;
+    private int                seriesPerHouse;
+    private int                seriesPerChunk;
+    private long               valuesOffset;
+    private int                hoursRecorded;
+
+    /**
+     * Creates a new recording file with room for the given
+     * number of hours and series, all of them of one house.
+     *
+     * @param fileName the file to write.
+     * @param hours    the number of hours of each series.
+     * @param series   the number of series, i.e. meters, recorded.
+     * @throws IOException if the file cannot be created.
+     */
+    public ReadingRecorder(String fileName, int hours, int series) throws IOException {
+        this(fileName, hours, series, Math.max(1, series));
+    }
+
+    /**
+     * Creates a new recording file with room for the given number of
+     * hours and series, where each house records the same number of
+     * consecutive series, e.g. the houses of a {@link Fleet}.
+     *
+     * @param fileName       the file to write.
+     * @param hours          the number of hours of each series.
+     * @param series         the number of series, i.e. meters, recorded.
+     * @param seriesPerHouse the number of series of each house.
+     * @throws IOException if the file cannot be created.
+     */
+    public ReadingRecorder(String fileName, int hours, int series, int seriesPerHouse) throws IOException {
+        if (seriesPerHouse <= 0 || series % seriesPerHouse != 0) {
+            throw new IllegalArgumentException(series + " series cannot be split in houses of " + seriesPerHouse);
+        }
+        this.hours          = hours;
+        this.series         = series;
+        this.seriesPerHouse = seriesPerHouse;
+
+        file    = new RandomAccessFile(fileName, "rw");
+        channel = file.getChannel();
+        file.setLength(0);
+
+        valuesOffset   = HEADER_SIZE + (long) series * NAME_SIZE;
+        long seriesSize = Math.max(4, (long) hours * 4);
+        seriesPerChunk = (int) Math.max(1, CHUNK_SIZE / seriesSize);
+
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, valuesOffset);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, hours).putInt(12, series).putInt(16, COLUMNS).putInt(20, 0)
+              .putInt(24, seriesPerHouse);
+
+        long blocks = (long) COLUMNS * series;
+        chunks = new MappedByteBuffer[(int) ((blocks + seriesPerChunk - 1) / seriesPerChunk)];
+        for (int c = 0; c < chunks.length; c++) {
+            long first = (long) c * seriesPerChunk;
+            long count = Math.min(seriesPerChunk, blocks - first);
+            chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE, valuesOffset + first * seriesSize, count * seriesSize);
+            chunks[c].order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Returns the number of hours of each series.
+     * @return the number of hours
+     */
+    public int getHours() {
+        return hours;
+    }
+
+    /**
+     * Returns the number of series recorded.
+     * @return the number of series
+     */
+    public int getSeries() {
+        return series;
+    }
+
+    /**
+     * Returns the number of series recorded for each house.
+     * @return the number of series of each house
+     */
+    public int getSeriesPerHouse() {
+        return seriesPerHouse;
+    }
+
+    /**
+     * Creates a {@link ReportSink} recording the meters of one house.
+     * The meters reported each hour are recorded, in order, as the series
+     * {@code firstSeries}, {@code firstSeries + 1}, ... Each sink must
+     * record different series, then many houses can be recorded at the
+     * same time by different threads.
+     *
+     * @param firstSeries the series of the first meter reported.
+     * @return the sink.
+     */
+    public ReportSink sink(int firstSeries) {
+        return new RecorderSink(firstSeries);
+    }
+
+    /**
+     * Records the values of one series for one hour.
+     *
+     * @param s                the series.
+     * @param hour             the hour, starting from 0.
+     * @param consumed         the units consumed.
+     * @param reading          the reading of the meter.
+     * @param cost             the cost of the hour.
+     * @param unitsFromMains   the units drawn from the mains.
+     * @param unitsFromBattery the units drawn from the battery.
+     * @param batteryUnits     the units in the battery.
+     */
+    public void record(int s, int hour, float consumed, float reading, float cost,
+                       float unitsFromMains, float unitsFromBattery, float batteryUnits) {
+        if (hour >= hours) {
+            throw new IndexOutOfBoundsException("Hour " + hour + " out of the " + hours + " hours recorded");
+        }
+        put(CONSUMED, s, hour, consumed);
+        put(READING, s, hour, reading);
+        put(COST, s, hour, cost);
+        put(UNITS_FROM_MAINS, s, hour, unitsFromMains);
+        put(UNITS_FROM_BATTERY, s, hour, unitsFromBattery);
+        put(BATTERY_UNITS, s, hour, batteryUnits);
+    }
+
+    private void put(int column, int s, int hour, float value) {
+        long block = (long) column * series + s;
+        chunks[(int) (block / seriesPerChunk)].putFloat((int) ((block % seriesPerChunk) * hours + hour) * 4, value);
+    }
+
+    /**
+     * Sets the utility name of a series.
+     *
+     * @param s    the series.
+     * @param name the utility name.
+     */
+    void setName(int s, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int offset = HEADER_SIZE + s * NAME_SIZE;
+        for (int i = 0; i < NAME_SIZE; i++) {
+            header.put(offset + i, i < bytes.length ? bytes[i] : 0);
+        }
+    }
+
+    /**
+     * Updates the number of hours recorded, i.e. the highest
+     * hour recorded plus one.
+     */
+    synchronized void hoursRecorded(int hoursRecorded) {
+        if (hoursRecorded > this.hoursRecorded) {
+            this.hoursRecorded = hoursRecorded;
+            header.putInt(20, hoursRecorded);
+        }
+    }
+
+    /**
+     * Writes all values recorded so far to the disk.
+     */
+    public void force() {
+        header.force();
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+        file.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Records the meters of one house in consecutive series.
+     */
+    private class RecorderSink implements ReportSink {
+        private int firstSeries;
+        private int nextSeries;
+        private int hour;
+
+        RecorderSink(int firstSeries) {
+            this.firstSeries = firstSeries;
+            this.hour        = -1;
+        }
+
+        @Override
+        public void hourStarted(int day, int hour) {
+            this.hour++;
+            nextSeries = firstSeries;
+        }
+
+        private int nextSeries(Meter meter) {
+            if (hour < 0) {
+                throw new IllegalStateException("The meter " + meter.getUtilityName()
+                                                + " is reported before any hour has started");
+            }
+            int s = nextSeries++;
+            if (hour == 0) {
+                setName(s, meter.getUtilityName());
+            }
+            return s;
+        }
+
+        @Override
+        public void meterReported(Meter meter, float reading, double cost) {
+            int s = nextSeries(meter);
+            record(s, hour, reading, reading, (float) cost, reading > 0 ? reading : 0.0f, 0.0f, 0.0f);
+        }
+
+        @Override
+        public void batteryMeterReported(BatteryMeter meter, float consumed, float reading, double cost,
+                                         float unitsFromMains, float unitsFromBattery) {
+            int s = nextSeries(meter);
+            record(s, hour, consumed, reading, (float) cost, unitsFromMains, unitsFromBattery,
+                   meter.getBattery().getBatteryUnits());
+        }
+
+        @Override
+        public void simulationFinished(double totalCost) {
+            hoursRecorded(hour + 1);
+            force();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class advances a {@link Fleet} of houses in wall-clock time, e.g.
+ * for live demos or hardware-in-the-loop tests.
+ * <p>
+ * Instead of one thread sleeping between the hours of each house, as
+ * {@link House#activate(int)} does, a single scheduler thread ticks at a
+ * fixed rate, and each tick simulates one hour of every house of the fleet
+ * on the workers of the fleet. The length of a simulated hour is one real
+ * hour divided by the speed-up factor, so a factor of 72000 gives the 50
+ * milliseconds per hour of the console simulation. The ticks are scheduled
+ * at a fixed rate from the start, so a tick started late does not delay the
+ * next ones, and how late each tick starts is measured.
+ * <p>
+ * A tick which lasts longer than the period is an overrun: instead of
+ * running the missed ticks back to back to catch up, the schedule restarts
+ * from the end of the tick, so the fleet falls behind wall-clock time by
+ * the time lost, which is measured, and then keeps the period again.
+ * <p>
+ * The number of threads does not depend on the number of houses, but the
+ * fleet only keeps real time while one hour of all its houses is simulated
+ * within the period, i.e. with fewer houses than the throughput of the
+ * fleet in house-hours per second times the period in seconds. With more
+ * houses every tick overruns, and each hour lasts as long as simulating it.
+ */
+public class RealTimeSimulator implements Closeable {
+    private static final double NANOS_PER_HOUR = 3600e9;
+
+    private Fleet                    fleet;
+    private long                     periodNanos;
+    private PrintStream              out;
+    private ScheduledExecutorService scheduler;
+    private CountDownLatch           finished;
+
+    private int    hours;
+    private long   deadlineNanos;
+    private volatile int    ticks;
+    private volatile double totalCost;
+    private volatile long   maxLatenessNanos;
+    private volatile long   totalLatenessNanos;
+    private volatile int    overruns;
+    private volatile long   behindNanos;
+    private volatile RuntimeException failure;
+
+    /**
+     * Runs a fleet of houses in real time.
+     * <p>
+     * Usage: {@code java RealTimeSimulator CONFIGURATION_FILE [--houses=N] [--hours=n] [--speed-up=X] [--seed=N] [--quiet]}
+     * <p>
+     * {@code N} copies of the house (1000 by default) are simulated for
+     * {@code n} hours (168 by default), each hour lasting one real hour
+     * divided by {@code X} (72000 by default, i.e. 50 milliseconds).
+     * Each hour the cost of the fleet and how late the tick started are
+     * printed, unless {@code --quiet} is given. The summary gives the ticks
+     * which overran the period and how far behind real time the fleet fell.
+     */
+    public static void main(String[] args) {
+        String configurationFile = null;
+        int     houses  = 1000;
+        int     hours   = 168;
+        double  speedUp = 72000;
+        Long    seed    = null;
+        boolean quiet   = false;
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--houses=")) {
+                    houses = Integer.parseInt(arg.substring("--houses=".length()));
+                } else if (arg.startsWith("--hours=")) {
+                    hours = Integer.parseInt(arg.substring("--hours=".length()));
+                } else if (arg.startsWith("--speed-up=")) {
+                    speedUp = Double.parseDouble(arg.substring("--speed-up=".length()));
+                } else if (arg.startsWith("--seed=")) {
+                    seed = Long.parseLong(arg.substring("--seed=".length()));
+                } else if (arg.equals("--quiet")) {
+                    quiet = true;
+                } else {
+                    configurationFile = arg;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Not a valid number: " + e.getMessage());
+            System.exit(1);
+        }
+        if (configurationFile == null || speedUp <= 0) {
+            System.out.println("Usage: java RealTimeSimulator CONFIGURATION_FILE [--houses=N] [--hours=n] [--speed-up=X] [--seed=N] [--quiet]");
+            System.exit(1);
+        }
+
+        Fleet fleet = new Fleet(Runtime.getRuntime().availableProcessors());
+        fleet.load(configurationFile, houses);
+        if (seed != null) {
+            fleet.setSeed(seed);
+        }
+
+        try (RealTimeSimulator simulator = new RealTimeSimulator(fleet, speedUp, quiet ? null : System.out)) {
+            simulator.start(hours);
+            simulator.awaitCompletion();
+            System.out.println(String.format("The total cost is: %.2fGPB", simulator.getTotalCost()));
+            System.out.println(String.format("Houses: %d, hours: %d, tick: %.3fms, average lateness: %.3fms, max lateness: %.3fms",
+                                             houses, simulator.getTicks(), simulator.periodNanos / 1e6,
+                                             simulator.getAverageLatenessNanos() / 1e6, simulator.getMaxLatenessNanos() / 1e6));
+            System.out.println(String.format("Overruns: %d, behind real time: %.3fms",
+                                             simulator.getOverruns(), simulator.getBehindNanos() / 1e6));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Creates a new {@code RealTimeSimulator} of the given fleet.
+     *
+     * @param fleet   the fleet of houses.
+     * @param speedUp how many times faster than real time the hours pass.
+     * @param out     the stream where each hour is printed, {@code null} to print nothing.
+     */
+    public RealTimeSimulator(Fleet fleet, double speedUp, PrintStream out) {
+        if (speedUp <= 0) {
+            throw new IllegalArgumentException("The speed-up must be positive: " + speedUp);
+        }
+        this.fleet       = fleet;
+        this.periodNanos = Math.max(1, Math.round(NANOS_PER_HOUR / speedUp));
+        this.out         = out;
+        this.scheduler   = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "RealTimeSimulator-tick");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts ticking, simulating one hour of the fleet each tick
+     * until the given hours have been simulated.
+     *
+     * @param hours the hours to simulate.
+     */
+    public void start(int hours) {
+        if (finished != null) {
+            throw new IllegalStateException("The simulator has already been started");
+        }
+        this.hours    = hours;
+        this.finished = new CountDownLatch(1);
+        if (hours <= 0) {
+            finished.countDown();
+            return;
+        }
+        deadlineNanos = System.nanoTime();
+        scheduler.execute(this::tick);
+    }
+
+    /**
+     * Simulates one hour of the fleet, measuring how late the tick started,
+     * and schedules the next tick one period after the deadline of this one,
+     * or right away from the end of this one if it has overrun the period.
+     */
+    private void tick() {
+        try {
+            long now      = System.nanoTime();
+            long lateness = Math.max(0, now - deadlineNanos);
+            FleetReport report = fleet.simulate(1);
+            long end       = System.nanoTime();
+            long stepNanos = end - now;
+
+            int hour = ticks + 1;
+            totalCost          += report.getTotalCost();
+            totalLatenessNanos += lateness;
+            maxLatenessNanos    = Math.max(maxLatenessNanos, lateness);
+            ticks               = hour;
+
+            if (out != null) {
+                out.println(String.format("Day %d hour %2d: cost %.2fGPB, battery units %.1f, late %.3fms, step %.3fms",
+                                          (hour - 1) / 24 + 1, (hour - 1) % 24 + 1, report.getTotalCost(),
+                                          report.getHourlyBatteryUnits(0), lateness / 1e6, stepNanos / 1e6));
+            }
+            if (hour == hours) {
+                scheduler.shutdown();
+                finished.countDown();
+                return;
+            }
+
+            deadlineNanos += periodNanos;
+            if (end > deadlineNanos) {
+                overruns++;
+                behindNanos  += end - deadlineNanos;
+                deadlineNanos = end;
+            }
+            scheduler.schedule(this::tick, deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (RuntimeException e) {
+            // Thrown here the exception would only be kept by the scheduler,
+            // so it is kept for awaitCompletion() to rethrow instead
+            failure = e;
+            scheduler.shutdown();
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Waits until all hours have been simulated or the simulator is closed.
+     *
+     * @throws InterruptedException  if the thread is interrupted while waiting.
+     * @throws IllegalStateException if the simulator has not been started,
+     *                               or if a tick has failed, with the exception
+     *                               of the tick as the cause.
+     */
+    public void awaitCompletion() throws InterruptedException {
+        if (finished == null) {
+            throw new IllegalStateException("The simulator has not been started");
+        }
+        finished.await();
+        if (failure != null) {
+            throw new IllegalStateException("The simulation has failed after " + ticks + " hours: "
+                                            + failure.getMessage(), failure);
+        }
+    }
+
+    /**
+     * Returns the number of hours simulated so far.
+     * @return the number of ticks
+     */
+    public int getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the cost of the fleet over the hours simulated so far.
+     * @return the total cost
+     */
+    public double getTotalCost() {
+        return totalCost;
+    }
+
+    /**
+     * Returns the longest delay between the time a tick
+     * should have started and the time it started.
+     * @return the max lateness in nanoseconds
+     */
+    public long getMaxLatenessNanos() {
+        return maxLatenessNanos;
+    }
+
+    /**
+     * Returns the average delay between the time a tick
+     * should have started and the time it started.
+     * @return the average lateness in nanoseconds
+     */
+    public double getAverageLatenessNanos() {
+        return ticks == 0 ? 0 : (double) totalLatenessNanos / ticks;
+    }
+
+    /**
+     * Returns the number of ticks which lasted longer than the period.
+     * @return the number of overruns
+     */
+    public int getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * Returns how far behind wall-clock time the overruns have put the
+     * fleet, i.e. how much later than scheduled at the start the last
+     * tick is due.
+     * @return the time lost in nanoseconds
+     */
+    public long getBehindNanos() {
+        return behindNanos;
+    }
+
+    /**
+     * Stops ticking.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        if (finished != null) {
+            finished.countDown();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class reads the hourly readings written by a {@link ReadingRecorder},
+ * through memory-mapped buffers, without simulating the houses again.
+ */
+public class RecordedReadings {
+    private MappedByteBuffer   header;
+    private MappedByteBuffer[] chunks;
+    private int                hours;
+    private int                series;
+    private int                seriesPerChunk;
+
+    /**
+     * Opens a file written by a {@link ReadingRecorder}.
+     *
+     * @param fileName the file to read.
+     * @throws IOException if the file cannot be read or is not a recording.
+     */
+    public RecordedReadings(String fileName) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r");
+             FileChannel channel = file.getChannel()) {
+            header = channel.map(FileChannel.MapMode.READ_ONLY, 0, ReadingRecorder.HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != ReadingRecorder.MAGIC || header.getInt(4) != ReadingRecorder.VERSION) {
+                throw new IOException("'" + fileName + "' is not a recording of readings.");
+            }
+            hours  = header.getInt(8);
+            series = header.getInt(12);
+
+            long valuesOffset = ReadingRecorder.HEADER_SIZE + (long) series * ReadingRecorder.NAME_SIZE;
+            header = channel.map(FileChannel.MapMode.READ_ONLY, 0, valuesOffset);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+
+            long seriesSize = Math.max(4, (long) hours * 4);
+            seriesPerChunk = (int) Math.max(1, (1L << 30) / seriesSize);
+            long blocks = (long) ReadingRecorder.COLUMNS * series;
+            chunks = new MappedByteBuffer[(int) ((blocks + seriesPerChunk - 1) / seriesPerChunk)];
+            for (int c = 0; c < chunks.length; c++) {
+                long first = (long) c * seriesPerChunk;
+                long count = Math.min(seriesPerChunk, blocks - first);
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, valuesOffset + first * seriesSize, count * seriesSize);
+                chunks[c].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of hours each series has room for.
+     * @return the number of hours
+     */
+    public int getHours() {
+        return hours;
+    }
+
+    /**
+     * Returns the number of hours actually recorded.
+     * @return the number of hours recorded
+     */
+    public int getHoursRecorded() {
+        return header.getInt(20);
+    }
+
+    /**
+     * Returns the number of series recorded.
+     * @return the number of series
+     */
+    public int getSeries() {
+        return series;
+    }
+
+    /**
+     * Returns the number of series recorded for each house, e.g. the
+     * meters of one house of a {@link Fleet} recording. Recordings without
+     * this number in the header have all series in one house.
+     *
+     * @return the number of series of each house
+     */
+    public int getSeriesPerHouse() {
+        int seriesPerHouse = header.getInt(24);
+        return seriesPerHouse > 0 ? seriesPerHouse : series;
+    }
+
+    /**
+     * Returns the number of houses recorded.
+     * @return the number of houses
+     */
+    public int getHouses() {
+        return series == 0 ? 0 : series / getSeriesPerHouse();
+    }
+
+    /**
+     * Returns the utility name of a series.
+     *
+     * @param s the series.
+     * @return the utility name
+     */
+    public String getName(int s) {
+        byte[] name = new byte[ReadingRecorder.NAME_SIZE];
+        header.get(ReadingRecorder.HEADER_SIZE + s * ReadingRecorder.NAME_SIZE, name);
+        int length = 0;
+        while (length < name.length && name[length] != 0) {
+            length++;
+        }
+        return new String(name, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns one value recorded.
+     *
+     * @param column the column, e.g. {@link ReadingRecorder#CONSUMED}.
+     * @param s      the series.
+     * @param hour   the hour, starting from 0.
+     * @return the value
+     */
+    public float get(int column, int s, int hour) {
+        long block = (long) column * series + s;
+        return chunks[(int) (block / seriesPerChunk)].getFloat((int) ((block % seriesPerChunk) * hours + hour) * 4);
+    }
+
+    /**
+     * Copies the values of one column of one series for all
+     * hours recorded into a new array.
+     *
+     * @param column the column, e.g. {@link ReadingRecorder#CONSUMED}.
+     * @param s      the series.
+     * @return the values of each hour
+     */
+    public float[] readColumn(int column, int s) {
+        float[] values = new float[getHoursRecorded()];
+        long block = (long) column * series + s;
+        MappedByteBuffer chunk = chunks[(int) (block / seriesPerChunk)];
+        int offset = (int) ((block % seriesPerChunk) * hours) * 4;
+        chunk.duplicate().order(ByteOrder.LITTLE_ENDIAN).position(offset).asFloatBuffer().get(values);
+        return values;
+    }
+}
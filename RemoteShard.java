@@ -0,0 +1,79 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * {@inheritDoc}
+ *
+ * This class is the connection of the coordinator to a {@link ShardWorker}
+ * process, which simulates the houses of the shard. The requests and the
+ * answers follow the protocol described in {@link ShardWorker}.
+ */
+class RemoteShard implements Shard {
+    private Socket           socket;
+    private DataInputStream  in;
+    private DataOutputStream out;
+    private boolean          advancing;
+
+    /**
+     * Creates a new {@code RemoteShard} on the connection of a worker.
+     *
+     * @param socket the socket connected to the worker.
+     * @throws IOException if the streams of the socket cannot be opened.
+     */
+    RemoteShard(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        this.socket = socket;
+        this.in     = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out    = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    @Override
+    public void load(byte[] configuration, int firstHouse, int houses, long seed) throws IOException {
+        out.writeByte(ShardWorker.LOAD);
+        out.writeInt(configuration.length);
+        out.write(configuration);
+        out.writeInt(firstHouse);
+        out.writeInt(houses);
+        out.writeLong(seed);
+        out.flush();
+        readAnswer();
+    }
+
+    @Override
+    public void advance(int hours) throws IOException {
+        out.writeByte(ShardWorker.ADVANCE);
+        out.writeInt(hours);
+        out.flush();
+        advancing = true;
+    }
+
+    @Override
+    public FleetReport await() throws IOException {
+        if (!advancing) {
+            throw new IOException("No epoch has been started");
+        }
+        advancing = false;
+        readAnswer();
+        return ShardWorker.readReport(in);
+    }
+
+    private void readAnswer() throws IOException {
+        if (in.readByte() != ShardWorker.OK) {
+            throw new IOException("The worker has failed: " + in.readUTF());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.writeByte(ShardWorker.CLOSE);
+            out.flush();
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * This interface defines where the hourly results of a {@link House}
+ * simulation are sent to.
+ *
+ * Every simulated hour a {@link House} reports the reading and the cost
+ * of each of its {@link Meter} objects to a {@code ReportSink}, which
+ * decides what to do with them: print the usual tables on the console
+ * ({@link ConsoleSink}), keep only the totals ({@link SummarySink}),
+ * write them to a CSV file ({@link CsvSink}) or ignore them ({@link #NONE}).
+ *
+ * All methods do nothing by default, so a sink only needs to override
+ * the events it is interested in.
+ */
+public interface ReportSink {
+
+    /**
+     * A {@code ReportSink} which ignores every result.
+     */
+    ReportSink NONE = new ReportSink() {};
+
+    /**
+     * Called before the appliances of the {@link House} are
+     * activated for one hour.
+     *
+     * @param day  the current day of the simulation, starting from 1.
+     * @param hour the current hour of the day, between 1 and 24.
+     */
+    default void hourStarted(int day, int hour) {}
+
+    /**
+     * Called before the plain {@link Meter} objects of the
+     * {@link House} are reported.
+     */
+    default void meterTableStarted() {}
+
+    /**
+     * Called when a plain {@link Meter} reports its hourly consumption.
+     *
+     * @param meter   the meter reported.
+     * @param reading the units consumed in the hour.
+     * @param cost    the cost of the units consumed.
+     */
+    default void meterReported(Meter meter, float reading, double cost) {}
+
+    /**
+     * Called after the plain {@link Meter} objects of the
+     * {@link House} have been reported.
+     */
+    default void meterTableFinished() {}
+
+    /**
+     * Called when a {@link BatteryMeter} reports its hourly consumption,
+     * after the {@link Battery} has been used to store or cover the units.
+     *
+     * @param meter            the meter reported.
+     * @param consumed         the units consumed in the hour before using the battery.
+     * @param reading          the units left after using the battery.
+     * @param cost             the cost of the units drawn from the mains.
+     * @param unitsFromMains   the units drawn from the mains.
+     * @param unitsFromBattery the units drawn from the battery.
+     */
+    default void batteryMeterReported(BatteryMeter meter, float consumed, float reading, double cost,
+                                      float unitsFromMains, float unitsFromBattery) {}
+
+    /**
+     * Called after all meters have been reported for one hour.
+     *
+     * @param cost the cost of the hour.
+     */
+    default void hourFinished(double cost) {}
+
+    /**
+     * Called once the simulation of all hours is finished.
+     *
+     * @param totalCost the total cost of the simulation.
+     */
+    default void simulationFinished(double totalCost) {}
+}
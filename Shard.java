@@ -0,0 +1,43 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * This interface is a shard of a {@link ShardedFleet}: a range of consecutive
+ * houses of the fleet, simulated as a {@link Fleet} by a worker which may be
+ * in another process ({@link RemoteShard}) or in the same one ({@link LocalShard}).
+ * <p>
+ * The coordinator loads each shard once, then drives it one epoch of hours at
+ * a time: it starts every shard with {@link #advance(int)} and then waits for
+ * the results of each one with {@link #await()}, so the shards simulate their
+ * epochs at the same time.
+ */
+public interface Shard extends Closeable {
+
+    /**
+     * Creates the houses of the shard.
+     *
+     * @param configuration the configuration of every house,
+     *                      encoded by {@link CompiledConfiguration}.
+     * @param firstHouse    the position of the first house of the shard in the fleet.
+     * @param houses        the number of houses of the shard.
+     * @param seed          the seed of the whole fleet, see {@link Fleet#setSeed(long)}.
+     * @throws IOException if the worker cannot be reached or cannot create the houses.
+     */
+    void load(byte[] configuration, int firstHouse, int houses, long seed) throws IOException;
+
+    /**
+     * Starts simulating the next hours, going on from the previous epoch.
+     *
+     * @param hours the hours of the epoch.
+     * @throws IOException if the worker cannot be reached.
+     */
+    void advance(int hours) throws IOException;
+
+    /**
+     * Waits for the end of the epoch started by {@link #advance(int)}.
+     *
+     * @return the costs and battery units of the houses of the shard for each hour of the epoch.
+     * @throws IOException if the worker cannot be reached or has failed.
+     */
+    FleetReport await() throws IOException;
+}
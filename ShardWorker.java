@@ -0,0 +1,207 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * This class is a worker process of a {@link ShardedFleet}: it connects to
+ * the coordinator on the local machine, receives the compiled configuration
+ * and the range of houses of its shard, and then simulates them as a
+ * {@link Fleet} one epoch at a time, sending back the results of each epoch.
+ * <p>
+ * The messages are sent over the socket with {@link DataOutputStream}:
+ * <pre>
+ *  LOAD     length (int), compiled configuration, first house (int),
+ *           houses (int), seed (long)         answered by OK
+ *  ADVANCE  hours (int)                       answered by OK and the report
+ *  CLOSE                                      not answered, the worker exits
+ * </pre>
+ * A report is the number of houses and hours (int), the hours simulated
+ * before the report (long), the cost, water cost and electricity cost of each
+ * hour (double), the milli-units of water, of electricity, drawn from the mains,
+ * drawn from the batteries and in the batteries of each hour (long) and the time
+ * taken (long). A request which fails is answered by ERROR and a message
+ * instead of OK.
+ */
+public class ShardWorker {
+    static final byte LOAD    = 1;
+    static final byte ADVANCE = 2;
+    static final byte CLOSE   = 3;
+    static final byte OK      = 0;
+    static final byte ERROR   = -1;
+
+    /**
+     * Runs a worker for a coordinator listening on the local machine.
+     * <p>
+     * Usage: {@code java ShardWorker PORT [--threads=N]}
+     * <p>
+     * The houses of the shard are simulated by {@code N} threads (1 by default).
+     * The worker exits when the coordinator closes the connection.
+     */
+    public static void main(String[] args) {
+        int port    = -1;
+        int threads = 1;
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--threads=")) {
+                    threads = Integer.parseInt(arg.substring("--threads=".length()));
+                } else {
+                    port = Integer.parseInt(arg);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Not a valid number: " + e.getMessage());
+            System.exit(1);
+        }
+        if (port < 0) {
+            System.out.println("Usage: java ShardWorker PORT [--threads=N]");
+            System.exit(1);
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            serve(new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+                  new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())), threads);
+        } catch (IOException e) {
+            System.out.println("The connection to the coordinator has failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Answers the requests of a coordinator until it closes the connection.
+     *
+     * @param in          the requests.
+     * @param out         the answers.
+     * @param parallelism the number of workers simulating the houses.
+     * @throws IOException if the connection fails.
+     */
+    static void serve(DataInputStream in, DataOutputStream out, int parallelism) throws IOException {
+        Fleet fleet = null;
+        while (true) {
+            byte request;
+            try {
+                request = in.readByte();
+            } catch (EOFException e) {
+                return;
+            }
+
+            switch (request) {
+                case LOAD:
+                    byte[] configuration = new byte[in.readInt()];
+                    in.readFully(configuration);
+                    int  firstHouse = in.readInt();
+                    int  houses     = in.readInt();
+                    long seed       = in.readLong();
+                    try {
+                        fleet = newFleet(configuration, firstHouse, houses, seed, parallelism);
+                        out.writeByte(OK);
+                    } catch (IOException e) {
+                        error(out, e.getMessage());
+                    }
+                    break;
+                case ADVANCE:
+                    int hours = in.readInt();
+                    if (fleet == null) {
+                        error(out, "The shard has not been loaded");
+                    } else {
+                        try {
+                            FleetReport report = fleet.simulate(hours);
+                            out.writeByte(OK);
+                            writeReport(out, report);
+                        } catch (RuntimeException e) {
+                            // The houses are left in the middle of the epoch, so the shard has to be loaded again
+                            fleet = null;
+                            error(out, "The simulation has failed: " + e);
+                        }
+                    }
+                    break;
+                case CLOSE:
+                    return;
+                default:
+                    throw new IOException("Unknown request: " + request);
+            }
+            out.flush();
+        }
+    }
+
+    private static void error(DataOutputStream out, String message) throws IOException {
+        out.writeByte(ERROR);
+        out.writeUTF(String.valueOf(message));
+    }
+
+    /**
+     * Creates the fleet of a shard, where each house gets the
+     * seed it has in the whole fleet.
+     *
+     * @param configuration the configuration encoded by {@link CompiledConfiguration}.
+     * @param firstHouse    the position of the first house in the whole fleet.
+     * @param houses        the number of houses.
+     * @param seed          the seed of the whole fleet.
+     * @param parallelism   the number of workers simulating the houses.
+     * @return the fleet.
+     * @throws IOException if the configuration is not valid.
+     */
+    static Fleet newFleet(byte[] configuration, int firstHouse, int houses, long seed, int parallelism)
+            throws IOException {
+        HouseConfiguration houseConfiguration;
+        try {
+            houseConfiguration = CompiledConfiguration.decode(configuration);
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        Fleet fleet = new Fleet(parallelism);
+        fleet.load(houseConfiguration, houses);
+        fleet.setSeed(seed, firstHouse);
+        return fleet;
+    }
+
+    /**
+     * Writes a report in the format of the protocol.
+     *
+     * @param out    the stream.
+     * @param report the report.
+     * @throws IOException if the stream fails.
+     */
+    static void writeReport(DataOutputStream out, FleetReport report) throws IOException {
+        int hours = report.getHours();
+        out.writeInt(report.getHouses());
+        out.writeInt(hours);
+        out.writeLong(report.getFirstHour());
+        for (int hour = 0; hour < hours; hour++) {
+            out.writeDouble(report.getHourlyCost(hour));
+            out.writeDouble(report.getHourlyWaterCost(hour));
+            out.writeDouble(report.getHourlyElectricityCost(hour));
+            out.writeLong(Meter.toMilliUnits(report.getHourlyWaterUnits(hour)));
+            out.writeLong(Meter.toMilliUnits(report.getHourlyElectricityUnits(hour)));
+            out.writeLong(Meter.toMilliUnits(report.getHourlyUnitsFromMains(hour)));
+            out.writeLong(Meter.toMilliUnits(report.getHourlyUnitsFromBattery(hour)));
+            out.writeLong(Meter.toMilliUnits(report.getHourlyBatteryUnits(hour)));
+        }
+        out.writeLong(report.getElapsedNanos());
+    }
+
+    /**
+     * Reads a report written by {@link #writeReport(DataOutputStream, FleetReport)}.
+     *
+     * @param in the stream.
+     * @return the report.
+     * @throws IOException if the stream fails.
+     */
+    static FleetReport readReport(DataInputStream in) throws IOException {
+        int  houses    = in.readInt();
+        int  hours     = in.readInt();
+        long firstHour = in.readLong();
+        FleetReport report = new FleetReport(houses, hours, firstHour);
+        for (int hour = 0; hour < hours; hour++) {
+            report.addHour(hour, in.readDouble(), in.readDouble(), in.readDouble(), in.readLong(),
+                           in.readLong(), in.readLong(), in.readLong(), in.readLong());
+        }
+        report.setElapsedNanos(in.readLong());
+        return report;
+    }
+}
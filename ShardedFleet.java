@@ -0,0 +1,315 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class coordinates the simulation of a fleet of identical houses split
+ * between several {@link Shard}s, e.g. {@link ShardWorker} processes on the
+ * local machine, so the fleet is not bound to the memory and the cores of
+ * a single JVM.
+ * <p>
+ * The houses are partitioned by their position in the fleet into ranges of
+ * consecutive houses, one for each shard, and each house gets the seed it
+ * has in a single {@link Fleet}. The coordinator sends the compiled
+ * configuration to every shard once, then drives the shards in epochs: all
+ * shards simulate the hours of an epoch at the same time, and their costs,
+ * meter units and battery units are merged hour by hour, in the order of the
+ * shards, before the next epoch starts. With epochs of 1 hour the shards run in
+ * lock-step; longer epochs let them run freely and pay one round trip for
+ * many hours.
+ * <p>
+ * If a shard fails during an epoch, the other shards may still be running
+ * it, and a worker drops its houses when it fails, so the shards are out of
+ * step: every shard is closed, and the fleet cannot be loaded or simulated
+ * anymore.
+ */
+public class ShardedFleet implements Closeable {
+    private static final int TIMEOUT_MILLIS = 30000;
+
+    private List<Shard>   shards;
+    private List<Process> workers;
+    private int           houses;
+    private long          elapsedHours;
+    private Exception     failure;
+
+    /**
+     * Runs the simulation of a fleet of identical houses on several shards.
+     * <p>
+     * Usage: {@code java ShardedFleet CONFIGURATION_FILE [--houses=N] [--workers=N] [--threads=N]
+     * [--hours=N] [--epoch=N] [--seed=N] [--local] [--windows]}
+     * <p>
+     * The fleet has {@code N} houses (10000 by default), each one with the
+     * appliances of the configuration file, split between the given number of
+     * {@link ShardWorker} processes (2 by default) using the given number of
+     * threads each (1 by default). The fleet is simulated for the hours given
+     * (168 by default) in epochs of the given hours (24 by default, 1 for
+     * lock-step). With {@code --local} the shards run in this process as
+     * {@link LocalShard}s. With {@code --windows} the daily peak, rolling and
+     * moving averages of the units of each utility and of the cost of the fleet
+     * are printed by a {@link WindowedSink} at the end of each epoch.
+     */
+    public static void main(String[] args) {
+        String file = null;
+        int houses  = 10000;
+        int workers = 2;
+        int threads = 1;
+        int hours   = 168;
+        int epoch   = 24;
+        Long seed   = null;
+        boolean local   = false;
+        boolean windows = false;
+
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--houses=")) {
+                    houses = Integer.parseInt(arg.substring("--houses=".length()));
+                } else if (arg.startsWith("--workers=")) {
+                    workers = Integer.parseInt(arg.substring("--workers=".length()));
+                } else if (arg.startsWith("--threads=")) {
+                    threads = Integer.parseInt(arg.substring("--threads=".length()));
+                } else if (arg.startsWith("--hours=")) {
+                    hours = Integer.parseInt(arg.substring("--hours=".length()));
+                } else if (arg.startsWith("--epoch=")) {
+                    epoch = Integer.parseInt(arg.substring("--epoch=".length()));
+                } else if (arg.startsWith("--seed=")) {
+                    seed = Long.parseLong(arg.substring("--seed=".length()));
+                } else if (arg.equals("--local")) {
+                    local = true;
+                } else if (arg.equals("--windows")) {
+                    windows = true;
+                } else {
+                    file = arg;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Not a valid number: " + e.getMessage());
+            System.exit(1);
+        }
+        if (file == null || workers <= 0 || threads <= 0 || epoch <= 0) {
+            System.out.println("Usage: java ShardedFleet CONFIGURATION_FILE [--houses=N] [--workers=N] [--threads=N] "
+                               + "[--hours=N] [--epoch=N] [--seed=N] [--local] [--windows]");
+            System.exit(1);
+        }
+        HouseConfiguration configuration = HouseConfiguration.load(file);
+
+        FleetReport report = null;
+        try (ShardedFleet fleet = local ? startLocal(workers, threads) : startWorkers(workers, threads)) {
+            fleet.load(configuration, houses, seed != null ? seed : RandomStream.randomSeed());
+            report = fleet.simulate(hours, epoch, windows ? new WindowedSink(System.out) : null);
+        } catch (IOException e) {
+            System.out.println("The sharded simulation has failed: " + e.getMessage());
+            System.exit(1);
+        }
+        report.print(System.out);
+    }
+
+    /**
+     * Creates a new {@code ShardedFleet} on the given shards.
+     *
+     * @param shards the shards, not loaded yet.
+     */
+    public ShardedFleet(List<? extends Shard> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("A sharded fleet needs at least one shard");
+        }
+        this.shards  = new ArrayList<>(shards);
+        this.workers = new ArrayList<>();
+    }
+
+    /**
+     * Creates a new {@code ShardedFleet} on {@link LocalShard}s,
+     * running in this process.
+     *
+     * @param shards      the number of shards.
+     * @param parallelism the number of threads of each shard.
+     * @return the coordinator.
+     */
+    public static ShardedFleet startLocal(int shards, int parallelism) {
+        List<Shard> localShards = new ArrayList<>();
+        for (int s = 0; s < shards; s++) {
+            localShards.add(new LocalShard(parallelism));
+        }
+        return new ShardedFleet(localShards);
+    }
+
+    /**
+     * Starts {@link ShardWorker} processes with the same Java runtime and
+     * class path as this one, and creates a new {@code ShardedFleet} on their
+     * connections. The workers connect to a port of the loopback address only.
+     *
+     * @param workers     the number of worker processes, i.e. of shards.
+     * @param parallelism the number of threads of each worker.
+     * @return the coordinator.
+     * @throws IOException if a worker cannot be started or does not connect.
+     */
+    public static ShardedFleet startWorkers(int workers, int parallelism) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<Process> processes = new ArrayList<>();
+        List<Shard>   shards    = new ArrayList<>();
+
+        try (ServerSocket server = new ServerSocket(0, workers, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(TIMEOUT_MILLIS);
+            for (int w = 0; w < workers; w++) {
+                processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "ShardWorker",
+                                                 String.valueOf(server.getLocalPort()), "--threads=" + parallelism)
+                                  .inheritIO()
+                                  .start());
+            }
+            // The workers are all the same until they are loaded, so the order of the connections does not matter
+            for (int w = 0; w < workers; w++) {
+                shards.add(new RemoteShard(server.accept()));
+            }
+        } catch (IOException e) {
+            for (Shard shard : shards) {
+                closeQuietly(shard);
+            }
+            for (Process process : processes) {
+                process.destroy();
+            }
+            throw e instanceof SocketTimeoutException
+                  ? new IOException("The workers have not connected in " + TIMEOUT_MILLIS + " ms", e) : e;
+        }
+
+        ShardedFleet fleet = new ShardedFleet(shards);
+        fleet.workers = processes;
+        return fleet;
+    }
+
+    /**
+     * Loads the houses of the fleet into the shards: the houses are split
+     * in consecutive ranges of nearly the same size, one for each shard.
+     *
+     * @param configuration the configuration of every house.
+     * @param houses        the number of houses of the fleet.
+     * @param seed          the seed of the fleet, see {@link Fleet#setSeed(long)}.
+     * @throws IOException if a shard cannot be loaded, or if an epoch has failed before.
+     */
+    public void load(HouseConfiguration configuration, int houses, long seed) throws IOException {
+        checkUsable();
+        byte[] compiled = CompiledConfiguration.encode(configuration);
+        for (int s = 0; s < shards.size(); s++) {
+            int first = firstHouse(s, houses);
+            shards.get(s).load(compiled, first, firstHouse(s + 1, houses) - first, seed);
+        }
+        this.houses = houses;
+    }
+
+    private int firstHouse(int shard, int houses) {
+        return (int) ((long) houses * shard / shards.size());
+    }
+
+    /**
+     * Returns the number of shards of the fleet.
+     *
+     * @return the number of shards
+     */
+    public int numShards() {
+        return shards.size();
+    }
+
+    /**
+     * Simulates all houses of the fleet for the given hours, going on from
+     * the previous call.
+     *
+     * @param hours      the hours to simulate.
+     * @param epochHours the hours each shard simulates between two merges, 1 for lock-step.
+     * @return the costs, units and battery units of the fleet for each hour.
+     * @throws IOException if a shard fails.
+     */
+    public FleetReport simulate(int hours, int epochHours) throws IOException {
+        return simulate(hours, epochHours, null);
+    }
+
+    /**
+     * Simulates all houses of the fleet for the given hours, going on from
+     * the previous call, and sends the meters and the cost of the whole fleet
+     * for the hours of each epoch to a {@link ReportSink} once the epoch is merged.
+     *
+     * @param hours      the hours to simulate.
+     * @param epochHours the hours each shard simulates between two merges, 1 for lock-step.
+     * @param sink       the sink receiving each hour of the fleet, {@code null} for none.
+     * @return the costs, units and battery units of the fleet for each hour.
+     * @throws IOException if a shard fails, or if an epoch has failed before.
+     */
+    public FleetReport simulate(int hours, int epochHours, ReportSink sink) throws IOException {
+        if (epochHours <= 0) {
+            throw new IllegalArgumentException("The hours of an epoch must be positive: " + epochHours);
+        }
+        checkUsable();
+        long start = System.nanoTime();
+        FleetReport report = new FleetReport(houses, hours, elapsedHours);
+
+        for (int from = 0; from < hours; from += epochHours) {
+            int epoch = Math.min(epochHours, hours - from);
+            FleetReport epochReport = new FleetReport(0, epoch, elapsedHours + from);
+            try {
+                for (Shard shard : shards) {
+                    shard.advance(epoch);
+                }
+                for (Shard shard : shards) {
+                    epochReport.merge(shard.await());
+                }
+            } catch (IOException | RuntimeException e) {
+                // The answers of the other shards would be read as the ones of the next epoch
+                failure = e;
+                for (Shard shard : shards) {
+                    closeQuietly(shard);
+                }
+                throw e;
+            }
+            report.append(epochReport, from);
+            if (sink != null) {
+                epochReport.sendHours(sink);
+            }
+        }
+        elapsedHours += hours;
+        if (sink != null) {
+            sink.simulationFinished(report.getTotalCost());
+        }
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * Throws an exception if an epoch has failed, which has left the shards closed.
+     */
+    private void checkUsable() throws IOException {
+        if (failure != null) {
+            throw new IOException("The fleet cannot be used after a failed epoch: " + failure.getMessage(), failure);
+        }
+    }
+
+    /**
+     * Closes every shard and waits for the worker processes to exit.
+     */
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            closeQuietly(shard);
+        }
+        for (Process process : workers) {
+            try {
+                if (!process.waitFor(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    process.destroy();
+                }
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void closeQuietly(Shard shard) {
+        try {
+            shard.close();
+        } catch (IOException e) {
+            // The worker has already gone
+        }
+    }
+}
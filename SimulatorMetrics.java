@@ -0,0 +1,199 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * {@inheritDoc}
+ *
+ * This class keeps the metrics of the hot paths of the simulator in
+ * {@link LongAdder} counters, which many threads can update at the same time
+ * without locks or contention on one cache line, so they are always enabled.
+ * Counters on the path of each appliance are updated once for each hour by
+ * the code stepping the appliances, not by each {@link Appliance#timePasses()}.
+ * The counters are updated by the classes measured and registered as the
+ * platform MBean {@value #NAME} when this class is first used, so a long run
+ * can be watched from JConsole or any JMX client.
+ * <p>
+ * Units are counted in the milli-units of a {@link Meter}.
+ */
+public class SimulatorMetrics implements SimulatorMetricsMXBean {
+    static final String NAME = "simulator:type=SimulatorMetrics";
+
+    /**
+     * One hour out of {@code TIMING_INTERVAL} of each house is timed,
+     * as reading the clock costs about as much as a small house.
+     */
+    static final int TIMING_INTERVAL = 16;
+
+    static final LongAdder CYCLIC_FIXED_STEPS  = new LongAdder();
+    static final LongAdder CYCLIC_VARIES_STEPS = new LongAdder();
+    static final LongAdder RANDOM_FIXED_STEPS  = new LongAdder();
+    static final LongAdder RANDOM_VARIES_STEPS = new LongAdder();
+    static final LongAdder SIMULATED_HOURS     = new LongAdder();
+    static final LongAdder TIMED_HOURS         = new LongAdder();
+    static final LongAdder ACTIVATE_NANOS      = new LongAdder();
+    static final LongAdder UNITS_STORED        = new LongAdder();
+    static final LongAdder UNITS_TAKEN         = new LongAdder();
+    static final LongAdder UNITS_WASTED        = new LongAdder();
+    static final LongAdder FILES_PARSED        = new LongAdder();
+    static final LongAdder PARSE_NANOS         = new LongAdder();
+
+    private static final Map<String, LongAdder> unitsConsumed = new ConcurrentHashMap<>();
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new SimulatorMetrics(), new ObjectName(NAME));
+        } catch (JMException e) {
+            // The metrics are still counted, only not visible over JMX
+        }
+    }
+
+    private SimulatorMetrics() {
+    }
+
+    /**
+     * Returns the counter of the milli-units reported by
+     * the meters of a utility, creating it if needed.
+     *
+     * @param utility the utility name.
+     * @return the counter.
+     */
+    static LongAdder unitsConsumed(String utility) {
+        return unitsConsumed.computeIfAbsent(utility, name -> new LongAdder());
+    }
+
+    /**
+     * Counts the appliances of each type, i.e. the steps of each type of
+     * appliance in one hour, to be added with {@link #countSteps(int[], long)}.
+     *
+     * @param appliances the appliances stepped each hour.
+     * @return the number of {@link CyclicFixed}, {@link CyclicVaries},
+     *         {@link RandomFixed} and {@link RandomVaries} appliances.
+     */
+    static int[] stepsPerHour(Iterable<? extends Appliance> appliances) {
+        int[] steps = new int[4];
+        for (Appliance appliance : appliances) {
+            if (appliance instanceof CyclicFixed) {
+                steps[0]++;
+            } else if (appliance instanceof CyclicVaries) {
+                steps[1]++;
+            } else if (appliance instanceof RandomFixed) {
+                steps[2]++;
+            } else if (appliance instanceof RandomVaries) {
+                steps[3]++;
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * Adds the steps of the given hours to the counters of each type of appliance.
+     *
+     * @param stepsPerHour the steps of each type in one hour, from {@link #stepsPerHour(Iterable)}.
+     * @param hours        the hours stepped.
+     */
+    static void countSteps(int[] stepsPerHour, long hours) {
+        add(CYCLIC_FIXED_STEPS, stepsPerHour[0] * hours);
+        add(CYCLIC_VARIES_STEPS, stepsPerHour[1] * hours);
+        add(RANDOM_FIXED_STEPS, stepsPerHour[2] * hours);
+        add(RANDOM_VARIES_STEPS, stepsPerHour[3] * hours);
+    }
+
+    /**
+     * Adds a value to a counter, skipping the update if the value is 0.
+     *
+     * @param counter the counter.
+     * @param value   the value to add.
+     */
+    static void add(LongAdder counter, long value) {
+        if (value != 0) {
+            counter.add(value);
+        }
+    }
+
+    @Override
+    public long getCyclicFixedSteps() {
+        return CYCLIC_FIXED_STEPS.sum();
+    }
+
+    @Override
+    public long getCyclicVariesSteps() {
+        return CYCLIC_VARIES_STEPS.sum();
+    }
+
+    @Override
+    public long getRandomFixedSteps() {
+        return RANDOM_FIXED_STEPS.sum();
+    }
+
+    @Override
+    public long getRandomVariesSteps() {
+        return RANDOM_VARIES_STEPS.sum();
+    }
+
+    @Override
+    public long getSimulatedHours() {
+        return SIMULATED_HOURS.sum();
+    }
+
+    @Override
+    public long getActivateNanos() {
+        return Math.round(getNanosPerHour() * SIMULATED_HOURS.sum());
+    }
+
+    @Override
+    public double getNanosPerHour() {
+        long hours = TIMED_HOURS.sum();
+        return hours == 0 ? 0 : (double) ACTIVATE_NANOS.sum() / hours;
+    }
+
+    @Override
+    public Map<String, Double> getUnitsConsumed() {
+        Map<String, Double> units = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : unitsConsumed.entrySet()) {
+            units.put(entry.getKey(), Meter.toUnits(entry.getValue().sum()));
+        }
+        return units;
+    }
+
+    @Override
+    public double getUnitsStored() {
+        return Meter.toUnits(UNITS_STORED.sum());
+    }
+
+    @Override
+    public double getUnitsTaken() {
+        return Meter.toUnits(UNITS_TAKEN.sum());
+    }
+
+    @Override
+    public double getUnitsWasted() {
+        return Meter.toUnits(UNITS_WASTED.sum());
+    }
+
+    @Override
+    public long getFilesParsed() {
+        return FILES_PARSED.sum();
+    }
+
+    @Override
+    public long getParseNanos() {
+        return PARSE_NANOS.sum();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder counter : new LongAdder[]{CYCLIC_FIXED_STEPS, CYCLIC_VARIES_STEPS, RANDOM_FIXED_STEPS,
+                                                 RANDOM_VARIES_STEPS, SIMULATED_HOURS, TIMED_HOURS, ACTIVATE_NANOS,
+                                                 UNITS_STORED, UNITS_TAKEN, UNITS_WASTED, FILES_PARSED, PARSE_NANOS}) {
+            counter.reset();
+        }
+        for (LongAdder counter : unitsConsumed.values()) {
+            counter.reset();
+        }
+    }
+}
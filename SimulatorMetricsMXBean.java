@@ -0,0 +1,94 @@
+import java.util.Map;
+
+/**
+ * This interface defines the metrics of the simulator exposed over JMX,
+ * e.g. to JConsole, by {@link SimulatorMetrics}. All values are counted
+ * since the start of the JVM or the last {@link #reset()}.
+ */
+public interface SimulatorMetricsMXBean {
+
+    /**
+     * Returns the hours simulated by {@link CyclicFixed} appliances.
+     * @return the number of steps
+     */
+    long getCyclicFixedSteps();
+
+    /**
+     * Returns the hours simulated by {@link CyclicVaries} appliances.
+     * @return the number of steps
+     */
+    long getCyclicVariesSteps();
+
+    /**
+     * Returns the hours simulated by {@link RandomFixed} appliances.
+     * @return the number of steps
+     */
+    long getRandomFixedSteps();
+
+    /**
+     * Returns the hours simulated by {@link RandomVaries} appliances.
+     * @return the number of steps
+     */
+    long getRandomVariesSteps();
+
+    /**
+     * Returns the hours simulated by {@link House#activate()}.
+     * @return the number of hours
+     */
+    long getSimulatedHours();
+
+    /**
+     * Returns the nanoseconds spent in {@link House#activate()}, estimated
+     * from the hours timed as {@link #getNanosPerHour()} does.
+     * @return the nanoseconds
+     */
+    long getActivateNanos();
+
+    /**
+     * Returns the average nanoseconds to simulate one hour of a house in
+     * {@link House#activate()}, measured on a sample of the hours.
+     * @return the nanoseconds per hour, 0 if no hour has been timed
+     */
+    double getNanosPerHour();
+
+    /**
+     * Returns the units reported by the meters of each utility.
+     * @return the units consumed, by utility name
+     */
+    Map<String, Double> getUnitsConsumed();
+
+    /**
+     * Returns the units stored into batteries.
+     * @return the units stored
+     */
+    double getUnitsStored();
+
+    /**
+     * Returns the units taken from batteries.
+     * @return the units taken
+     */
+    double getUnitsTaken();
+
+    /**
+     * Returns the units which could not be stored as the batteries were full.
+     * @return the units wasted
+     */
+    double getUnitsWasted();
+
+    /**
+     * Returns the configuration files parsed by {@link FileParser#start()}.
+     * @return the number of files
+     */
+    long getFilesParsed();
+
+    /**
+     * Returns the nanoseconds spent in {@link FileParser#start()}.
+     * @return the nanoseconds
+     */
+    long getParseNanos();
+
+    /**
+     * Sets all metrics back to 0.
+     */
+    void reset();
+}
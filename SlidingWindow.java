@@ -0,0 +1,137 @@
+/**
+ * This class aggregates the values of the last {@code length} hours of a
+ * stream, e.g. the units consumed or the cost of each hour: their sum, their
+ * average and their maximum, with the hour of the maximum (the peak hour).
+ * <p>
+ * Each {@link #add(double) new hour} is aggregated in constant time and the
+ * memory does not depend on the number of hours: the values of the window
+ * are kept in a ring, and the maximum is found with a monotonic deque of the
+ * hours which may still become the maximum, i.e. the ones not followed by a
+ * greater or equal value. The sum is updated incrementally and summed again
+ * from the ring each time the ring wraps around, so the rounding errors of
+ * the additions and subtractions do not build up over long horizons.
+ */
+public class SlidingWindow {
+    private int      length;
+    private double[] values;
+    private long     hours;
+    private int      slot;
+    private double   sum;
+
+    // The slots of the hours of the deque, from the oldest (the maximum) to the newest
+    private int[] deque;
+    private int   first;
+    private int   size;
+
+    /**
+     * Creates a new empty {@code SlidingWindow}.
+     *
+     * @param length the number of hours of the window, e.g. 24.
+     */
+    public SlidingWindow(int length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("The length of a window must be positive: " + length);
+        }
+        this.length = length;
+        this.values = new double[length];
+        this.deque  = new int[length];
+    }
+
+    /**
+     * Adds the value of the next hour, dropping the oldest
+     * hour if the window is full.
+     *
+     * @param value the value of the hour.
+     */
+    public void add(double value) {
+        slot = hours++ == 0 ? 0 : next(slot);
+
+        // The only hour which can leave the window is the one whose slot is reused
+        if (size > 0 && deque[first] == slot) {
+            first = next(first);
+            size--;
+        }
+        sum += value - values[slot];
+        values[slot] = value;
+        if (slot == length - 1) {
+            sum = 0;
+            for (double v : values) {
+                sum += v;
+            }
+        }
+
+        // Drops the hours which cannot be the maximum anymore
+        while (size > 0 && values[deque[wrap(first + size - 1)]] <= value) {
+            size--;
+        }
+        deque[wrap(first + size)] = slot;
+        size++;
+    }
+
+    private int next(int index) {
+        return index == length - 1 ? 0 : index + 1;
+    }
+
+    private int wrap(int index) {
+        return index >= length ? index - length : index;
+    }
+
+    /**
+     * Returns the number of hours of the window.
+     * @return the length of the window
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the number of hours added so far.
+     * @return the number of hours
+     */
+    public long getHours() {
+        return hours;
+    }
+
+    /**
+     * Returns the number of hours in the window, less than its
+     * length only until enough hours have been added.
+     * @return the number of hours in the window
+     */
+    public int getCount() {
+        return (int) Math.min(hours, length);
+    }
+
+    /**
+     * Returns the sum of the values of the hours in the window.
+     * @return the sum, 0 if no hour has been added
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Returns the average of the values of the hours in the window.
+     * @return the average, 0 if no hour has been added
+     */
+    public double getAverage() {
+        return hours == 0 ? 0 : sum / getCount();
+    }
+
+    /**
+     * Returns the greatest value of the hours in the window.
+     * @return the maximum, 0 if no hour has been added
+     */
+    public double getMax() {
+        return size == 0 ? 0 : values[deque[first]];
+    }
+
+    /**
+     * Returns the hour of the greatest value in the window, counted from
+     * the first hour added, starting from 0. With equal values, the hour
+     * of the latest one is returned.
+     * @return the peak hour, -1 if no hour has been added
+     */
+    public long getMaxHour() {
+        return size == 0 ? -1 : hours - 1 - wrap(slot - deque[first] + length);
+    }
+}
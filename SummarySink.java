@@ -0,0 +1,146 @@
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@inheritDoc}
+ *
+ * This class does not print anything while the simulation is
+ * running. It only keeps the totals of each utility, and prints
+ * them in one table once the simulation is finished.
+ */
+public class SummarySink implements ReportSink {
+    private PrintStream         out;
+    private Map<String, Totals> totals;
+    private double              totalCost;
+    private int                 hours;
+
+    /**
+     * The totals of a single utility.
+     */
+    private static class Totals {
+        private double units;
+        private double cost;
+        private double unitsFromMains;
+        private double unitsFromBattery;
+    }
+
+    /**
+     * Creates a new {@code SummarySink}.
+     *
+     * @param out the stream where the summary is printed,
+     *            {@code null} to only keep the totals.
+     */
+    public SummarySink(PrintStream out) {
+        this.out    = out;
+        this.totals = new LinkedHashMap<>();
+    }
+
+    @Override
+    public void meterReported(Meter meter, float reading, double cost) {
+        Totals utility = totalsOf(meter);
+        utility.units += reading;
+        utility.cost  += cost;
+        if(reading > 0){
+            utility.unitsFromMains += reading;
+        }
+    }
+
+    @Override
+    public void batteryMeterReported(BatteryMeter meter, float consumed, float reading, double cost,
+                                     float unitsFromMains, float unitsFromBattery) {
+        Totals utility = totalsOf(meter);
+        utility.units            += consumed;
+        utility.cost             += cost;
+        utility.unitsFromMains   += unitsFromMains;
+        utility.unitsFromBattery += unitsFromBattery;
+    }
+
+    @Override
+    public void hourFinished(double cost) {
+        hours++;
+    }
+
+    @Override
+    public void simulationFinished(double totalCost) {
+        this.totalCost = totalCost;
+        if(out == null){
+            return;
+        }
+
+        String format = "| %-12s | %-14s | %-12s | %-27s | %-29s |%n";
+        String line   = "+--------------+----------------+--------------+-----------------------------+-------------------------------+%n";
+
+        out.println("Hours simulated: " + hours);
+        out.format(line);
+        out.format("| Utility name |  Units (net)   |   Cost(GPB)  | Units drawn from the mains  |  Units drawn from the battery |%n");
+        out.format(line);
+        for (Map.Entry<String, Totals> entry : totals.entrySet()) {
+            Totals utility = entry.getValue();
+            out.format(format, entry.getKey(), (float) utility.units, String.format("%.2f", utility.cost),
+                       (float) utility.unitsFromMains, (float) utility.unitsFromBattery);
+        }
+        out.format(line);
+
+        if (totalCost < 0) {
+            out.println(String.format("The total cost is: " + "%.2f", 0.0) + "GPB");
+        } else {
+            out.println(String.format("The total cost is: " + "%.2f", totalCost) + "GPB");
+        }
+    }
+
+    /**
+     * Returns the total cost of the last simulation finished.
+     *
+     * @return the total cost.
+     */
+    public double getTotalCost() {
+        return totalCost;
+    }
+
+    /**
+     * Returns the number of hours reported so far.
+     *
+     * @return the hours reported.
+     */
+    public int getHours() {
+        return hours;
+    }
+
+    /**
+     * Returns the units drawn from the mains by the meters
+     * of the given utility.
+     *
+     * @param utilityName the utility name of the meters.
+     * @return the units drawn from the mains.
+     */
+    public double getUnitsFromMains(String utilityName) {
+        Totals utility = totals.get(utilityName);
+        return utility == null ? 0 : utility.unitsFromMains;
+    }
+
+    /**
+     * Returns the units drawn from the battery by the meters
+     * of the given utility.
+     *
+     * @param utilityName the utility name of the meters.
+     * @return the units drawn from the battery.
+     */
+    public double getUnitsFromBattery(String utilityName) {
+        Totals utility = totals.get(utilityName);
+        return utility == null ? 0 : utility.unitsFromBattery;
+    }
+
+    /**
+     * Returns the totals of the utility of the given meter,
+     * creating them the first time the utility is reported.
+     */
+    private Totals totalsOf(Meter meter) {
+        Totals utility = totals.get(meter.getUtilityName());
+        if(utility == null){
+            utility = new Totals();
+            totals.put(meter.getUtilityName(), utility);
+        }
+        return utility;
+    }
+}
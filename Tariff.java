@@ -0,0 +1,133 @@
+/**
+ * This class represents a time-of-use tariff: the cost of a unit in each
+ * hour of a daily (24 hours) or weekly (168 hours) cycle.
+ * <p>
+ * The rates of the cycle are precomputed in a table, so the rate of any hour
+ * is a single lookup. Hours are counted from the first hour of the first day
+ * of a simulation, i.e. hour {@code (day - 1) * 24 + (hour - 1)} in the day
+ * and hour reported by {@link House#activate(int)}; a weekly cycle starts on
+ * the first day of the simulation.
+ * <p>
+ * A {@link Meter} with a {@code Tariff} costs its reading at the rate of the
+ * current hour. Whole series of hourly units, e.g. read from a
+ * {@link ReadingRecorder} file or a {@link LoadTrace}, can also be priced at
+ * once with {@link #price(float[], long)}, without simulating again.
+ */
+public class Tariff {
+    public static final int DAY  = 24;
+    public static final int WEEK = 168;
+
+    private double[] rates;
+
+    /**
+     * Creates a new {@code Tariff} with the given rates.
+     *
+     * @param rates the cost of a unit in each hour of the cycle,
+     *              24 rates for a day or 168 for a week.
+     */
+    public Tariff(double[] rates) {
+        if (rates.length != DAY && rates.length != WEEK) {
+            throw new IllegalArgumentException("A tariff needs " + DAY + " or " + WEEK + " rates, not " + rates.length);
+        }
+        this.rates = rates.clone();
+    }
+
+    /**
+     * Creates a tariff with the same rate in every hour.
+     *
+     * @param rate the cost of a unit.
+     * @return the tariff.
+     */
+    public static Tariff flat(double rate) {
+        double[] rates = new double[DAY];
+        java.util.Arrays.fill(rates, rate);
+        return new Tariff(rates);
+    }
+
+    /**
+     * Parses a tariff from its rates separated by commas,
+     * e.g. {@code "0.01,0.01,...,0.02"}.
+     *
+     * @param text the 24 or 168 rates of the tariff.
+     * @return the tariff.
+     * @throws NumberFormatException if a rate is not a number.
+     * @throws IllegalArgumentException if the number of rates is not 24 or 168.
+     */
+    public static Tariff parse(String text) {
+        String[] values = text.split(",");
+        double[] rates = new double[values.length];
+        for (int hour = 0; hour < values.length; hour++) {
+            rates[hour] = Double.parseDouble(values[hour].trim());
+        }
+        return new Tariff(rates);
+    }
+
+    /**
+     * Returns the number of hours of the cycle of the tariff.
+     * @return 24 or 168
+     */
+    public int getCycleLength() {
+        return rates.length;
+    }
+
+    /**
+     * Returns the cost of a unit in the given hour.
+     *
+     * @param hour the hour, counted from the first hour of the simulation.
+     * @return the rate.
+     */
+    public double getRate(long hour) {
+        return rates[(int) Math.floorMod(hour, (long) rates.length)];
+    }
+
+    /**
+     * Returns the cost of a series of hourly units, the first one
+     * consumed in the given hour.
+     *
+     * @param units     the units consumed in each hour.
+     * @param startHour the hour of the first units.
+     * @return the total cost.
+     */
+    public double price(float[] units, long startHour) {
+        // Four sums, so the additions of consecutive hours do not wait for each other
+        double cost0 = 0, cost1 = 0, cost2 = 0, cost3 = 0;
+        int rate = (int) Math.floorMod(startHour, (long) rates.length);
+        int i = 0;
+        while (i < units.length) {
+            // One run of the table without wrapping around
+            int end = i + Math.min(rates.length - rate, units.length - i);
+            for (; i + 3 < end; i += 4, rate += 4) {
+                cost0 += units[i]     * rates[rate];
+                cost1 += units[i + 1] * rates[rate + 1];
+                cost2 += units[i + 2] * rates[rate + 2];
+                cost3 += units[i + 3] * rates[rate + 3];
+            }
+            for (; i < end; i++, rate++) {
+                cost0 += units[i] * rates[rate];
+            }
+            rate = 0;
+        }
+        return (cost0 + cost1) + (cost2 + cost3);
+    }
+
+    /**
+     * Computes the cost of each hour of a series of hourly units,
+     * the first one consumed in the given hour.
+     *
+     * @param units     the units consumed in each hour.
+     * @param startHour the hour of the first units.
+     * @param costs     the array where the cost of each hour is written,
+     *                  at least as long as {@code units}.
+     */
+    public void priceEach(float[] units, long startHour, double[] costs) {
+        int rate = (int) Math.floorMod(startHour, (long) rates.length);
+        int i = 0;
+        while (i < units.length) {
+            int end = i + Math.min(rates.length - rate, units.length - i);
+            for (; i < end; i++, rate++) {
+                costs[i] = units[i] * rates[rate];
+            }
+            rate = 0;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * This class aggregates the values of a stream over consecutive,
+ * non-overlapping windows of {@code length} hours, e.g. days: the sum and
+ * the maximum of each window, with the hour of the maximum (the peak hour).
+ * <p>
+ * Each {@link #add(double) new hour} is aggregated in constant time and
+ * memory; only the window being filled and the last complete one are kept.
+ */
+public class TumblingWindow {
+    private int  length;
+    private long hours;
+
+    private double sum;
+    private double max;
+    private long   maxHour;
+
+    private long   windows;
+    private double lastSum;
+    private double lastMax;
+    private long   lastMaxHour;
+
+    /**
+     * Creates a new empty {@code TumblingWindow}.
+     *
+     * @param length the number of hours of each window, e.g. 24 for days.
+     */
+    public TumblingWindow(int length) {
+        this(length, 0);
+    }
+
+    /**
+     * Creates a new empty {@code TumblingWindow} whose first window has
+     * already started, e.g. to keep the windows aligned to the days when
+     * the stream starts in the middle of a day.
+     *
+     * @param length the number of hours of each window, e.g. 24 for days.
+     * @param offset the hours of the first window before the first value
+     *               added, between 0 and {@code length - 1}. The first window
+     *               only gets the remaining {@code length - offset} values.
+     */
+    public TumblingWindow(int length, int offset) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("The length of a window must be positive: " + length);
+        }
+        if (offset < 0 || offset >= length) {
+            throw new IllegalArgumentException("The offset must be between 0 and " + (length - 1) + ": " + offset);
+        }
+        this.length      = length;
+        this.hours       = offset;
+        this.maxHour     = -1;
+        this.lastMaxHour = -1;
+    }
+
+    /**
+     * Adds the value of the next hour.
+     *
+     * @param value the value of the hour.
+     * @return {@code true} if the hour completes a window,
+     *         whose results are then returned by the "last" methods.
+     */
+    public boolean add(double value) {
+        long hour = hours++;
+        if (maxHour < 0 || value > max) {
+            max     = value;
+            maxHour = hour;
+        }
+        sum += value;
+
+        if (hours % length != 0) {
+            return false;
+        }
+        windows++;
+        lastSum     = sum;
+        lastMax     = max;
+        lastMaxHour = maxHour;
+        sum     = 0;
+        max     = 0;
+        maxHour = -1;
+        return true;
+    }
+
+    /**
+     * Returns the number of hours of each window.
+     * @return the length of a window
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the number of windows completed so far.
+     * @return the number of complete windows
+     */
+    public long getWindows() {
+        return windows;
+    }
+
+    /**
+     * Returns the sum of the values of the window being filled.
+     * @return the current sum
+     */
+    public double getCurrentSum() {
+        return sum;
+    }
+
+    /**
+     * Returns the sum of the values of the last complete window.
+     * @return the sum, 0 if no window is complete
+     */
+    public double getLastSum() {
+        return lastSum;
+    }
+
+    /**
+     * Returns the greatest value of the last complete window.
+     * @return the maximum, 0 if no window is complete
+     */
+    public double getLastMax() {
+        return lastMax;
+    }
+
+    /**
+     * Returns the hour of the greatest value of the last complete window,
+     * counted from the start of the first window, starting from 0, i.e. from
+     * {@code offset} hours before the first value added. With equal values,
+     * the hour of the earliest one is returned.
+     * @return the peak hour, -1 if no window is complete
+     */
+    public long getLastMaxHour() {
+        return lastMaxHour;
+    }
+}
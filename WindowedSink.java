@@ -0,0 +1,161 @@
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@inheritDoc}
+ *
+ * This class aggregates the hourly results of the simulation in windows,
+ * e.g. for an operations dashboard: for the units consumed by each utility
+ * (before any battery) and for the cost of each hour, it keeps a rolling
+ * {@link SlidingWindow} (24 hours by default) with its peak hour, the daily
+ * totals and peaks of a {@link TumblingWindow} and an {@link Ewma}.
+ * <p>
+ * Every operator is updated in constant time and memory each hour, so the
+ * sink can follow a {@link House} or a {@link Fleet} over any horizon. At the
+ * end of each day a line with the aggregates of each series is printed, unless
+ * the stream is {@code null}.
+ */
+public class WindowedSink implements ReportSink {
+    /**
+     * The name of the series of the cost of each hour.
+     */
+    public static final String COST = "Cost(GPB)";
+
+    private PrintStream out;
+    private int         window;
+    private double      alpha;
+
+    private Map<String, Windows> series;
+    private int day;
+    private int hour;
+
+    /**
+     * The operators of one series.
+     */
+    public static class Windows {
+        private SlidingWindow  rolling;
+        private TumblingWindow daily;
+        private Ewma           ewma;
+        private long           firstDay;
+
+        private Windows(int window, double alpha, int day, int hour) {
+            // The days start at the first hour of the day, whatever the first hour of the series
+            this.rolling  = new SlidingWindow(window);
+            this.daily    = new TumblingWindow(24, Math.max(0, hour - 1));
+            this.ewma     = new Ewma(alpha);
+            this.firstDay = day;
+        }
+
+        private boolean add(double value) {
+            rolling.add(value);
+            ewma.add(value);
+            return daily.add(value);
+        }
+
+        /**
+         * Returns the rolling window of the series.
+         * @return the sliding window
+         */
+        public SlidingWindow getRolling() {
+            return rolling;
+        }
+
+        /**
+         * Returns the daily windows of the series, aligned to the days
+         * of the simulation.
+         * @return the tumbling window
+         */
+        public TumblingWindow getDaily() {
+            return daily;
+        }
+
+        /**
+         * Returns the moving average of the series.
+         * @return the exponentially weighted average
+         */
+        public Ewma getEwma() {
+            return ewma;
+        }
+    }
+
+    /**
+     * Creates a new {@code WindowedSink} with a rolling window of 24 hours
+     * and a moving average whose weights halve every 24 hours.
+     *
+     * @param out the stream where the daily lines are printed,
+     *            {@code null} to only keep the aggregates.
+     */
+    public WindowedSink(PrintStream out) {
+        this(out, 24, Ewma.withHalfLife(24).getAlpha());
+    }
+
+    /**
+     * Creates a new {@code WindowedSink}.
+     *
+     * @param out    the stream where the daily lines are printed,
+     *               {@code null} to only keep the aggregates.
+     * @param window the hours of the rolling window.
+     * @param alpha  the weight of each new hour in the moving average.
+     */
+    public WindowedSink(PrintStream out, int window, double alpha) {
+        this.out       = out;
+        this.window    = window;
+        this.alpha     = alpha;
+        this.series    = new LinkedHashMap<>();
+    }
+
+    /**
+     * Returns the operators of a series.
+     *
+     * @param name the utility name, or {@link #COST}.
+     * @return the operators, {@code null} if the series has never been reported.
+     */
+    public Windows getWindows(String name) {
+        return series.get(name);
+    }
+
+    @Override
+    public void hourStarted(int day, int hour) {
+        this.day  = day;
+        this.hour = hour;
+    }
+
+    @Override
+    public void meterReported(Meter meter, float reading, double cost) {
+        add(meter.getUtilityName(), reading);
+    }
+
+    @Override
+    public void batteryMeterReported(BatteryMeter meter, float consumed, float reading, double cost,
+                                     float unitsFromMains, float unitsFromBattery) {
+        add(meter.getUtilityName(), consumed);
+    }
+
+    @Override
+    public void hourFinished(double cost) {
+        // The cost is the last series of the hour: the day is over for all of them
+        if (add(COST, cost) && out != null) {
+            for (Map.Entry<String, Windows> entry : series.entrySet()) {
+                print(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private boolean add(String name, double value) {
+        Windows windows = series.get(name);
+        if (windows == null) {
+            windows = new Windows(window, alpha, day, hour);
+            series.put(name, windows);
+        }
+        return windows.add(value);
+    }
+
+    private void print(String name, Windows windows) {
+        TumblingWindow daily = windows.getDaily();
+        long peak = daily.getLastMaxHour();
+        out.println(String.format("Day %d %-12s total %.3f, peak %.3f at %d:00, %dh average %.3f, moving average %.3f",
+                                  windows.firstDay + peak / 24, name, daily.getLastSum(), daily.getLastMax(), peak % 24 + 1,
+                                  window, windows.getRolling().getAverage(), windows.getEwma().getValue()));
+    }
+}
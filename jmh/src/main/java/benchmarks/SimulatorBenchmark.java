@@ -0,0 +1,89 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class runs the single-thread benchmarks of the simulator under JMH.
+ * <p>
+ * The simulator lives in the default package, which cannot be imported, so
+ * each operation is looked up by name through {@code Benchmark.operation}
+ * by reflection. The operation returns the hash of the results it consumed,
+ * which is returned here to be consumed by the blackhole of JMH.
+ * <p>
+ * Usage: {@code java -jar target/benchmarks.jar -prof gc [-p name=NAME]}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulatorBenchmark {
+    @Param({
+        "House.activate() 10 appliances",
+        "House.activate() compiled 10",
+        "House.activate() parallel 10",
+        "House.activate() 1000 appliances",
+        "House.activate() compiled 1000",
+        "House.activate() parallel 1000",
+        "House.activate() 100000 appliances",
+        "House.activate() compiled 100000",
+        "House.activate() parallel 100000",
+        "House.activate() compiled 1 in 1000",
+        "House.activate() events 1 in 1000",
+        "Checkpoint.capture() 100000 appliances",
+        "Checkpoint.restore() 100000 appliances",
+        "FileParser.start() 1000 appliances",
+        "FileParser.start() 10000 appliances",
+        "FileParser.start() 100000 appliances",
+        "BatteryMeter.report() netting",
+        "AsyncReportSink hour published",
+        "WindowedSink hour aggregated",
+        "BatterySweep.run() 8760 hours x 500",
+        "CostLedger.getCostWithout() 8760 hours",
+        "OffHeapFleet.simulate() 10000 houses 24h",
+        "ShardedFleet.simulate() 2 local shards",
+        "Tariff.price() 8760 hours"
+    })
+    public String name;
+
+    private LongSupplier        operation;
+    private List<AutoCloseable> resources;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        resources = new ArrayList<>();
+        operation = (LongSupplier) Class.forName("Benchmark")
+                .getMethod("operation", String.class, List.class)
+                .invoke(null, name, resources);
+    }
+
+    @Benchmark
+    public long run() {
+        return operation.getAsLong();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+    }
+}